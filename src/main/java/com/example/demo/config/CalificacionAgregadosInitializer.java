@@ -0,0 +1,45 @@
+package com.example.demo.config;
+
+import com.example.demo.repository.PrestadorRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Completa calificacion_suma/cantidad/promedio en los prestadores que todavía no los tienen
+ * (filas anteriores a la columna o cargadas por data.sql). Solo toca filas con agregados nulos,
+ * así que en arranques posteriores no hace nada.
+ */
+@Component
+@Order(1)
+@RequiredArgsConstructor
+public class CalificacionAgregadosInitializer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(CalificacionAgregadosInitializer.class);
+
+    private final PrestadorRepository prestadorRepository;
+
+    @Value("${matching.calificaciones.backfill-enabled:true}")
+    private boolean backfillEnabled;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!backfillEnabled) {
+            log.info("Backfill de agregados de calificación deshabilitado");
+            return;
+        }
+        try {
+            int actualizados = prestadorRepository.backfillAgregadosCalificacion();
+            if (actualizados > 0) {
+                log.info("Backfill de agregados de calificación: {} prestadores actualizados", actualizados);
+            }
+        } catch (Exception e) {
+            log.error("No se pudo completar el backfill de agregados de calificación", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matching por zona: {@code matching.zonas.vecinas.<zona>=<zona>,<zona>} define las zonas
+ * vecinas (IDs externos, la relación se completa en ambos sentidos) y
+ * {@code matching.zonas.fallback-sin-zona} permite seguir con prestadores de cualquier
+ * zona cuando la zona y sus vecinas no alcanzan.
+ */
+@ConfigurationProperties(prefix = "matching.zonas")
+public record MatchingZonasProperties(
+        Boolean enabled,
+        Map<Long, Set<Long>> vecinas,
+        Boolean fallbackSinZona
+) {
+
+    public MatchingZonasProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (fallbackSinZona == null) {
+            fallbackSinZona = true;
+        }
+        vecinas = simetrica(vecinas);
+    }
+
+    public Set<Long> vecinasDe(Long zona) {
+        return zona == null ? Set.of() : vecinas.getOrDefault(zona, Set.of());
+    }
+
+    private static Map<Long, Set<Long>> simetrica(Map<Long, Set<Long>> configuradas) {
+        if (configuradas == null || configuradas.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Set<Long>> out = new HashMap<>();
+        configuradas.forEach((zona, lista) -> {
+            if (zona == null || lista == null) {
+                return;
+            }
+            for (Long vecina : lista) {
+                if (vecina == null || vecina.equals(zona)) {
+                    continue;
+                }
+                out.computeIfAbsent(zona, k -> new LinkedHashSet<>()).add(vecina);
+                out.computeIfAbsent(vecina, k -> new LinkedHashSet<>()).add(zona);
+            }
+        });
+        out.replaceAll((zona, lista) -> Collections.unmodifiableSet(lista));
+        return Collections.unmodifiableMap(out);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.config;
+
+import com.example.demo.repository.PrestadorRepository;
+import com.example.demo.service.PrestadorScorer;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Recalcula prestador.puntaje_ranking con el {@link PrestadorScorer} vigente. Corre después del
+ * backfill de calificaciones y solo escribe las filas cuyo puntaje cambió.
+ *
+ * <p>El fallback SQL y el keyset de {@link PrestadorRepository} ordenan por esa columna (con su
+ * índice), mientras que PrestadorRankingIndex puntúa en memoria con el scorer. Los pesos de
+ * matching.scoring.* solo cambian con un reinicio, por eso el recálculo corre en cada arranque y
+ * no se puede apagar: si no, las dos fuentes de candidatos ordenarían distinto.
+ */
+@Component
+@Order(2)
+@RequiredArgsConstructor
+public class PuntajeRankingInitializer implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PuntajeRankingInitializer.class);
+
+    private static final int LOTE_UPDATE = 1000;
+
+    private final PrestadorRepository prestadorRepository;
+    private final PrestadorScorer scorer;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            recalcular();
+        } catch (Exception e) {
+            log.error("No se pudieron recalcular los puntajes de ranking", e);
+        }
+    }
+
+    // Devuelve cuántas filas cambiaron
+    int recalcular() {
+        long inicio = System.nanoTime();
+        List<Object[]> filas = prestadorRepository.findDatosPuntaje();
+        int n = filas.size();
+        double[] promedios = new double[n];
+        int[] trabajos = new int[n];
+        double[] precios = new double[n];
+        double[] puntajes = new double[n];
+        for (int i = 0; i < n; i++) {
+            Object[] row = filas.get(i);
+            promedios[i] = ((Number) row[1]).doubleValue();
+            trabajos[i] = ((Number) row[2]).intValue();
+            precios[i] = row[3] != null ? ((Number) row[3]).doubleValue() : PrestadorScorer.PRECIO_DESCONOCIDO;
+        }
+        scorer.score(promedios, trabajos, precios, puntajes, n);
+
+        int actualizados = 0;
+        StringJoiner ids = new StringJoiner(",");
+        StringJoiner valores = new StringJoiner(",");
+        int enLote = 0;
+        for (int i = 0; i < n; i++) {
+            Object[] row = filas.get(i);
+            Object actual = row[4];
+            if (actual instanceof Number num && Double.compare(num.doubleValue(), puntajes[i]) == 0) {
+                continue;
+            }
+            ids.add(String.valueOf(((Number) row[0]).longValue()));
+            valores.add(Double.toString(puntajes[i]));
+            if (++enLote == LOTE_UPDATE) {
+                actualizados += prestadorRepository.actualizarPuntajes(ids.toString(), valores.toString());
+                ids = new StringJoiner(",");
+                valores = new StringJoiner(",");
+                enLote = 0;
+            }
+        }
+        if (enLote > 0) {
+            actualizados += prestadorRepository.actualizarPuntajes(ids.toString(), valores.toString());
+        }
+        log.info("Puntajes de ranking: {} prestadores evaluados, {} actualizados en {} ms",
+                n, actualizados, (System.nanoTime() - inicio) / 1_000_000);
+        return actualizados;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.demo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+/**
+ * Control de admisión del webhook: {@code webhooks.admision.max-en-curso.<familia>=N} limita
+ * los mensajes de cada familia (solicitud, prestador, catalogo, otros, lote) que se procesan
+ * a la vez; las familias sin límite propio usan {@code max-en-curso-default}.
+ */
+@ConfigurationProperties(prefix = "webhooks.admision")
+public record WebhookAdmisionProperties(
+        Boolean enabled,
+        Integer maxEnCursoDefault,
+        Map<String, Integer> maxEnCurso,
+        Integer retryAfterSeconds
+) {
+
+    public WebhookAdmisionProperties {
+        if (enabled == null) {
+            enabled = true;
+        }
+        if (maxEnCursoDefault == null || maxEnCursoDefault < 1) {
+            maxEnCursoDefault = 32;
+        }
+        if (maxEnCurso == null) {
+            maxEnCurso = Map.of();
+        }
+        if (retryAfterSeconds == null || retryAfterSeconds < 1) {
+            retryAfterSeconds = 1;
+        }
+    }
+
+    public int limiteDe(String familia) {
+        Integer limite = maxEnCurso.get(familia);
+        return limite != null && limite > 0 ? limite : maxEnCursoDefault;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ModuleResponse;
+import com.example.demo.response.ModuleResponseFactory;
+import com.example.demo.service.WebhookArchivoReader;
+import com.example.demo.service.WebhookRetencionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Archivos de webhook_event generados por la retención: listado, lectura en streaming
+ * (NDJSON descomprimido, filtrable por los campos del sobre) y depuración manual.
+ */
+@RestController
+@RequestMapping("/api/webhook/archivos")
+@RequiredArgsConstructor
+public class WebhookArchivoController {
+
+    private final ModuleResponseFactory responseFactory;
+    private final WebhookArchivoReader archivoReader;
+    private final WebhookRetencionService retencionService;
+    private final ObjectMapper objectMapper;
+
+    @GetMapping
+    public ResponseEntity<ModuleResponse<List<WebhookArchivoReader.Archivo>>> listar() throws IOException {
+        return ResponseEntity.ok(responseFactory.build("webhooks", "archivesListed", archivoReader.listar()));
+    }
+
+    @GetMapping(value = "/{nombre}", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> leer(
+            @PathVariable String nombre,
+            @RequestParam(required = false) String topic,
+            @RequestParam(required = false) String eventName,
+            @RequestParam(required = false) String messageId,
+            @RequestParam(defaultValue = "1000") int limite) throws IOException {
+        // Se valida antes de responder: una vez empezado el streaming ya no se puede devolver 400/404
+        Path archivo;
+        try {
+            archivo = archivoReader.resolver(nombre);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (NoSuchFileException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Archivo no encontrado: " + nombre);
+        }
+        Map<String, String> campos = new HashMap<>();
+        campos.put("topic", topic);
+        campos.put("eventName", eventName);
+        campos.put("messageId", messageId);
+        ObjectWriter escritor = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        StreamingResponseBody cuerpo = out ->
+                archivoReader.leer(archivo, WebhookArchivoReader.filtro(campos), Math.max(limite, 1), evento -> {
+                    out.write(escritor.writeValueAsBytes(evento));
+                    out.write('\n');
+                });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(cuerpo);
+    }
+
+    @PostMapping("/depurar")
+    public ResponseEntity<ModuleResponse<Map<String, Object>>> depurar() throws IOException {
+        long borrados;
+        try {
+            borrados = retencionService.depurar();
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+        return ResponseEntity.ok(responseFactory.build("webhooks", "retentionRun", Map.of("borrados", borrados)));
+    }
+}
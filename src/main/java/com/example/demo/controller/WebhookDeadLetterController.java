@@ -0,0 +1,50 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ModuleResponse;
+import com.example.demo.entity.WebhookDeadLetter;
+import com.example.demo.entity.enums.EstadoDeadLetter;
+import com.example.demo.response.ModuleResponseFactory;
+import com.example.demo.service.WebhookDeadLetterService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handlers de webhook que fallaron: listado y replay en bloque. El replay solo los vuelve a
+ * encolar; los reintenta {@code WebhookDeadLetterWorker} en el próximo poll.
+ */
+@RestController
+@RequestMapping("/api/webhook/dead-letters")
+@RequiredArgsConstructor
+public class WebhookDeadLetterController {
+
+    private final ModuleResponseFactory responseFactory;
+    private final WebhookDeadLetterService deadLetterService;
+
+    public record ReplayRequest(List<Long> ids) {}
+
+    @GetMapping
+    public ResponseEntity<ModuleResponse<List<WebhookDeadLetter>>> listar(
+            @RequestParam(required = false) EstadoDeadLetter estado,
+            @RequestParam(defaultValue = "200") int limite) {
+        return ResponseEntity.ok(responseFactory.build("webhooks", "deadLettersListed",
+                deadLetterService.listar(estado, limite)));
+    }
+
+    /** Sin ids vuelve a encolar todos los AGOTADO. */
+    @PostMapping("/replay")
+    public ResponseEntity<ModuleResponse<Map<String, Object>>> replay(
+            @RequestBody(required = false) ReplayRequest request) {
+        int encolados = deadLetterService.replay(request != null ? request.ids() : null);
+        return ResponseEntity.ok(responseFactory.build("webhooks", "deadLettersReplayed",
+                Map.of("encolados", encolados)));
+    }
+}
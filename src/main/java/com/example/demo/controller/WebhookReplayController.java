@@ -0,0 +1,51 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ModuleResponse;
+import com.example.demo.response.ModuleResponseFactory;
+import com.example.demo.webhook.WebhookReplay;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+/**
+ * Replay de webhooks guardados ({@link WebhookReplay}): arranque, progreso y cancelación.
+ */
+@RestController
+@RequestMapping("/api/webhook/replay")
+@RequiredArgsConstructor
+public class WebhookReplayController {
+
+    private final ModuleResponseFactory responseFactory;
+    private final WebhookReplay replay;
+
+    @PostMapping
+    public ResponseEntity<ModuleResponse<Map<String, Object>>> iniciar(@RequestBody WebhookReplay.Pedido pedido) {
+        Map<String, Object> estado;
+        try {
+            estado = replay.iniciar(pedido);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(responseFactory.build("webhooks", "replayStarted", estado));
+    }
+
+    @GetMapping
+    public ResponseEntity<ModuleResponse<Map<String, Object>>> estado() {
+        return ResponseEntity.ok(responseFactory.build("webhooks", "replayStatus", replay.estado()));
+    }
+
+    @PostMapping("/cancelar")
+    public ResponseEntity<ModuleResponse<Map<String, Object>>> cancelar() {
+        boolean cancelado = replay.cancelar();
+        return ResponseEntity.ok(responseFactory.build("webhooks", "replayCancelled", Map.of("cancelado", cancelado)));
+    }
+}
@@ -22,6 +22,10 @@ public class SolicitudesCreadasDTO {
     @JsonProperty("habilidad_id")
     private Long habilidadId;
 
+    // Zona (externa) donde se presta el servicio; opcional
+    @JsonProperty("zona_id")
+    private Long zonaId;
+
     @JsonProperty("descripcion")
     private String descripcion;
 
@@ -0,0 +1,18 @@
+package com.example.demo.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * Página del listado de eventos. {@code nextCursor} se pasa como {@code cursor} para pedir la
+ * siguiente; null si no hay más.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WebhookEventPaginaDTO {
+    private List<WebhookEventResumenDTO> items;
+    private String nextCursor;
+}
@@ -0,0 +1,27 @@
+package com.example.demo.dto;
+
+import com.example.demo.entity.enums.EstadoWebhookEvent;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Fila del listado de eventos guardados: todo menos rawPayload, que se ve en el detalle
+ * (GET /api/webhook/{id}).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WebhookEventResumenDTO {
+    private Long id;
+    private String topic;
+    private String eventName;
+    private String messageId;
+    private String subscriptionId;
+    private LocalDateTime receivedAt;
+    private EstadoWebhookEvent status;
+    private int attempts;
+    private LocalDateTime processedAt;
+    private String lastError;
+}
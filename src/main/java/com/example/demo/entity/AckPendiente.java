@@ -0,0 +1,59 @@
+package com.example.demo.entity;
+
+import com.example.demo.entity.enums.EstadoAckPendiente;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * ACK al hub todavía no confirmado. Se borra cuando el hub responde 2xx; si se agotan los
+ * reintentos queda FALLIDO para revisarlo a mano.
+ */
+@Entity
+@Table(
+    name = "ack_pendiente",
+    uniqueConstraints = {
+        @UniqueConstraint(
+            name = "ux_ack_pendiente_mensaje",
+            columnNames = {"message_id", "subscription_id"}
+        )
+    },
+    indexes = {
+        @Index(name = "ix_ack_pendiente_proximo", columnList = "estado, proximo_intento")
+    }
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AckPendiente {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "message_id", nullable = false, length = 120)
+    private String messageId;
+
+    @Column(name = "subscription_id", nullable = false, length = 120)
+    private String subscriptionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EstadoAckPendiente estado;
+
+    @Column(nullable = false)
+    private int intentos;
+
+    // Próximo envío; mientras un envío está en curso, vence el "lease" de quien lo tomó
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(name = "ultimo_error", columnDefinition = "TEXT")
+    private String ultimoError;
+
+    @Column(name = "creado_at", nullable = false)
+    private LocalDateTime creadoAt;
+}
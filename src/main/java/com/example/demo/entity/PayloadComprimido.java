@@ -0,0 +1,133 @@
+package com.example.demo.entity;
+
+import org.hibernate.annotations.Immutable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Payload de webhook_event guardado comprimido: un byte de versión seguido de un stream
+ * DEFLATE con diccionario precargado. El diccionario ({@code webhook/payload-dict-v<N>.txt})
+ * reúne las claves y valores que se repiten en casi todos los payloads (sobre del hub,
+ * headers, ACK y flags de los handlers), así aun un payload de pocos KB comprime bien.
+ * Un diccionario nuevo va con una versión nueva; los anteriores se conservan para leer lo
+ * ya guardado.
+ *
+ * <p>Se descomprime recién cuando se pide el texto ({@link #texto()}), y una sola vez.
+ */
+@Immutable
+public final class PayloadComprimido {
+
+    private static final byte VERSION = 1;
+    private static final byte[] DICCIONARIO_V1 = diccionario("webhook/payload-dict-v1.txt");
+
+    private final byte[] bytes;
+    private volatile String texto;
+
+    private PayloadComprimido(byte[] bytes, String texto) {
+        this.bytes = bytes;
+        this.texto = texto;
+    }
+
+    public static PayloadComprimido de(String texto) {
+        return texto == null ? null : new PayloadComprimido(comprimir(texto), texto);
+    }
+
+    public static PayloadComprimido desdeBytes(byte[] bytes) {
+        return bytes == null ? null : new PayloadComprimido(bytes, null);
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public String texto() {
+        String t = texto;
+        if (t == null) {
+            t = descomprimir(bytes);
+            texto = t;
+        }
+        return t;
+    }
+
+    public static byte[] comprimir(String texto) {
+        return comprimir(texto.getBytes(StandardCharsets.UTF_8), DICCIONARIO_V1, VERSION);
+    }
+
+    private static byte[] comprimir(byte[] entrada, byte[] diccionario, byte version) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (diccionario != null) {
+                deflater.setDictionary(diccionario);
+            }
+            deflater.setInput(entrada);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(entrada.length / 4 + 16);
+            out.write(version);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String descomprimir(byte[] bytes) {
+        if (bytes.length == 0 || bytes[0] != VERSION) {
+            throw new IllegalStateException("Versión de payload comprimido desconocida: "
+                    + (bytes.length == 0 ? "vacío" : bytes[0]));
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 6);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICCIONARIO_V1);
+                    } else if (!inflater.finished() && inflater.needsInput()) {
+                        throw new IllegalStateException("Payload comprimido truncado");
+                    }
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Payload comprimido inválido", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] diccionario(String recurso) {
+        try (InputStream in = PayloadComprimido.class.getClassLoader().getResourceAsStream(recurso)) {
+            if (in == null) {
+                throw new IllegalStateException("Diccionario de payloads no encontrado: " + recurso);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof PayloadComprimido otro && Arrays.equals(bytes, otro.bytes));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+}
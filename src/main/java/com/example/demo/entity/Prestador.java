@@ -68,6 +68,20 @@ public class Prestador {
 
     private Integer trabajosFinalizados;
 
+    // Agregados de calificacion mantenidos junto con la colección (evitan AVG en las consultas de ranking)
+    @Column(name = "calificacion_suma")
+    private Long calificacionSuma;
+
+    @Column(name = "calificacion_cantidad")
+    private Integer calificacionCantidad;
+
+    @Column(name = "calificacion_promedio")
+    private Double calificacionPromedio;
+
+    // Puntaje de ranking calculado por PrestadorScorer; las consultas de ranking ordenan por él
+    @Column(name = "puntaje_ranking")
+    private Double puntajeRanking;
+
     @ElementCollection
     @CollectionTable(
         name = "prestador_direccion",
@@ -79,4 +93,42 @@ public class Prestador {
     public Prestador(Long id) {
         this.id = id;
     }
+
+    /**
+     * Suma nuevas puntuaciones a los agregados. Si todavía no fueron inicializados
+     * (fila previa al backfill) se recalculan desde la colección completa.
+     */
+    public void sumarCalificaciones(List<Short> nuevas) {
+        if (calificacionSuma == null || calificacionCantidad == null) {
+            recalcularCalificaciones();
+            return;
+        }
+        long suma = calificacionSuma;
+        int cantidad = calificacionCantidad;
+        for (Short s : nuevas) {
+            if (s == null) continue;
+            suma += s;
+            cantidad++;
+        }
+        aplicarAgregados(suma, cantidad);
+    }
+
+    public void recalcularCalificaciones() {
+        long suma = 0;
+        int cantidad = 0;
+        if (calificacion != null) {
+            for (Short s : calificacion) {
+                if (s == null) continue;
+                suma += s;
+                cantidad++;
+            }
+        }
+        aplicarAgregados(suma, cantidad);
+    }
+
+    private void aplicarAgregados(long suma, int cantidad) {
+        this.calificacionSuma = suma;
+        this.calificacionCantidad = cantidad;
+        this.calificacionPromedio = cantidad > 0 ? (double) suma / cantidad : null;
+    }
 }
@@ -35,6 +35,9 @@ public class Solicitud {
     // Nuevo: ID de habilidad (externo)
     private Long habilidadId;
 
+    // ID de zona (externo) donde se presta el servicio; null = sin restricción de zona
+    private Long zonaId;
+
     // Nuevo: Título de la solicitud
     @Column(length = 200)
     private String titulo;
@@ -0,0 +1,66 @@
+package com.example.demo.entity;
+
+import com.example.demo.entity.enums.EstadoDeadLetter;
+import com.example.demo.webhook.WebhookRoute;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Handler de webhook que lanzó una excepción al procesar un evento guardado. Se reintenta
+ * con backoff hasta resolverse o agotar los intentos; uno AGOTADO se puede volver a
+ * encolar a mano desde {@code POST /api/webhook/dead-letters/replay}.
+ */
+@Entity
+@Table(
+    name = "webhook_dead_letter",
+    uniqueConstraints = {
+        @UniqueConstraint(
+            name = "ux_webhook_dead_letter_evento_ruta",
+            columnNames = {"webhook_event_id", "ruta"}
+        )
+    },
+    indexes = {
+        @Index(name = "ix_webhook_dead_letter_proximo", columnList = "estado, proximo_intento")
+    }
+)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class WebhookDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Evento guardado en webhook_event del que se relee el mensaje para reintentar
+    @Column(name = "webhook_event_id", nullable = false)
+    private Long webhookEventId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 40)
+    private WebhookRoute ruta;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private EstadoDeadLetter estado;
+
+    @Column(nullable = false)
+    private int intentos;
+
+    // Próximo reintento; mientras uno está en curso, vence el "lease" de quien lo tomó
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(name = "ultimo_error", columnDefinition = "TEXT")
+    private String ultimoError;
+
+    @Column(name = "creado_at", nullable = false)
+    private LocalDateTime creadoAt;
+
+    @Column(name = "actualizado_at", nullable = false)
+    private LocalDateTime actualizadoAt;
+}
@@ -1,11 +1,19 @@
 package com.example.demo.entity;
 
+import com.example.demo.entity.converter.PayloadComprimidoConverter;
+import com.example.demo.entity.enums.EstadoWebhookEvent;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -16,7 +24,16 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "webhook_event")
+@Table(
+    name = "webhook_event",
+    indexes = {
+        @Index(name = "ix_webhook_event_status", columnList = "status, id"),
+        // Listado paginado por keyset (WebhookEventRepositoryImpl.buscarResumen)
+        @Index(name = "ix_webhook_event_received", columnList = "receivedAt, id"),
+        @Index(name = "ix_webhook_event_topic", columnList = "topic, receivedAt, id"),
+        @Index(name = "ix_webhook_event_event_name", columnList = "eventName, receivedAt, id")
+    }
+)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -24,8 +41,11 @@ import java.time.LocalDateTime;
 @Builder
 public class WebhookEvent {
 
+    // Secuencia pooled (el valor de la secuencia es el techo de un bloque de 50): los inserts
+    // se pueden mandar en batch JDBC y WebhookEventRepository#reservarIds reserva los mismos bloques
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "webhook_event_seq")
+    @SequenceGenerator(name = "webhook_event_seq", sequenceName = "webhook_event_seq", allocationSize = 50)
     private Long id;
 
     @Column(length = 180)
@@ -40,16 +60,60 @@ public class WebhookEvent {
     @Column(length = 120)
     private String subscriptionId;
 
-    @Column(nullable = false, columnDefinition = "TEXT")
-    private String rawPayload;
+    // Payload comprimido (ver PayloadComprimido); se expone como texto con getRawPayload()
+    @JsonIgnore
+    @Convert(converter = PayloadComprimidoConverter.class)
+    @Column(name = "payload_z", columnDefinition = "bytea")
+    private PayloadComprimido payload;
+
+    // Eventos guardados antes de comprimir los payloads; los nuevos lo dejan en null
+    @JsonIgnore
+    @Column(name = "raw_payload", columnDefinition = "TEXT")
+    private String rawPayloadTexto;
 
     @Column(nullable = false)
     private LocalDateTime receivedAt;
 
+    // Eventos anteriores al modo asíncrono quedan como PROCESSED
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20, columnDefinition = "varchar(20) default 'PROCESSED'")
+    @Builder.Default
+    private EstadoWebhookEvent status = EstadoWebhookEvent.PROCESSED;
+
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    @Builder.Default
+    private int attempts = 0;
+
+    private LocalDateTime lockedAt;
+
+    private LocalDateTime processedAt;
+
+    @Column(columnDefinition = "TEXT")
+    private String lastError;
+
+    /** Texto del payload; se descomprime recién acá (una vez por instancia). */
+    public String getRawPayload() {
+        return payload != null ? payload.texto() : rawPayloadTexto;
+    }
+
+    public void setRawPayload(String rawPayload) {
+        this.payload = PayloadComprimido.de(rawPayload);
+        this.rawPayloadTexto = null;
+    }
+
+    public static class WebhookEventBuilder {
+        public WebhookEventBuilder rawPayload(String rawPayload) {
+            return payload(PayloadComprimido.de(rawPayload));
+        }
+    }
+
     @PrePersist
     void prePersist() {
         if (receivedAt == null) {
             receivedAt = LocalDateTime.now();
         }
+        if (status == null) {
+            status = EstadoWebhookEvent.PROCESSED;
+        }
     }
 }
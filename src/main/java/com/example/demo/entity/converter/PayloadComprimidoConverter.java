@@ -0,0 +1,20 @@
+package com.example.demo.entity.converter;
+
+import com.example.demo.entity.PayloadComprimido;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/** Guarda un {@link PayloadComprimido} como bytea sin descomprimirlo al leer la fila. */
+@Converter
+public class PayloadComprimidoConverter implements AttributeConverter<PayloadComprimido, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(PayloadComprimido payload) {
+        return payload == null ? null : payload.bytes();
+    }
+
+    @Override
+    public PayloadComprimido convertToEntityAttribute(byte[] bytes) {
+        return PayloadComprimido.desdeBytes(bytes);
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.demo.entity.enums;
+
+public enum EstadoDeadLetter {
+    PENDIENTE,
+    RESUELTO,
+    AGOTADO
+}
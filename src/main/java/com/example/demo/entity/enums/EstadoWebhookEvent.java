@@ -0,0 +1,8 @@
+package com.example.demo.entity.enums;
+
+public enum EstadoWebhookEvent {
+    PENDING,
+    PROCESSING,
+    PROCESSED,
+    FAILED
+}
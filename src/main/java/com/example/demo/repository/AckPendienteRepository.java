@@ -0,0 +1,67 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.AckPendiente;
+import com.example.demo.entity.enums.EstadoAckPendiente;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface AckPendienteRepository extends JpaRepository<AckPendiente, Long> {
+
+    /**
+     * Registra el ACK ya tomado por quien lo encola (vence en {@code lease}). Si el mensaje ya
+     * tenía un ACK FALLIDO se rearma (el hub lo volvió a entregar); si ya estaba pendiente no
+     * devuelve nada.
+     */
+    @Transactional
+    @Query(value = """
+        INSERT INTO ack_pendiente (message_id, subscription_id, estado, intentos, proximo_intento, creado_at)
+        VALUES (:messageId, :subscriptionId, 'PENDIENTE', 0, :lease, :ahora)
+        ON CONFLICT (message_id, subscription_id) DO UPDATE
+            SET estado = 'PENDIENTE', intentos = 0, proximo_intento = :lease, ultimo_error = NULL
+            WHERE ack_pendiente.estado = 'FALLIDO'
+        RETURNING id
+        """, nativeQuery = true)
+    List<Long> registrar(@Param("messageId") String messageId,
+                         @Param("subscriptionId") String subscriptionId,
+                         @Param("lease") LocalDateTime lease,
+                         @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Toma hasta {@code limite} ACKs vencidos (nuevos que no entraron en la cola, reintentos
+     * o envíos de una instancia caída) y les corre el vencimiento a {@code lease}.
+     */
+    @Transactional
+    @Query(value = """
+        UPDATE ack_pendiente SET proximo_intento = :lease
+        WHERE id IN (
+            SELECT id FROM ack_pendiente
+            WHERE estado = 'PENDIENTE' AND proximo_intento <= :ahora
+            ORDER BY proximo_intento
+            LIMIT :limite
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING *
+        """, nativeQuery = true)
+    List<AckPendiente> tomarVencidos(@Param("ahora") LocalDateTime ahora,
+                                     @Param("lease") LocalDateTime lease,
+                                     @Param("limite") int limite);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        update AckPendiente a
+        set a.intentos = :intentos, a.proximoIntento = :proximo, a.ultimoError = :error, a.estado = :estado
+        where a.id = :id
+        """)
+    int reprogramar(@Param("id") Long id,
+                    @Param("intentos") int intentos,
+                    @Param("proximo") LocalDateTime proximo,
+                    @Param("error") String error,
+                    @Param("estado") EstadoAckPendiente estado);
+}
@@ -2,10 +2,11 @@ package com.example.demo.repository;
 
 import com.example.demo.entity.Prestador;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Transactional;
 
 
 import java.util.List;
@@ -26,97 +27,197 @@ public interface PrestadorRepository extends JpaRepository<Prestador, Long> {
             "WHERE r.external_id = :rubroExternalId", nativeQuery = true)
     List<Prestador> findByRubroIdNative(@Param("rubroExternalId") Long rubroExternalId);
 
-    @Query(value = """
+    /*
+     * Clave de ranking expresada toda en orden ascendente (los DESC van negados) para poder
+     * paginar por keyset con una comparación de filas. El puntaje lo calcula PrestadorScorer y
+     * se persiste en puntaje_ranking. Coincide con ix_prestador_puntaje_keyset y con
+     * PrestadorRankingIndex.ORDEN_RANKING; internal_id desempata.
+     */
+    String RANKING_COLUMNAS = """
+        -COALESCE(p.puntaje_ranking,0),
+          -COALESCE(p.trabajos_finalizados,0),
+          COALESCE(p.precio_hora,1e12),
+          COALESCE(p.apellido,''),
+          COALESCE(p.nombre,''),
+          p.internal_id
+        """;
+
+    String RANKING_ORDER_BY = " ORDER BY " + RANKING_COLUMNAS + " LIMIT :limite";
+
+    // Exclusiones por clave (external_id o internal_id si no tiene); array vacío = ninguna
+    String RANKING_EXCLUSIONES = """
+          AND COALESCE(p.external_id, p.internal_id) <> ALL (CAST(:excluidos AS bigint[]))
+        """;
+
+    // La página siguiente arranca después de la clave de ranking del último prestador visto,
+    // tal como se leyó (ver ClaveRanking): no depende de que esa fila siga igual o exista
+    String RANKING_DESPUES_DE = """
+          AND (""" + RANKING_COLUMNAS + """
+          ) > (:despuesDePuntaje, :despuesDeTrabajos, :despuesDePrecio,
+               :despuesDeApellido, :despuesDeNombre, :despuesDeInternalId)
+        """;
+
+    /**
+     * Valores de {@link #RANKING_COLUMNAS} de un prestador ya leído, en el mismo orden y con
+     * los mismos COALESCE y negaciones, para continuar el keyset después de él.
+     */
+    record ClaveRanking(double puntaje, int trabajos, double precio, String apellido, String nombre,
+                        Long internalId) {
+
+        public static ClaveRanking de(Prestador p) {
+            return new ClaveRanking(
+                    -(p.getPuntajeRanking() != null ? p.getPuntajeRanking() : 0d),
+                    -(p.getTrabajosFinalizados() != null ? p.getTrabajosFinalizados() : 0),
+                    p.getPrecioHora() != null ? p.getPrecioHora() : 1e12,
+                    p.getApellido() != null ? p.getApellido() : "",
+                    p.getNombre() != null ? p.getNombre() : "",
+                    p.getInternalId());
+        }
+    }
+
+    String POR_HABILIDAD = """
         SELECT p.*
         FROM prestador p
-        JOIN prestador_habilidad ph ON ph.prestador_id = p.internal_id
-        JOIN habilidad h ON h.id = ph.habilidad_id
-        JOIN rubro r ON r.id = h.rubro_id
-        LEFT JOIN prestador_calificacion pc ON pc.prestador_id = p.internal_id
-        WHERE r.external_id = :rubroExternalId
-          AND UPPER(p.estado) = 'ACTIVO'
-        GROUP BY p.internal_id
-        ORDER BY
-          (COALESCE(AVG(pc.puntuacion),0) / 5.0
-            + 0.2 * LN(1 + COALESCE(p.trabajos_finalizados,0))) DESC,
-          COALESCE(p.trabajos_finalizados,0) DESC,
-          COALESCE(p.precio_hora, 1e12) ASC,
-          p.apellido ASC,
-          p.nombre ASC
-        """, nativeQuery = true)
-    List<Prestador> findTopByRubroRanked(@Param("rubroExternalId") Long rubroExternalId, Pageable pageable);
+        WHERE UPPER(p.estado) = 'ACTIVO'
+          AND EXISTS (
+            SELECT 1 FROM prestador_habilidad ph
+            JOIN habilidad h ON h.id = ph.habilidad_id
+            WHERE ph.prestador_id = p.internal_id
+              AND h.external_id = :habilidadExternalId
+          )
+        """ + RANKING_EXCLUSIONES;
 
-    @Query(value = """
-      SELECT p.*
-      FROM prestador p
-      JOIN prestador_habilidad ph ON ph.prestador_id = p.internal_id
-      JOIN habilidad h ON h.id = ph.habilidad_id
-      JOIN rubro r ON r.id = h.rubro_id
-      LEFT JOIN prestador_calificacion pc ON pc.prestador_id = p.internal_id
-      WHERE r.external_id = :rubroExternalId
-        AND UPPER(p.estado) = 'ACTIVO'
-        AND p.internal_id NOT IN (
-          SELECT c.prestador_id FROM cotizacion c
-          JOIN solicitud s ON s.internal_id = c.solicitud_id
-          WHERE s.external_id = :solicitudExternalId
-        )
-      GROUP BY p.internal_id
-      ORDER BY
-        (COALESCE(AVG(pc.puntuacion),0)/5.0 + 0.2*LN(1+COALESCE(p.trabajos_finalizados,0))) DESC,
-        COALESCE(p.trabajos_finalizados,0) DESC,
-        COALESCE(p.precio_hora,1e12) ASC,
-        p.apellido ASC, p.nombre ASC
-      """, nativeQuery = true)
-    List<Prestador> findTopByRubroExcluyendoLosQueCotizaron(
+    String POR_RUBRO = """
+        SELECT p.*
+        FROM prestador p
+        WHERE UPPER(p.estado) = 'ACTIVO'
+          AND EXISTS (
+            SELECT 1 FROM prestador_habilidad ph
+            JOIN habilidad h ON h.id = ph.habilidad_id
+            JOIN rubro r ON r.id = h.rubro_id
+            WHERE ph.prestador_id = p.internal_id
+              AND r.external_id = :rubroExternalId
+          )
+        """ + RANKING_EXCLUSIONES;
+
+    @Query(value = POR_HABILIDAD + RANKING_ORDER_BY, nativeQuery = true)
+    List<Prestador> findPrimeraPaginaPorHabilidad(
+        @Param("habilidadExternalId") Long habilidadExternalId,
+        @Param("excluidos") Long[] excluidos,
+        @Param("limite") int limite
+    );
+
+    @Query(value = POR_HABILIDAD + RANKING_DESPUES_DE + RANKING_ORDER_BY, nativeQuery = true)
+    List<Prestador> findPaginaPorHabilidad(
+        @Param("habilidadExternalId") Long habilidadExternalId,
+        @Param("excluidos") Long[] excluidos,
+        @Param("despuesDePuntaje") double despuesDePuntaje,
+        @Param("despuesDeTrabajos") int despuesDeTrabajos,
+        @Param("despuesDePrecio") double despuesDePrecio,
+        @Param("despuesDeApellido") String despuesDeApellido,
+        @Param("despuesDeNombre") String despuesDeNombre,
+        @Param("despuesDeInternalId") Long despuesDeInternalId,
+        @Param("limite") int limite
+    );
+
+    default List<Prestador> findPaginaPorHabilidad(Long habilidadExternalId, Long[] excluidos,
+                                                   ClaveRanking despuesDe, int limite) {
+        return findPaginaPorHabilidad(habilidadExternalId, excluidos, despuesDe.puntaje(), despuesDe.trabajos(),
+            despuesDe.precio(), despuesDe.apellido(), despuesDe.nombre(), despuesDe.internalId(), limite);
+    }
+
+    @Query(value = POR_RUBRO + RANKING_ORDER_BY, nativeQuery = true)
+    List<Prestador> findPrimeraPaginaPorRubro(
+        @Param("rubroExternalId") Long rubroExternalId,
+        @Param("excluidos") Long[] excluidos,
+        @Param("limite") int limite
+    );
+
+    @Query(value = POR_RUBRO + RANKING_DESPUES_DE + RANKING_ORDER_BY, nativeQuery = true)
+    List<Prestador> findPaginaPorRubro(
         @Param("rubroExternalId") Long rubroExternalId,
-        @Param("solicitudExternalId") Long solicitudExternalId,
-        org.springframework.data.domain.Pageable pageable
+        @Param("excluidos") Long[] excluidos,
+        @Param("despuesDePuntaje") double despuesDePuntaje,
+        @Param("despuesDeTrabajos") int despuesDeTrabajos,
+        @Param("despuesDePrecio") double despuesDePrecio,
+        @Param("despuesDeApellido") String despuesDeApellido,
+        @Param("despuesDeNombre") String despuesDeNombre,
+        @Param("despuesDeInternalId") Long despuesDeInternalId,
+        @Param("limite") int limite
     );
 
+    default List<Prestador> findPaginaPorRubro(Long rubroExternalId, Long[] excluidos,
+                                               ClaveRanking despuesDe, int limite) {
+        return findPaginaPorRubro(rubroExternalId, excluidos, despuesDe.puntaje(), despuesDe.trabajos(),
+            despuesDe.precio(), despuesDe.apellido(), despuesDe.nombre(), despuesDe.internalId(), limite);
+    }
+
+    // Backfill único de los agregados de calificacion para filas que todavía no los tienen
+    @Modifying
+    @Transactional
     @Query(value = """
-        SELECT p.*
+        UPDATE prestador p
+        SET calificacion_suma = a.suma,
+            calificacion_cantidad = a.cantidad,
+            calificacion_promedio = a.promedio
+        FROM (
+          SELECT p2.internal_id,
+                 COALESCE(SUM(pc.puntuacion), 0) AS suma,
+                 COUNT(pc.puntuacion) AS cantidad,
+                 AVG(pc.puntuacion) AS promedio
+          FROM prestador p2
+          LEFT JOIN prestador_calificacion pc ON pc.prestador_id = p2.internal_id
+          WHERE p2.calificacion_cantidad IS NULL
+          GROUP BY p2.internal_id
+        ) a
+        WHERE a.internal_id = p.internal_id
+        """, nativeQuery = true)
+    int backfillAgregadosCalificacion();
+
+    // Datos de entrada de PrestadorScorer para recalcular puntaje_ranking en bloque
+    @Query(value = """
+        SELECT p.internal_id,
+               COALESCE(p.calificacion_promedio, 0),
+               COALESCE(p.trabajos_finalizados, 0),
+               p.precio_hora,
+               p.puntaje_ranking
         FROM prestador p
-        JOIN prestador_habilidad ph ON ph.prestador_id = p.internal_id
-        JOIN habilidad h ON h.id = ph.habilidad_id
-        LEFT JOIN prestador_calificacion pc ON pc.prestador_id = p.internal_id
-        WHERE h.external_id = :habilidadExternalId
-          AND UPPER(p.estado) = 'ACTIVO'
-        GROUP BY p.internal_id
-        ORDER BY
-          (COALESCE(AVG(pc.puntuacion),0)/5.0 + 0.2*LN(1+COALESCE(p.trabajos_finalizados,0))) DESC,
-          COALESCE(p.trabajos_finalizados,0) DESC,
-          COALESCE(p.precio_hora,1e12) ASC,
-          p.apellido ASC, p.nombre ASC
         """, nativeQuery = true)
-    List<Prestador> findTopByHabilidadRanked(
-        @Param("habilidadExternalId") Long habilidadExternalId,
-        Pageable pageable
-    );
+    List<Object[]> findDatosPuntaje();
 
+    // Actualiza puntaje_ranking en una sola sentencia a partir de dos listas paralelas "1,2,3"
+    @Modifying
+    @Transactional
     @Query(value = """
-        SELECT p.*
+        UPDATE prestador p
+        SET puntaje_ranking = v.puntaje
+        FROM unnest(
+          CAST(string_to_array(:ids, ',') AS bigint[]),
+          CAST(string_to_array(:puntajes, ',') AS float8[])
+        ) AS v(id, puntaje)
+        WHERE p.internal_id = v.id
+        """, nativeQuery = true)
+    int actualizarPuntajes(@Param("ids") String ids, @Param("puntajes") String puntajes);
+
+    // Carga masiva para PrestadorRankingIndex: una fila por (prestador ACTIVO, habilidad)
+    @Query(value = """
+        SELECT p.internal_id,
+               p.external_id,
+               p.calificacion_promedio,
+               COALESCE(p.trabajos_finalizados, 0),
+               p.precio_hora,
+               p.apellido,
+               p.nombre,
+               h.external_id,
+               r.external_id,
+               z.external_id
         FROM prestador p
-        JOIN prestador_habilidad ph ON ph.prestador_id = p.internal_id
-        JOIN habilidad h ON h.id = ph.habilidad_id
-        LEFT JOIN prestador_calificacion pc ON pc.prestador_id = p.internal_id
-        WHERE h.external_id = :habilidadExternalId
-          AND UPPER(p.estado) = 'ACTIVO'
-          AND p.internal_id NOT IN (
-            SELECT c.prestador_id FROM cotizacion c
-            JOIN solicitud s ON s.internal_id = c.solicitud_id
-            WHERE s.external_id = :solicitudExternalId
-          )
-        GROUP BY p.internal_id
-        ORDER BY
-          (COALESCE(AVG(pc.puntuacion),0)/5.0 + 0.2*LN(1+COALESCE(p.trabajos_finalizados,0))) DESC,
-          COALESCE(p.trabajos_finalizados,0) DESC,
-          COALESCE(p.precio_hora,1e12) ASC,
-          p.apellido ASC, p.nombre ASC
+        LEFT JOIN zona z ON z.id = p.zona_id
+        LEFT JOIN prestador_habilidad ph ON ph.prestador_id = p.internal_id
+        LEFT JOIN habilidad h ON h.id = ph.habilidad_id
+        LEFT JOIN rubro r ON r.id = h.rubro_id
+        WHERE UPPER(p.estado) = 'ACTIVO'
         """, nativeQuery = true)
-    List<Prestador> findTopByHabilidadExcluyendoLosQueCotizaron(
-        @Param("habilidadExternalId") Long habilidadExternalId,
-        @Param("solicitudExternalId") Long solicitudExternalId,
-        Pageable pageable
-    );
+    List<Object[]> findActivosParaRanking();
 
 }
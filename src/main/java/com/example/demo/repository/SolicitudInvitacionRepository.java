@@ -1,10 +1,12 @@
 package com.example.demo.repository;
 
 import com.example.demo.entity.SolicitudInvitacion;
+import com.example.demo.entity.enums.EstadoSolicitud;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +29,20 @@ public interface SolicitudInvitacionRepository extends JpaRepository<SolicitudIn
 
     @Query("select si.prestador.id from SolicitudInvitacion si where si.solicitud.id = :solicitudId")
     List<Long> findPrestadorIdsBySolicitud(@Param("solicitudId") Long solicitudId);
+
+    /**
+     * Invitaciones abiertas (round vigente, sin rechazo ni cotización) de solicitudes en los
+     * estados indicados: [solicitud.internalId, prestador.id, prestador.internalId].
+     */
+    @Query("""
+        select si.solicitud.internalId, si.prestador.id, si.prestador.internalId
+        from SolicitudInvitacion si
+        where si.rechazada = false
+          and si.round = si.solicitud.cotizacionRound
+          and si.solicitud.estado in :estados
+          and not exists (
+              select 1 from Cotizacion c
+              where c.solicitud = si.solicitud and c.prestador = si.prestador and c.round = si.round)
+        """)
+    List<Object[]> findAbiertas(@Param("estados") Collection<EstadoSolicitud> estados);
 }
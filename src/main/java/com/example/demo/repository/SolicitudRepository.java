@@ -31,4 +31,14 @@ public interface SolicitudRepository extends JpaRepository<Solicitud, Long> {
     List<Solicitud> findAsignadasEnDiaYFranja(Long prestadorId, LocalDate dia,
                                             LocalTime desde, LocalTime hasta);
 
+    // Carga masiva para AgendaIndex: turnos tomados (ASIGNADA/EN_PROGRESO) desde un día dado
+    @Query("""
+        SELECT s.internalId, s.prestadorAsignadoId, s.fecha, s.horario FROM Solicitud s
+        WHERE s.prestadorAsignadoId IS NOT NULL
+        AND s.fecha >= :desde
+        AND s.horario IS NOT NULL
+        AND (s.estado = 'ASIGNADA' OR s.estado = 'EN_PROGRESO')
+    """)
+    List<Object[]> findTurnosOcupadosDesde(@Param("desde") LocalDate desde);
+
 }
@@ -0,0 +1,116 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.WebhookDeadLetter;
+import com.example.demo.entity.enums.EstadoDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface WebhookDeadLetterRepository extends JpaRepository<WebhookDeadLetter, Long> {
+
+    /**
+     * Registra el fallo del handler. Si el par (evento, ruta) ya estaba registrado (el evento
+     * se volvió a procesar) vuelve a PENDIENTE con el último error, sin reiniciar los intentos.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+        INSERT INTO webhook_dead_letter (webhook_event_id, ruta, estado, intentos, proximo_intento, ultimo_error, creado_at, actualizado_at)
+        VALUES (:eventoId, :ruta, 'PENDIENTE', 0, :proximo, :error, :ahora, :ahora)
+        ON CONFLICT (webhook_event_id, ruta) DO UPDATE
+            SET estado = 'PENDIENTE', proximo_intento = EXCLUDED.proximo_intento,
+                ultimo_error = EXCLUDED.ultimo_error, actualizado_at = EXCLUDED.actualizado_at
+        """, nativeQuery = true)
+    int registrar(@Param("eventoId") Long eventoId,
+                  @Param("ruta") String ruta,
+                  @Param("error") String error,
+                  @Param("proximo") LocalDateTime proximo,
+                  @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Toma hasta {@code limite} reintentos vencidos y les corre el vencimiento a {@code lease},
+     * así otra instancia (o el próximo poll) no los toma mientras están en curso.
+     */
+    @Transactional
+    @Query(value = """
+        UPDATE webhook_dead_letter SET proximo_intento = :lease
+        WHERE id IN (
+            SELECT id FROM webhook_dead_letter
+            WHERE estado = 'PENDIENTE' AND proximo_intento <= :ahora
+            ORDER BY webhook_event_id, id
+            LIMIT :limite
+            FOR UPDATE SKIP LOCKED
+        )
+        RETURNING *
+        """, nativeQuery = true)
+    List<WebhookDeadLetter> tomarVencidos(@Param("ahora") LocalDateTime ahora,
+                                          @Param("lease") LocalDateTime lease,
+                                          @Param("limite") int limite);
+
+    @Transactional
+    @Modifying
+    @Query("""
+        update WebhookDeadLetter d
+        set d.intentos = :intentos, d.proximoIntento = :proximo, d.ultimoError = :error,
+            d.estado = :estado, d.actualizadoAt = :ahora
+        where d.id = :id
+        """)
+    int reprogramar(@Param("id") Long id,
+                    @Param("intentos") int intentos,
+                    @Param("proximo") LocalDateTime proximo,
+                    @Param("error") String error,
+                    @Param("estado") EstadoDeadLetter estado,
+                    @Param("ahora") LocalDateTime ahora);
+
+    /** Vuelve a encolar los indicados (no resueltos) para reintentarlos ya, con los intentos en cero. */
+    @Transactional
+    @Modifying
+    @Query("""
+        update WebhookDeadLetter d
+        set d.estado = com.example.demo.entity.enums.EstadoDeadLetter.PENDIENTE,
+            d.intentos = 0, d.proximoIntento = :ahora, d.actualizadoAt = :ahora
+        where d.id in :ids and d.estado <> com.example.demo.entity.enums.EstadoDeadLetter.RESUELTO
+        """)
+    int rearmar(@Param("ids") Collection<Long> ids, @Param("ahora") LocalDateTime ahora);
+
+    /** Vuelve a encolar todos los que están en {@code estado}. */
+    @Transactional
+    @Modifying
+    @Query("""
+        update WebhookDeadLetter d
+        set d.estado = com.example.demo.entity.enums.EstadoDeadLetter.PENDIENTE,
+            d.intentos = 0, d.proximoIntento = :ahora, d.actualizadoAt = :ahora
+        where d.estado = :estado
+        """)
+    int rearmarPorEstado(@Param("estado") EstadoDeadLetter estado, @Param("ahora") LocalDateTime ahora);
+
+    @Query(value = """
+        SELECT * FROM webhook_dead_letter
+        WHERE (CAST(:estado AS varchar) IS NULL OR estado = CAST(:estado AS varchar))
+        ORDER BY id DESC
+        LIMIT :limite
+        """, nativeQuery = true)
+    List<WebhookDeadLetter> listar(@Param("estado") String estado, @Param("limite") int limite);
+
+    /**
+     * Borra las dead letters de los eventos indicados, salvo las de eventos que (otra vez)
+     * tienen una PENDIENTE: la retención las vuelve a comprobar al borrar porque pueden
+     * haberse rearmado después de exportar el evento.
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM webhook_dead_letter d
+        WHERE d.webhook_event_id IN (:eventoIds)
+          AND NOT EXISTS (
+              SELECT 1 FROM webhook_dead_letter p
+              WHERE p.webhook_event_id = d.webhook_event_id AND p.estado = 'PENDIENTE'
+          )
+        """, nativeQuery = true)
+    int borrarPorEventos(@Param("eventoIds") Collection<Long> eventoIds);
+}
@@ -1,8 +1,165 @@
 package com.example.demo.repository;
 
 import com.example.demo.entity.WebhookEvent;
+import com.example.demo.entity.enums.EstadoWebhookEvent;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface WebhookEventRepository extends JpaRepository<WebhookEvent, Long>, JpaSpecificationExecutor<WebhookEvent> {
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface WebhookEventRepository extends JpaRepository<WebhookEvent, Long>, JpaSpecificationExecutor<WebhookEvent>,
+        WebhookEventRepositoryCustom {
+
+    /**
+     * Próximos eventos PENDING en orden de llegada, bloqueados para esta transacción.
+     * SKIP LOCKED deja que varios workers (o instancias) tomen lotes distintos sin esperarse.
+     */
+    @Query(value = """
+        SELECT e.id FROM webhook_event e
+        WHERE e.status = 'PENDING'
+        ORDER BY e.id
+        LIMIT :limite
+        FOR UPDATE SKIP LOCKED
+        """, nativeQuery = true)
+    List<Long> findPendientesParaProcesar(@Param("limite") int limite);
+
+    @Modifying
+    @Query("""
+        update WebhookEvent e
+        set e.status = :status, e.lockedAt = :ahora, e.attempts = e.attempts + 1
+        where e.id in :ids
+        """)
+    int marcarTomados(@Param("ids") Collection<Long> ids,
+                      @Param("status") EstadoWebhookEvent status,
+                      @Param("ahora") LocalDateTime ahora);
+
+    @Modifying
+    @Query("""
+        update WebhookEvent e
+        set e.status = :pendiente, e.lockedAt = null
+        where e.status = :enProceso and e.lockedAt < :limite
+        """)
+    int liberarVencidos(@Param("pendiente") EstadoWebhookEvent pendiente,
+                        @Param("enProceso") EstadoWebhookEvent enProceso,
+                        @Param("limite") LocalDateTime limite);
+
+    /**
+     * Reserva {@code cantidad} ids de webhook_event_seq para un insert en lote. Cada nextval
+     * es el techo de un bloque de 50 (como el optimizador pooled de Hibernate), así que se
+     * piden los bloques necesarios y se usan sus ids en orden.
+     */
+    @Query(value = """
+        SELECT b.techo - g AS id
+        FROM (SELECT nextval('webhook_event_seq') AS techo
+              FROM generate_series(1, CAST(CEIL(:cantidad / 50.0) AS integer))) b
+        CROSS JOIN generate_series(49, 0, -1) g
+        ORDER BY id
+        LIMIT :cantidad
+        """, nativeQuery = true)
+    List<Long> reservarIds(@Param("cantidad") int cantidad);
+
+    /**
+     * Inserta un lote de eventos en una sola sentencia. Los que chocan con el índice único
+     * de mensajes (reentregas) se saltean; devuelve los ids que sí se insertaron.
+     * Los payloads van ya comprimidos (PayloadComprimido) y en base64.
+     */
+    @Query(value = """
+        INSERT INTO webhook_event (id, topic, event_name, message_id, subscription_id, payload_z,
+                                   status, attempts, locked_at, received_at)
+        SELECT v.id, v.topic, v.event_name, v.message_id, v.subscription_id, decode(v.payload, 'base64'),
+               :status, CASE WHEN :enProceso THEN 1 ELSE 0 END,
+               CASE WHEN :enProceso THEN CAST(:ahora AS timestamp) END, :ahora
+        FROM unnest(CAST(:ids AS bigint[]), CAST(:topics AS text[]), CAST(:eventNames AS text[]),
+                    CAST(:messageIds AS text[]), CAST(:subscriptionIds AS text[]), CAST(:payloads AS text[]))
+             AS v(id, topic, event_name, message_id, subscription_id, payload)
+        ON CONFLICT DO NOTHING
+        RETURNING id
+        """, nativeQuery = true)
+    List<Long> insertarLote(@Param("ids") Long[] ids,
+                            @Param("topics") String[] topics,
+                            @Param("eventNames") String[] eventNames,
+                            @Param("messageIds") String[] messageIds,
+                            @Param("subscriptionIds") String[] subscriptionIds,
+                            @Param("payloads") String[] payloads,
+                            @Param("status") String status,
+                            @Param("enProceso") boolean enProceso,
+                            @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * Cierra un lote de eventos (payload final, estado y error) en una sola sentencia.
+     * Los payloads van comprimidos y en base64, como en {@link #insertarLote}.
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE webhook_event w
+        SET payload_z = decode(v.payload, 'base64'), raw_payload = NULL,
+            status = v.status, last_error = v.last_error,
+            processed_at = :ahora, locked_at = NULL
+        FROM unnest(CAST(:ids AS bigint[]), CAST(:payloads AS text[]), CAST(:estados AS text[]),
+                    CAST(:errores AS text[]))
+             AS v(id, payload, status, last_error)
+        WHERE w.id = v.id
+        """, nativeQuery = true)
+    int cerrarLote(@Param("ids") Long[] ids,
+                   @Param("payloads") String[] payloads,
+                   @Param("estados") String[] estados,
+                   @Param("errores") String[] errores,
+                   @Param("ahora") LocalDateTime ahora);
+
+    /**
+     * received_at del evento más viejo que la retención puede archivar: terminado (PROCESSED
+     * o FAILED), anterior a {@code antesDe} y sin dead letters pendientes. Null si no hay.
+     */
+    @Query(value = """
+        SELECT MIN(e.received_at) FROM webhook_event e
+        WHERE e.received_at < :antesDe
+          AND e.status IN ('PROCESSED', 'FAILED')
+          AND NOT EXISTS (
+              SELECT 1 FROM webhook_dead_letter d
+              WHERE d.webhook_event_id = e.id AND d.estado = 'PENDIENTE'
+          )
+        """, nativeQuery = true)
+    LocalDateTime primerArchivable(@Param("antesDe") LocalDateTime antesDe);
+
+    /**
+     * Siguiente tanda de eventos archivables de [desde, hasta), en orden de id a partir de
+     * {@code despuesDeId}.
+     */
+    @Query(value = """
+        SELECT e.* FROM webhook_event e
+        WHERE e.received_at >= :desde AND e.received_at < :hasta
+          AND e.status IN ('PROCESSED', 'FAILED')
+          AND e.id > :despuesDeId
+          AND NOT EXISTS (
+              SELECT 1 FROM webhook_dead_letter d
+              WHERE d.webhook_event_id = e.id AND d.estado = 'PENDIENTE'
+          )
+        ORDER BY e.id
+        LIMIT :limite
+        """, nativeQuery = true)
+    List<WebhookEvent> archivables(@Param("desde") LocalDateTime desde,
+                                   @Param("hasta") LocalDateTime hasta,
+                                   @Param("despuesDeId") long despuesDeId,
+                                   @Param("limite") int limite);
+
+    /**
+     * Borra los eventos ya archivados que siguen siendo archivables: si entre la exportación
+     * y el borrado volvieron a tener una dead letter PENDIENTE (o a procesarse) se conservan.
+     */
+    @Modifying
+    @Query(value = """
+        DELETE FROM webhook_event e
+        WHERE e.id IN (:ids)
+          AND e.status IN ('PROCESSED', 'FAILED')
+          AND NOT EXISTS (
+              SELECT 1 FROM webhook_dead_letter d
+              WHERE d.webhook_event_id = e.id AND d.estado = 'PENDIENTE'
+          )
+        """, nativeQuery = true)
+    int borrarArchivados(@Param("ids") Collection<Long> ids);
 }
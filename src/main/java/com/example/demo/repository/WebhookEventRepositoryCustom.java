@@ -0,0 +1,26 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.WebhookEventResumenDTO;
+import com.example.demo.entity.WebhookEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface WebhookEventRepositoryCustom {
+
+    /** Filtros opcionales del listado; los null no filtran. {@code hasta} es exclusivo. */
+    record Filtro(String topic, String eventName, String messageId, LocalDateTime desde, LocalDateTime hasta) {}
+
+    /**
+     * Eventos más nuevos primero, paginados por keyset sobre (received_at, id): trae los
+     * anteriores a ({@code cursorAt}, {@code cursorId}), o desde el principio si son null.
+     */
+    List<WebhookEventResumenDTO> buscarResumen(Filtro filtro, LocalDateTime cursorAt, Long cursorId, int limite);
+
+    /**
+     * Eventos ya cerrados (PROCESSED o FAILED) en orden de id, a partir del siguiente a
+     * {@code despuesDeId} y hasta {@code hastaId} inclusive (null = sin tope). Lo recorre el
+     * replay de a páginas.
+     */
+    List<WebhookEvent> buscarParaReplay(Filtro filtro, long despuesDeId, Long hastaId, int limite);
+}
@@ -0,0 +1,92 @@
+package com.example.demo.repository;
+
+import com.example.demo.dto.WebhookEventResumenDTO;
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.entity.enums.EstadoWebhookEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La consulta se arma solo con los filtros presentes, así cada combinación usa su índice
+ * (ix_webhook_event_received, ix_webhook_event_topic, ix_webhook_event_event_name o
+ * ux_webhook_event_mensaje) en lugar de un plan genérico con "param IS NULL OR ...".
+ */
+class WebhookEventRepositoryImpl implements WebhookEventRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<WebhookEventResumenDTO> buscarResumen(Filtro filtro, LocalDateTime cursorAt, Long cursorId, int limite) {
+        StringBuilder jpql = new StringBuilder("""
+            select new com.example.demo.dto.WebhookEventResumenDTO(
+                e.id, e.topic, e.eventName, e.messageId, e.subscriptionId,
+                e.receivedAt, e.status, e.attempts, e.processedAt, e.lastError)
+            from WebhookEvent e
+            where 1 = 1
+            """);
+        Map<String, Object> params = new HashMap<>();
+        agregarFiltro(jpql, params, filtro);
+        if (cursorAt != null && cursorId != null) {
+            jpql.append(" and (e.receivedAt, e.id) < (:cursorAt, :cursorId)");
+            params.put("cursorAt", cursorAt);
+            params.put("cursorId", cursorId);
+        }
+        jpql.append(" order by e.receivedAt desc, e.id desc");
+
+        TypedQuery<WebhookEventResumenDTO> query = entityManager.createQuery(jpql.toString(), WebhookEventResumenDTO.class);
+        params.forEach(query::setParameter);
+        return query.setMaxResults(limite).getResultList();
+    }
+
+    @Override
+    public List<WebhookEvent> buscarParaReplay(Filtro filtro, long despuesDeId, Long hastaId, int limite) {
+        // PENDING/PROCESSING quedan para WebhookEventWorker
+        StringBuilder jpql = new StringBuilder("""
+            select e from WebhookEvent e
+            where e.id > :despuesDeId and e.status in (:cerrados)
+            """);
+        Map<String, Object> params = new HashMap<>();
+        params.put("despuesDeId", despuesDeId);
+        params.put("cerrados", List.of(EstadoWebhookEvent.PROCESSED, EstadoWebhookEvent.FAILED));
+        if (hastaId != null) {
+            jpql.append(" and e.id <= :hastaId");
+            params.put("hastaId", hastaId);
+        }
+        agregarFiltro(jpql, params, filtro);
+        jpql.append(" order by e.id");
+
+        TypedQuery<WebhookEvent> query = entityManager.createQuery(jpql.toString(), WebhookEvent.class);
+        params.forEach(query::setParameter);
+        return query.setMaxResults(limite).getResultList();
+    }
+
+    private static void agregarFiltro(StringBuilder jpql, Map<String, Object> params, Filtro filtro) {
+        if (filtro.topic() != null) {
+            jpql.append(" and e.topic = :topic");
+            params.put("topic", filtro.topic());
+        }
+        if (filtro.eventName() != null) {
+            jpql.append(" and e.eventName = :eventName");
+            params.put("eventName", filtro.eventName());
+        }
+        if (filtro.messageId() != null) {
+            jpql.append(" and e.messageId = :messageId");
+            params.put("messageId", filtro.messageId());
+        }
+        if (filtro.desde() != null) {
+            jpql.append(" and e.receivedAt >= :desde");
+            params.put("desde", filtro.desde());
+        }
+        if (filtro.hasta() != null) {
+            jpql.append(" and e.receivedAt < :hasta");
+            params.put("hasta", filtro.hasta());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Solicitud;
+import com.example.demo.entity.enums.EstadoSolicitud;
+import com.example.demo.repository.SolicitudRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Agenda en memoria de los prestadores: por prestador (ID externo) y por día, los horarios
+ * de inicio de sus solicitudes ASIGNADA/EN_PROGRESO. Permite descartar candidatos ocupados
+ * en el matching sin consultar la base por cada uno. La superposición se decide con
+ * {@link #franja}, la misma regla que usa la consulta de SolicitudService cuando el índice
+ * no está cargado; los días que ya pasaron se podan todas las noches.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AgendaIndex {
+
+    private final SolicitudRepository solicitudRepository;
+
+    @Value("${solicitudes.invite.slot-minutes:60}")
+    private int slotMinutes;
+
+    @Value("${matching.agenda-index.enabled:true}")
+    private boolean enabled;
+
+    // Se reemplazan completos en cada recarga, igual que PrestadorRankingIndex
+    private volatile Map<Long, AgendaPrestador> porPrestador = new ConcurrentHashMap<>();
+    private volatile Map<Long, Turno> porSolicitud = new ConcurrentHashMap<>();
+
+    private volatile boolean cargado = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        if (!enabled) {
+            log.info("Índice de agenda deshabilitado; la disponibilidad se consultará en la base");
+            return;
+        }
+        try {
+            recargar();
+        } catch (Exception e) {
+            log.error("No se pudo cargar el índice de agenda; la disponibilidad se consultará en la base", e);
+        }
+    }
+
+    /**
+     * Reconstruye la agenda con los turnos tomados desde hoy en adelante.
+     */
+    public synchronized void recargar() {
+        long inicio = System.nanoTime();
+        Map<Long, AgendaPrestador> prestadores = new ConcurrentHashMap<>();
+        Map<Long, Turno> solicitudes = new ConcurrentHashMap<>();
+        for (Object[] row : solicitudRepository.findTurnosOcupadosDesde(LocalDate.now())) {
+            Turno turno = turno((Long) row[0], (Long) row[1], (LocalDate) row[2], (LocalTime) row[3]);
+            if (turno != null) {
+                solicitudes.put(turno.solicitudId(), turno);
+                prestadores.computeIfAbsent(turno.prestadorId(), k -> new AgendaPrestador()).agregar(turno);
+            }
+        }
+        porPrestador = prestadores;
+        porSolicitud = solicitudes;
+        cargado = enabled;
+        log.info("Índice de agenda cargado: {} turnos de {} prestadores en {} ms",
+                solicitudes.size(), prestadores.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    public int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    /**
+     * {@code true} si el prestador no tiene otro turno del día que se superponga con
+     * [horario, horario + slot-minutes); el turno de la propia solicitud no cuenta.
+     */
+    public boolean estaLibre(Long prestadorId, LocalDate fecha, LocalTime horario, Long solicitudId) {
+        if (prestadorId == null || fecha == null || horario == null) {
+            return true;
+        }
+        AgendaPrestador agenda = porPrestador.get(prestadorId);
+        if (agenda == null) {
+            return true;
+        }
+        LocalTime[] franja = franja(horario, slotMinutes);
+        return agenda.libre(fecha, franja[0], franja[1], solicitudId);
+    }
+
+    /**
+     * Horarios de inicio que se superponen con un turno de {@code slotMinutes} minutos que
+     * empieza en {@code horario}: los de (horario - slot, horario + slot), como rango cerrado
+     * [desde, hasta] y cortado en la medianoche. Lo comparten el índice y la consulta
+     * findAsignadasEnDiaYFranja para que ambos caminos den lo mismo.
+     */
+    public static LocalTime[] franja(LocalTime horario, int slotMinutes) {
+        long margen = Math.max(slotMinutes, 1) - 1L;
+        LocalTime desde = horario.minusMinutes(margen);
+        LocalTime hasta = horario.plusMinutes(margen);
+        if (desde.isAfter(horario)) {
+            desde = LocalTime.MIN;
+        }
+        if (hasta.isBefore(horario)) {
+            hasta = LocalTime.MAX;
+        }
+        return new LocalTime[]{desde, hasta};
+    }
+
+    /**
+     * Descarta los turnos de días anteriores a hoy: ya no pueden superponerse con nada.
+     */
+    @Scheduled(cron = "${matching.agenda-index.poda-cron:0 5 0 * * *}")
+    public void podar() {
+        if (cargado) {
+            podar(LocalDate.now());
+        }
+    }
+
+    synchronized void podar(LocalDate hoy) {
+        int antes = porSolicitud.size();
+        porSolicitud.values().removeIf(t -> t.fecha().isBefore(hoy));
+        porPrestador.values().removeIf(agenda -> agenda.podar(hoy));
+        log.debug("Agenda podada: {} turnos de días anteriores a {}", antes - porSolicitud.size(), hoy);
+    }
+
+    /**
+     * Refleja el estado actual de la solicitud en la agenda: si está ASIGNADA/EN_PROGRESO
+     * con prestador y turno ocupa la franja, en cualquier otro caso (cancelada, completada,
+     * reasignada) libera la que tuviera. Se invoca dentro de la transacción que la modificó
+     * y se aplica después del commit.
+     */
+    public void registrar(Solicitud solicitud) {
+        if (!cargado || solicitud == null || solicitud.getInternalId() == null) {
+            return;
+        }
+        final Long solicitudId = solicitud.getInternalId();
+        final Turno nuevo = ocupaAgenda(solicitud.getEstado())
+                ? turno(solicitudId, solicitud.getPrestadorAsignadoId(), solicitud.getFecha(), solicitud.getHorario())
+                : null;
+        despuesDelCommit(() -> {
+            synchronized (this) {
+                Turno anterior = porSolicitud.remove(solicitudId);
+                if (anterior != null) {
+                    AgendaPrestador agenda = porPrestador.get(anterior.prestadorId());
+                    if (agenda != null) {
+                        agenda.quitar(anterior);
+                    }
+                }
+                if (nuevo != null && !nuevo.fecha().isBefore(LocalDate.now())) {
+                    porSolicitud.put(solicitudId, nuevo);
+                    porPrestador.computeIfAbsent(nuevo.prestadorId(), k -> new AgendaPrestador()).agregar(nuevo);
+                }
+            }
+        });
+    }
+
+    private static boolean ocupaAgenda(EstadoSolicitud estado) {
+        return estado == EstadoSolicitud.ASIGNADA || estado == EstadoSolicitud.EN_PROGRESO;
+    }
+
+    private static Turno turno(Long solicitudId, Long prestadorId, LocalDate fecha, LocalTime horario) {
+        if (solicitudId == null || prestadorId == null || fecha == null || horario == null) {
+            return null;
+        }
+        return new Turno(solicitudId, prestadorId, fecha, horario);
+    }
+
+    private static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+
+    private record Turno(Long solicitudId, Long prestadorId, LocalDate fecha, LocalTime horario) {}
+
+    /**
+     * Turnos de un prestador por día, indexados por horario de inicio (puede haber más de
+     * una solicitud en el mismo horario).
+     */
+    private static final class AgendaPrestador {
+        private final Map<LocalDate, NavigableMap<LocalTime, Set<Long>>> porDia = new HashMap<>();
+
+        synchronized void agregar(Turno t) {
+            porDia.computeIfAbsent(t.fecha(), k -> new TreeMap<>())
+                    .computeIfAbsent(t.horario(), k -> new HashSet<>())
+                    .add(t.solicitudId());
+        }
+
+        synchronized void quitar(Turno t) {
+            NavigableMap<LocalTime, Set<Long>> delDia = porDia.get(t.fecha());
+            Set<Long> solicitudes = delDia != null ? delDia.get(t.horario()) : null;
+            if (solicitudes == null || !solicitudes.remove(t.solicitudId())) {
+                return;
+            }
+            if (solicitudes.isEmpty()) {
+                delDia.remove(t.horario());
+            }
+            if (delDia.isEmpty()) {
+                porDia.remove(t.fecha());
+            }
+        }
+
+        synchronized boolean libre(LocalDate fecha, LocalTime desde, LocalTime hasta, Long solicitudId) {
+            NavigableMap<LocalTime, Set<Long>> delDia = porDia.get(fecha);
+            if (delDia == null) {
+                return true;
+            }
+            for (Set<Long> solicitudes : delDia.subMap(desde, true, hasta, true).values()) {
+                for (Long otra : solicitudes) {
+                    if (!Objects.equals(otra, solicitudId)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Quita los días anteriores a {@code hoy}; devuelve true si la agenda quedó vacía. */
+        synchronized boolean podar(LocalDate hoy) {
+            porDia.keySet().removeIf(fecha -> fecha.isBefore(hoy));
+            return porDia.isEmpty();
+        }
+    }
+}
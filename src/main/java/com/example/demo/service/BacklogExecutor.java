@@ -0,0 +1,64 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool acotado para procesar el backlog de solicitudes en paralelo. Tiene
+ * {@code solicitudes.backlog.parallelism} hilos (cada uno usa a lo sumo una conexión a la vez)
+ * y una cola limitada; si se llena, la tarea corre en el hilo que la envía.
+ */
+@Component
+@Slf4j
+public class BacklogExecutor {
+
+    private final ThreadPoolExecutor pool;
+
+    public BacklogExecutor(
+            @Value("${solicitudes.backlog.parallelism:4}") int parallelism,
+            @Value("${solicitudes.backlog.queue-capacity:1000}") int queueCapacity) {
+        int hilos = Math.max(parallelism, 1);
+        AtomicInteger secuencia = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(
+                hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                r -> {
+                    Thread t = new Thread(r, "backlog-" + secuencia.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        log.info("Pool de backlog de solicitudes: {} hilos, cola {}", hilos, queueCapacity);
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<T> tarea) {
+        return CompletableFuture.supplyAsync(tarea, pool);
+    }
+
+    public int getParallelism() {
+        return pool.getMaximumPoolSize();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(30, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
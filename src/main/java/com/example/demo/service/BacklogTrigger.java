@@ -0,0 +1,87 @@
+package com.example.demo.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Disparo del backlog CREADA con debounce: cada alta de solicitud solo marca que hay trabajo,
+ * y una única corrida en segundo plano ({@link SolicitudService#procesarBacklog}) arranca
+ * {@code solicitudes.backlog.debounce-ms} después. Las marcas que llegan mientras tanto o
+ * durante la corrida se juntan en la siguiente, así una ráfaga de altas dispara unas pocas
+ * corridas en lugar de una por evento. Nunca hay dos corridas a la vez.
+ */
+@Component
+@Slf4j
+public class BacklogTrigger {
+
+    private final SolicitudService solicitudService;
+    private final long debounceMs;
+    private final ScheduledExecutorService programador;
+    // Hay trabajo sin drenar
+    private final AtomicBoolean pendiente = new AtomicBoolean();
+    // Hay una corrida programada o en curso
+    private final AtomicBoolean programado = new AtomicBoolean();
+    private final Counter marcas;
+    private final Counter corridas;
+
+    public BacklogTrigger(SolicitudService solicitudService,
+                          MeterRegistry meterRegistry,
+                          @Value("${solicitudes.backlog.debounce-ms:500}") long debounceMs) {
+        this.solicitudService = solicitudService;
+        this.debounceMs = Math.max(debounceMs, 0);
+        this.programador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "backlog-trigger");
+            t.setDaemon(true);
+            return t;
+        });
+        this.marcas = Counter.builder("solicitudes.backlog.marcas")
+                .description("Pedidos de procesar el backlog CREADA").register(meterRegistry);
+        this.corridas = Counter.builder("solicitudes.backlog.corridas")
+                .description("Corridas del backlog CREADA disparadas por eventos").register(meterRegistry);
+    }
+
+    /** Hay solicitudes nuevas: el backlog se procesa en la próxima corrida. */
+    public void marcar() {
+        marcas.increment();
+        pendiente.set(true);
+        programar();
+    }
+
+    private void programar() {
+        if (programado.compareAndSet(false, true)) {
+            programador.schedule(this::drenar, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drenar() {
+        try {
+            pendiente.set(false);
+            corridas.increment();
+            SolicitudService.ResultadoBacklog resultado = solicitudService.procesarBacklog();
+            log.info("Backlog CREADA disparado por eventos: {} procesadas, {} omitidas, {} con error",
+                    resultado.procesadas(), resultado.omitidas(), resultado.fallidas().size());
+        } catch (Exception e) {
+            log.error("Error procesando backlog de solicitudes CREADA", e);
+        } finally {
+            programado.set(false);
+            // Marcas que llegaron durante la corrida
+            if (pendiente.get()) {
+                programar();
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        programador.shutdownNow();
+    }
+}
@@ -20,6 +20,9 @@ import java.util.List;
 public class CalificacionService {
 
   @Autowired private PrestadorRepository prestadorRepository;
+  @Autowired private PrestadorRankingIndex rankingIndex;
+  @Autowired private PrestadorScorer scorer;
+  @Autowired private RankingCandidatosCache rankingCache;
 
   @Transactional(propagation = Propagation.REQUIRES_NEW)
   public void appendBatchItem(RecibirCalificacionesDTO item) {
@@ -57,6 +60,10 @@ public class CalificacionService {
     }
 
     p.getCalificacion().addAll(limpias);
+    p.sumarCalificaciones(limpias);
+    p.setPuntajeRanking(scorer.score(p));
     prestadorRepository.save(p);
+    rankingIndex.actualizar(p);
+    rankingCache.invalidar(p.getHabilidades());
   }
 }
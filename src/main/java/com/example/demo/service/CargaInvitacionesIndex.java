@@ -0,0 +1,173 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Solicitud;
+import com.example.demo.entity.enums.EstadoSolicitud;
+import com.example.demo.repository.SolicitudInvitacionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carga viva de los prestadores: invitaciones abiertas (round vigente, sin cotización ni
+ * rechazo) por prestador (ID externo). Se reconstruye desde solicitud_invitacion al iniciar
+ * y se mantiene con los eventos de invitación, cotización, rechazo y cierre de solicitud,
+ * siempre después del commit. Las actualizaciones van por clave sobre ConcurrentHashMap
+ * (bloqueo por bin), así que invitaciones de prestadores distintos no compiten entre sí.
+ */
+@Component
+@Slf4j
+public class CargaInvitacionesIndex {
+
+    private static final Set<EstadoSolicitud> ESTADOS_ABIERTOS =
+            EnumSet.of(EstadoSolicitud.CREADA, EstadoSolicitud.COTIZANDO);
+
+    private final SolicitudInvitacionRepository invitacionRepository;
+    private final boolean enabled;
+    private final int maxAbiertas;
+
+    // solicitud (internal_id) -> prestadores con invitación abierta; y el contador por prestador
+    private volatile Map<Long, Set<Long>> porSolicitud = new ConcurrentHashMap<>();
+    private volatile Map<Long, AtomicInteger> porPrestador = new ConcurrentHashMap<>();
+
+    private volatile boolean cargado = false;
+
+    public CargaInvitacionesIndex(
+            SolicitudInvitacionRepository invitacionRepository,
+            MeterRegistry meterRegistry,
+            @Value("${matching.carga.enabled:true}") boolean enabled,
+            @Value("${matching.carga.max-abiertas:5}") int maxAbiertas) {
+        this.invitacionRepository = invitacionRepository;
+        this.enabled = enabled;
+        this.maxAbiertas = maxAbiertas;
+        Gauge.builder("matching.invitaciones.abiertas", this, CargaInvitacionesIndex::totalAbiertas)
+                .description("Invitaciones a cotizar pendientes de respuesta")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        if (!enabled) {
+            log.info("Control de carga de invitaciones deshabilitado");
+            return;
+        }
+        try {
+            recargar();
+        } catch (Exception e) {
+            log.error("No se pudo cargar la carga de invitaciones; el matching no la tendrá en cuenta", e);
+        }
+    }
+
+    public synchronized void recargar() {
+        long inicio = System.nanoTime();
+        Map<Long, Set<Long>> solicitudes = new ConcurrentHashMap<>();
+        Map<Long, AtomicInteger> prestadores = new ConcurrentHashMap<>();
+        for (Object[] row : invitacionRepository.findAbiertas(ESTADOS_ABIERTOS)) {
+            Long solicitudId = (Long) row[0];
+            Long prestadorId = row[1] != null ? (Long) row[1] : (Long) row[2];
+            if (solicitudes.computeIfAbsent(solicitudId, k -> ConcurrentHashMap.newKeySet()).add(prestadorId)) {
+                prestadores.computeIfAbsent(prestadorId, k -> new AtomicInteger()).incrementAndGet();
+            }
+        }
+        porSolicitud = solicitudes;
+        porPrestador = prestadores;
+        cargado = enabled;
+        log.info("Carga de invitaciones cargada: {} solicitudes abiertas, {} prestadores con invitaciones en {} ms",
+                solicitudes.size(), prestadores.size(), (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    public int abiertas(Long prestadorId) {
+        if (prestadorId == null) {
+            return 0;
+        }
+        AtomicInteger n = porPrestador.get(prestadorId);
+        return n == null ? 0 : n.get();
+    }
+
+    /**
+     * {@code true} si el prestador ya tiene {@code matching.carga.max-abiertas} invitaciones
+     * sin responder: el matching lo deja para después de los demás candidatos.
+     */
+    public boolean saturado(Long prestadorId) {
+        return cargado && maxAbiertas > 0 && abiertas(prestadorId) >= maxAbiertas;
+    }
+
+    /** Invitación enviada al prestador en el round vigente de la solicitud. */
+    public void abrir(Solicitud solicitud, Long prestadorId) {
+        if (!cargado || solicitud == null || solicitud.getInternalId() == null || prestadorId == null) {
+            return;
+        }
+        final Long solicitudId = solicitud.getInternalId();
+        despuesDelCommit(() -> porSolicitud.compute(solicitudId, (k, abiertos) -> {
+            Set<Long> set = abiertos != null ? abiertos : ConcurrentHashMap.newKeySet();
+            if (set.add(prestadorId)) {
+                porPrestador.computeIfAbsent(prestadorId, p -> new AtomicInteger()).incrementAndGet();
+            }
+            return set;
+        }));
+    }
+
+    /** El prestador cotizó o rechazó: su invitación deja de estar abierta. */
+    public void cerrar(Solicitud solicitud, Long prestadorId) {
+        if (!cargado || solicitud == null || solicitud.getInternalId() == null || prestadorId == null) {
+            return;
+        }
+        final Long solicitudId = solicitud.getInternalId();
+        despuesDelCommit(() -> porSolicitud.computeIfPresent(solicitudId, (k, abiertos) -> {
+            if (abiertos.remove(prestadorId)) {
+                decrementar(prestadorId);
+            }
+            return abiertos.isEmpty() ? null : abiertos;
+        }));
+    }
+
+    /** Nuevo round, asignación o cancelación: se cierran todas las invitaciones de la solicitud. */
+    public void cerrarTodas(Solicitud solicitud) {
+        if (!cargado || solicitud == null || solicitud.getInternalId() == null) {
+            return;
+        }
+        final Long solicitudId = solicitud.getInternalId();
+        despuesDelCommit(() -> porSolicitud.computeIfPresent(solicitudId, (k, abiertos) -> {
+            for (Long prestadorId : new HashSet<>(abiertos)) {
+                decrementar(prestadorId);
+            }
+            return null;
+        }));
+    }
+
+    private void decrementar(Long prestadorId) {
+        porPrestador.computeIfPresent(prestadorId, (k, n) -> n.decrementAndGet() <= 0 ? null : n);
+    }
+
+    private double totalAbiertas() {
+        return porPrestador.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    private static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
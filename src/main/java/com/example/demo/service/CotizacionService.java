@@ -82,6 +82,12 @@ public class CotizacionService {
     @Autowired
     private SolicitudInvitacionRepository solicitudInvitacionRepository;
 
+    @Autowired
+    private AgendaIndex agendaIndex;
+
+    @Autowired
+    private CargaInvitacionesIndex cargaInvitaciones;
+
     @Value("${solicitudes.cotizaciones.wait-minutes:5}")
     private long waitMinutes;
 
@@ -127,6 +133,7 @@ public class CotizacionService {
             created = true;
         }
         cotizacion = cotizacionRepository.save(cotizacion);
+        cargaInvitaciones.cerrar(solicitud, prestador.getId() != null ? prestador.getId() : prestador.getInternalId());
 
         List<Cotizacion> cotizacionesSolicitud = cotizacionRepository
                 .findBySolicitud_InternalIdAndRound(solicitud.getInternalId(), currentRound);
@@ -340,6 +347,8 @@ public class CotizacionService {
         solicitud.setEstado(com.example.demo.entity.enums.EstadoSolicitud.ASIGNADA);
         solicitud.setPrestadorAsignadoId(prestador.getId());
         solicitudRepository.save(solicitud);
+        agendaIndex.registrar(solicitud);
+        cargaInvitaciones.cerrarTodas(solicitud);
 
         // Crear y enviar solicitud de pago
         String concepto = (in.getConcepto() != null && !in.getConcepto().isBlank())
@@ -18,6 +18,8 @@ public class HabilidadSyncService {
 
     private final HabilidadRepository habilidadRepository;
     private final RubroRepository rubroRepository;
+    private final PrestadorRankingIndex rankingIndex;
+    private final RankingCandidatosCache rankingCache;
 
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public Habilidad upsertDesdeDTO(HabilidadAltaWebhookDTO dto) {
@@ -44,10 +46,16 @@ public class HabilidadSyncService {
         if (esNueva) {
             habilidad.setExternalId(dto.getId());
         }
+        boolean cambioRubro = !esNueva && (habilidad.getRubro() == null
+            || !java.util.Objects.equals(habilidad.getRubro().getId(), rubro.getId()));
         habilidad.setNombre(dto.getNombre().trim());
         habilidad.setRubro(rubro);
 
         Habilidad guardada = habilidadRepository.save(habilidad);
+        if (cambioRubro) {
+            rankingIndex.recargarDespuesDelCommit();
+            rankingCache.invalidarTodo();
+        }
         log.info("{} habilidad extId={} nombre='{}' rubro={}",
             esNueva ? "Creada" : "Actualizada",
             dto.getId(),
@@ -77,10 +85,17 @@ public class HabilidadSyncService {
         Rubro rubro = rubroRepository.findByExternalId(dto.getIdRubro())
             .orElseThrow(() -> new IllegalArgumentException("Rubro no encontrado: " + dto.getIdRubro()));
 
+        boolean cambioRubro = habilidad.getRubro() == null
+            || !java.util.Objects.equals(habilidad.getRubro().getId(), rubro.getId());
         habilidad.setNombre(dto.getNombre().trim());
         habilidad.setRubro(rubro);
 
         Habilidad guardada = habilidadRepository.save(habilidad);
+        if (cambioRubro) {
+            // El índice de ranking agrupa por rubro: los prestadores de esta habilidad cambian de grupo
+            rankingIndex.recargarDespuesDelCommit();
+            rankingCache.invalidarTodo();
+        }
         log.info("Modificada habilidad extId={} nuevoNombre='{}' rubro={}",
             dto.getId(),
             dto.getNombre(),
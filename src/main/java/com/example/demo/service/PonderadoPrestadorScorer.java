@@ -0,0 +1,48 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Puntaje lineal con pesos configurables:
+ * {@code calificacion·promedio/5 + trabajos·ln(1+trabajos) − precio·ln(1+precioHora)}.
+ * Con los valores por defecto reproduce la fórmula original (promedio/5 + 0.2·ln(1+trabajos)).
+ */
+@Component
+public class PonderadoPrestadorScorer implements PrestadorScorer {
+
+    // Peso de calificación ya dividido por 5: el cálculo simple y el por lotes deben dar el mismo double
+    private final double factorCalificacion;
+    private final double pesoTrabajos;
+    private final double pesoPrecio;
+
+    public PonderadoPrestadorScorer(
+            @Value("${matching.scoring.peso-calificacion:1.0}") double pesoCalificacion,
+            @Value("${matching.scoring.peso-trabajos:0.2}") double pesoTrabajos,
+            @Value("${matching.scoring.peso-precio:0.0}") double pesoPrecio) {
+        this.factorCalificacion = pesoCalificacion / 5.0;
+        this.pesoTrabajos = pesoTrabajos;
+        this.pesoPrecio = pesoPrecio;
+    }
+
+    @Override
+    public double score(double promedioCalificacion, int trabajosFinalizados, double precioHora) {
+        double s = factorCalificacion * promedioCalificacion
+                + pesoTrabajos * Math.log1p(Math.max(trabajosFinalizados, 0));
+        return pesoPrecio == 0d ? s : s - pesoPrecio * Math.log1p(Math.max(precioHora, 0d));
+    }
+
+    @Override
+    public void score(double[] promedios, int[] trabajos, double[] precios, double[] out, int n) {
+        if (pesoPrecio == 0d) {
+            for (int i = 0; i < n; i++) {
+                out[i] = factorCalificacion * promedios[i] + pesoTrabajos * Math.log1p(Math.max(trabajos[i], 0));
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            out[i] = factorCalificacion * promedios[i] + pesoTrabajos * Math.log1p(Math.max(trabajos[i], 0))
+                    - pesoPrecio * Math.log1p(Math.max(precios[i], 0d));
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Habilidad;
+import com.example.demo.entity.Prestador;
+import com.example.demo.repository.PrestadorRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * Índice en memoria de prestadores ACTIVO ordenados por el mismo puntaje que usan
+ * las consultas de ranking de {@link PrestadorRepository}, agrupados por
+ * habilidad y rubro (IDs externos), y también por zona → habilidad/rubro para el
+ * matching por cercanía. Se carga una vez al arrancar y se mantiene
+ * incrementalmente desde los servicios que modifican prestadores.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class PrestadorRankingIndex {
+
+    // Mismo orden que PrestadorRepository.RANKING_COLUMNAS (nombres nulos = '', internal_id desempata)
+    static final Comparator<Candidato> ORDEN_RANKING = Comparator
+            .comparingDouble(Candidato::score).reversed()
+            .thenComparing(Comparator.comparingInt(Candidato::trabajosFinalizados).reversed())
+            .thenComparingDouble(Candidato::precioHora)
+            .thenComparing(c -> Objects.toString(c.apellido(), ""))
+            .thenComparing(c -> Objects.toString(c.nombre(), ""))
+            .thenComparing(Candidato::internalId);
+
+    private final PrestadorRepository prestadorRepository;
+    private final PrestadorScorer scorer;
+
+    @Value("${matching.ranking-index.enabled:true}")
+    private boolean enabled;
+
+    // Se reemplazan completos en cada recarga para que los lectores nunca vean un índice a medio armar
+    private volatile Map<Long, Candidato> porPrestador = new ConcurrentHashMap<>();
+    private volatile Map<Long, NavigableSet<Candidato>> porHabilidad = new ConcurrentHashMap<>();
+    private volatile Map<Long, NavigableSet<Candidato>> porRubro = new ConcurrentHashMap<>();
+    private volatile Map<Long, Map<Long, NavigableSet<Candidato>>> porZonaHabilidad = new ConcurrentHashMap<>();
+    private volatile Map<Long, Map<Long, NavigableSet<Candidato>>> porZonaRubro = new ConcurrentHashMap<>();
+
+    private volatile boolean cargado = false;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargarAlIniciar() {
+        if (!enabled) {
+            log.info("Índice de ranking de prestadores deshabilitado; se usarán las consultas SQL");
+            return;
+        }
+        try {
+            recargar();
+        } catch (Exception e) {
+            log.error("No se pudo cargar el índice de ranking de prestadores; se usarán las consultas SQL", e);
+        }
+    }
+
+    /**
+     * Reconstruye el índice completo con una única consulta.
+     */
+    public synchronized void recargar() {
+        long inicio = System.nanoTime();
+        Map<Long, Candidato> nuevos = new HashMap<>();
+        Map<Long, Double> promedios = new HashMap<>();
+        for (Object[] row : prestadorRepository.findActivosParaRanking()) {
+            Long internalId = toLong(row[0]);
+            if (internalId == null) {
+                continue;
+            }
+            Long habilidadExtId = toLong(row[7]);
+            Long rubroExtId = toLong(row[8]);
+            Candidato base = nuevos.get(internalId);
+            if (base == null) {
+                base = new Candidato(
+                        internalId,
+                        toLong(row[1]),
+                        0d,
+                        toInt(row[3]),
+                        row[4] != null ? ((Number) row[4]).doubleValue() : PrestadorScorer.PRECIO_DESCONOCIDO,
+                        (String) row[5],
+                        (String) row[6],
+                        toLong(row[9]),
+                        new HashSet<>(),
+                        new HashSet<>()
+                );
+                nuevos.put(internalId, base);
+                Double promedio = toDouble(row[2]);
+                promedios.put(internalId, promedio != null ? promedio : 0d);
+            }
+            if (habilidadExtId != null) {
+                base.habilidades().add(habilidadExtId);
+            }
+            if (rubroExtId != null) {
+                base.rubros().add(rubroExtId);
+            }
+        }
+
+        // Puntajes en bloque sobre arreglos primitivos
+        List<Candidato> base = new ArrayList<>(nuevos.values());
+        int n = base.size();
+        double[] promedio = new double[n];
+        int[] trabajos = new int[n];
+        double[] precio = new double[n];
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            Candidato c = base.get(i);
+            promedio[i] = promedios.get(c.internalId());
+            trabajos[i] = c.trabajosFinalizados();
+            precio[i] = c.precioHora();
+        }
+        scorer.score(promedio, trabajos, precio, scores, n);
+
+        Indice nuevo = new Indice();
+        for (int i = 0; i < n; i++) {
+            nuevo.indexar(base.get(i).conScore(scores[i]));
+        }
+        porPrestador = nuevo.prestadores;
+        porHabilidad = nuevo.habilidades;
+        porRubro = nuevo.rubros;
+        porZonaHabilidad = nuevo.zonaHabilidades;
+        porZonaRubro = nuevo.zonaRubros;
+        cargado = enabled;
+        log.info("Índice de ranking cargado: {} prestadores, {} habilidades, {} rubros, {} zonas en {} ms",
+                porPrestador.size(), porHabilidad.size(), porRubro.size(), porZonaHabilidad.size(),
+                (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    public boolean isCargado() {
+        return cargado;
+    }
+
+    /**
+     * Recorre los candidatos de la habilidad en orden de ranking y devuelve hasta
+     * {@code limite} que cumplan el filtro.
+     */
+    public List<Candidato> topPorHabilidad(Long habilidadExternalId, int limite, Predicate<Candidato> filtro) {
+        return top(porHabilidad.get(habilidadExternalId), limite, filtro);
+    }
+
+    public List<Candidato> topPorRubro(Long rubroExternalId, int limite, Predicate<Candidato> filtro) {
+        return top(porRubro.get(rubroExternalId), limite, filtro);
+    }
+
+    /**
+     * Igual que {@link #topPorHabilidad} pero solo entre prestadores de las zonas indicadas
+     * (IDs externos); con varias zonas mezcla sus rankings respetando el orden global.
+     */
+    public List<Candidato> topPorHabilidadEnZonas(Long habilidadExternalId, Collection<Long> zonas,
+                                                  int limite, Predicate<Candidato> filtro) {
+        return topEnZonas(porZonaHabilidad, habilidadExternalId, zonas, limite, filtro);
+    }
+
+    public List<Candidato> topPorRubroEnZonas(Long rubroExternalId, Collection<Long> zonas,
+                                              int limite, Predicate<Candidato> filtro) {
+        return topEnZonas(porZonaRubro, rubroExternalId, zonas, limite, filtro);
+    }
+
+    /**
+     * Registra el estado actual del prestador. Debe invocarse dentro de la transacción
+     * que lo modificó: la foto se toma ahora (con las colecciones lazy accesibles) y se
+     * aplica al índice recién después del commit.
+     */
+    public void actualizar(Prestador prestador) {
+        if (!cargado || prestador == null || prestador.getInternalId() == null) {
+            return;
+        }
+        final Long internalId = prestador.getInternalId();
+        final Candidato snapshot = esActivo(prestador) ? snapshot(prestador) : null;
+        despuesDelCommit(() -> {
+            synchronized (this) {
+                desindexar(internalId);
+                if (snapshot != null) {
+                    actual().indexar(snapshot);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reconstruye el índice después del commit (p.ej. cuando una habilidad cambia de rubro).
+     */
+    public void recargarDespuesDelCommit() {
+        if (!cargado) {
+            return;
+        }
+        despuesDelCommit(() -> {
+            try {
+                recargar();
+            } catch (Exception e) {
+                log.error("No se pudo recargar el índice de ranking de prestadores", e);
+            }
+        });
+    }
+
+    private List<Candidato> top(NavigableSet<Candidato> ranking, int limite, Predicate<Candidato> filtro) {
+        if (ranking == null || ranking.isEmpty() || limite <= 0) {
+            return List.of();
+        }
+        List<Candidato> out = new ArrayList<>(Math.min(limite, ranking.size()));
+        for (Candidato c : ranking) {
+            if (filtro != null && !filtro.test(c)) {
+                continue;
+            }
+            out.add(c);
+            if (out.size() >= limite) {
+                break;
+            }
+        }
+        return out;
+    }
+
+    private List<Candidato> topEnZonas(Map<Long, Map<Long, NavigableSet<Candidato>>> porZona,
+                                       Long categoria, Collection<Long> zonas,
+                                       int limite, Predicate<Candidato> filtro) {
+        if (zonas == null || zonas.isEmpty() || limite <= 0) {
+            return List.of();
+        }
+        // Cada prestador pertenece a una sola zona: el top-K de la unión sale del top-K de cada zona
+        List<Candidato> out = new ArrayList<>();
+        for (Long zona : zonas) {
+            Map<Long, NavigableSet<Candidato>> categorias = porZona.get(zona);
+            if (categorias != null) {
+                out.addAll(top(categorias.get(categoria), limite, filtro));
+            }
+        }
+        if (zonas.size() > 1) {
+            out.sort(ORDEN_RANKING);
+        }
+        return out.size() > limite ? new ArrayList<>(out.subList(0, limite)) : out;
+    }
+
+    private Indice actual() {
+        return new Indice(porPrestador, porHabilidad, porRubro, porZonaHabilidad, porZonaRubro);
+    }
+
+    private void desindexar(Long internalId) {
+        Candidato anterior = porPrestador.remove(internalId);
+        if (anterior == null) {
+            return;
+        }
+        for (Long habilidad : anterior.habilidades()) {
+            quitar(porHabilidad.get(habilidad), anterior);
+        }
+        for (Long rubro : anterior.rubros()) {
+            quitar(porRubro.get(rubro), anterior);
+        }
+        if (anterior.zona() != null) {
+            Map<Long, NavigableSet<Candidato>> habilidades = porZonaHabilidad.get(anterior.zona());
+            Map<Long, NavigableSet<Candidato>> rubros = porZonaRubro.get(anterior.zona());
+            for (Long habilidad : anterior.habilidades()) {
+                quitar(habilidades != null ? habilidades.get(habilidad) : null, anterior);
+            }
+            for (Long rubro : anterior.rubros()) {
+                quitar(rubros != null ? rubros.get(rubro) : null, anterior);
+            }
+        }
+    }
+
+    private static void quitar(NavigableSet<Candidato> set, Candidato c) {
+        if (set != null) {
+            set.remove(c);
+        }
+    }
+
+    private Candidato snapshot(Prestador p) {
+        int trabajos = p.getTrabajosFinalizados() == null ? 0 : p.getTrabajosFinalizados();
+        Set<Long> habilidades = new HashSet<>();
+        Set<Long> rubros = new HashSet<>();
+        for (Habilidad h : p.getHabilidades()) {
+            if (h == null) {
+                continue;
+            }
+            if (h.getExternalId() != null) {
+                habilidades.add(h.getExternalId());
+            }
+            if (h.getRubro() != null && h.getRubro().getExternalId() != null) {
+                rubros.add(h.getRubro().getExternalId());
+            }
+        }
+        return new Candidato(
+                p.getInternalId(),
+                p.getId(),
+                scorer.score(p),
+                trabajos,
+                p.getPrecioHora() != null ? p.getPrecioHora() : PrestadorScorer.PRECIO_DESCONOCIDO,
+                p.getApellido(),
+                p.getNombre(),
+                p.getZona() != null ? p.getZona().getExternalId() : null,
+                Collections.unmodifiableSet(habilidades),
+                Collections.unmodifiableSet(rubros)
+        );
+    }
+
+    private static boolean esActivo(Prestador p) {
+        return p.getEstado() != null && p.getEstado().equalsIgnoreCase("ACTIVO");
+    }
+
+    private static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+
+    private static Long toLong(Object o) {
+        return o instanceof Number n ? n.longValue() : null;
+    }
+
+    private static Double toDouble(Object o) {
+        return o instanceof Number n ? n.doubleValue() : null;
+    }
+
+    private static int toInt(Object o) {
+        return o instanceof Number n ? n.intValue() : 0;
+    }
+
+    /**
+     * Mapas del índice; en una recarga se arman nuevos y luego se publican juntos.
+     */
+    private record Indice(
+            Map<Long, Candidato> prestadores,
+            Map<Long, NavigableSet<Candidato>> habilidades,
+            Map<Long, NavigableSet<Candidato>> rubros,
+            Map<Long, Map<Long, NavigableSet<Candidato>>> zonaHabilidades,
+            Map<Long, Map<Long, NavigableSet<Candidato>>> zonaRubros
+    ) {
+        Indice() {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>(),
+                    new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+
+        void indexar(Candidato c) {
+            prestadores.put(c.internalId(), c);
+            for (Long habilidad : c.habilidades()) {
+                agregar(habilidades, habilidad, c);
+            }
+            for (Long rubro : c.rubros()) {
+                agregar(rubros, rubro, c);
+            }
+            if (c.zona() != null) {
+                for (Long habilidad : c.habilidades()) {
+                    agregar(zonaHabilidades.computeIfAbsent(c.zona(), k -> new ConcurrentHashMap<>()), habilidad, c);
+                }
+                for (Long rubro : c.rubros()) {
+                    agregar(zonaRubros.computeIfAbsent(c.zona(), k -> new ConcurrentHashMap<>()), rubro, c);
+                }
+            }
+        }
+
+        private static void agregar(Map<Long, NavigableSet<Candidato>> mapa, Long clave, Candidato c) {
+            mapa.computeIfAbsent(clave, k -> new ConcurrentSkipListSet<>(ORDEN_RANKING)).add(c);
+        }
+    }
+
+    /**
+     * Foto inmutable de un prestador ACTIVO con su puntaje precalculado.
+     */
+    public record Candidato(
+            Long internalId,
+            Long externalId,
+            double score,
+            int trabajosFinalizados,
+            double precioHora,
+            String apellido,
+            String nombre,
+            Long zona,
+            Set<Long> habilidades,
+            Set<Long> rubros
+    ) {
+        Candidato conScore(double nuevoScore) {
+            return new Candidato(internalId, externalId, nuevoScore, trabajosFinalizados, precioHora,
+                    apellido, nombre, zona, habilidades, rubros);
+        }
+
+        /** Clave usada para exclusiones/deduplicación (igual que SolicitudService.prestadorKey). */
+        public Long key() {
+            return externalId != null ? externalId : internalId;
+        }
+    }
+}
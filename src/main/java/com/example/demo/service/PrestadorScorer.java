@@ -0,0 +1,33 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Prestador;
+
+/**
+ * Puntaje de ranking de un prestador (mayor es mejor). Es la única definición de la fórmula:
+ * el índice en memoria la usa directamente y las consultas SQL ordenan por el valor
+ * persistido en prestador.puntaje_ranking, que se calcula con esta misma interfaz.
+ */
+public interface PrestadorScorer {
+
+    /** Precio usado cuando el prestador no informa precio por hora (queda último en los desempates). */
+    double PRECIO_DESCONOCIDO = 1e12;
+
+    double score(double promedioCalificacion, int trabajosFinalizados, double precioHora);
+
+    /**
+     * Versión por lotes sobre arreglos primitivos: calcula {@code out[i]} para {@code i < n}.
+     */
+    default void score(double[] promedios, int[] trabajos, double[] precios, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = score(promedios[i], trabajos[i], precios[i]);
+        }
+    }
+
+    default double score(Prestador p) {
+        return score(
+                p.getCalificacionPromedio() != null ? p.getCalificacionPromedio() : 0d,
+                p.getTrabajosFinalizados() != null ? p.getTrabajosFinalizados() : 0,
+                p.getPrecioHora() != null ? p.getPrecioHora() : PRECIO_DESCONOCIDO
+        );
+    }
+}
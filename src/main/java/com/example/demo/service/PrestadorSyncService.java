@@ -28,6 +28,9 @@ public class PrestadorSyncService {
   private final HabilidadRepository habilidadRepository;
   private final RubroRepository rubroRepository;
   private final ZonaRepository zonaRepository;
+  private final PrestadorRankingIndex rankingIndex;
+  private final PrestadorScorer scorer;
+  private final RankingCandidatosCache rankingCache;
 
   @Transactional(propagation = Propagation.REQUIRES_NEW)
   public Prestador upsertDesdeDTO(PrestadorDTO dto) {
@@ -64,12 +67,14 @@ public class PrestadorSyncService {
     if (dto.getCalificacion() != null && !dto.getCalificacion().isEmpty()) {
       p.getCalificacion().addAll(dto.getCalificacion());
     }
+    p.recalcularCalificaciones();
 
     // trabajos finalizados
     p.setTrabajosFinalizados(dto.getTrabajosFinalizados() != null ? dto.getTrabajosFinalizados() : 0);
 
     // vincular habilidades (reemplazo controlado)
     if (habilidades != null) {
+      rankingCache.invalidar(p.getHabilidades());
       p.getHabilidades().clear();
       p.getHabilidades().addAll(habilidades);
     }
@@ -91,7 +96,12 @@ public class PrestadorSyncService {
       }
     }
 
-    return prestadorRepository.save(p);
+    p.setPuntajeRanking(scorer.score(p));
+
+    Prestador guardado = prestadorRepository.save(p);
+    rankingIndex.actualizar(guardado);
+    rankingCache.invalidar(guardado.getHabilidades());
+    return guardado;
   }
 
   @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -103,6 +113,8 @@ public class PrestadorSyncService {
         .orElseThrow(() -> new IllegalArgumentException("Prestador no encontrado para usuario: " + userExternalId));
     p.setEstado("INACTIVO");
     prestadorRepository.save(p);
+    rankingIndex.actualizar(p);
+    rankingCache.invalidar(p.getHabilidades());
   }
 
   @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -114,6 +126,8 @@ public class PrestadorSyncService {
         .orElseThrow(() -> new IllegalArgumentException("Prestador no encontrado para usuario: " + userExternalId));
     p.setEstado("RECHAZADO");
     prestadorRepository.save(p);
+    rankingIndex.actualizar(p);
+    rankingCache.invalidar(p.getHabilidades());
   }
 
   @Transactional(readOnly = true)
@@ -0,0 +1,209 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Habilidad;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Caché acotada (LRU + TTL) de rankings de candidatos por habilidad y por rubro (IDs externos)
+ * para la selección por SQL. Guarda valores inmutables (el prefijo ya leído del ranking); quien
+ * lee más páginas publica el prefijo extendido con {@link #extenderHabilidad}/{@link #extenderRubro},
+ * que solo lo acepta si la entrada sigue siendo la que leyó. Las entradas se invalidan después
+ * del commit de los servicios que cambian prestadores, calificaciones o el catálogo; una carga
+ * que empezó antes de una invalidación no se guarda. Expone aciertos/fallos/desalojos como
+ * métricas {@code matching.ranking.cache.*}.
+ */
+@Component
+@Slf4j
+public class RankingCandidatosCache {
+
+    private enum Tipo { HABILIDAD, RUBRO }
+
+    private record Clave(Tipo tipo, Long id) {}
+
+    private record Entrada(Object valor, long creadaNanos) {}
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Map<Clave, Entrada> entradas;
+    // Se incrementa en cada invalidación (con el lock de entradas)
+    private long generacion;
+
+    private final Counter aciertos;
+    private final Counter fallos;
+    private final Counter desalojos;
+    private final Counter invalidaciones;
+
+    public RankingCandidatosCache(
+            MeterRegistry meterRegistry,
+            @Value("${matching.ranking-cache.enabled:true}") boolean enabled,
+            @Value("${matching.ranking-cache.max-entries:500}") int maxEntries,
+            @Value("${matching.ranking-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.ttlNanos = Math.max(ttlSeconds, 1) * 1_000_000_000L;
+        this.aciertos = Counter.builder("matching.ranking.cache.requests").tag("result", "hit")
+                .description("Rankings de candidatos servidos desde la caché").register(meterRegistry);
+        this.fallos = Counter.builder("matching.ranking.cache.requests").tag("result", "miss")
+                .description("Rankings de candidatos que hubo que armar").register(meterRegistry);
+        this.desalojos = Counter.builder("matching.ranking.cache.evictions")
+                .description("Entradas desalojadas por tamaño (LRU)").register(meterRegistry);
+        this.invalidaciones = Counter.builder("matching.ranking.cache.invalidations")
+                .description("Entradas invalidadas por cambios de datos").register(meterRegistry);
+        final int limite = Math.max(maxEntries, 1);
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Clave, Entrada> eldest) {
+                if (size() > limite) {
+                    desalojos.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        Gauge.builder("matching.ranking.cache.size", this, RankingCandidatosCache::size)
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public <T> T porHabilidad(Long habilidadExternalId, Supplier<T> cargar) {
+        return obtener(new Clave(Tipo.HABILIDAD, habilidadExternalId), cargar);
+    }
+
+    public <T> T porRubro(Long rubroExternalId, Supplier<T> cargar) {
+        return obtener(new Clave(Tipo.RUBRO, rubroExternalId), cargar);
+    }
+
+    /**
+     * Reemplaza el ranking de la habilidad por {@code nuevo} solo si la entrada vigente sigue
+     * siendo {@code anterior} (no venció ni se invalidó ni la extendió otro); conserva su TTL.
+     */
+    public <T> boolean extenderHabilidad(Long habilidadExternalId, T anterior, T nuevo) {
+        return extender(new Clave(Tipo.HABILIDAD, habilidadExternalId), anterior, nuevo);
+    }
+
+    public <T> boolean extenderRubro(Long rubroExternalId, T anterior, T nuevo) {
+        return extender(new Clave(Tipo.RUBRO, rubroExternalId), anterior, nuevo);
+    }
+
+    /**
+     * Invalida, después del commit, los rankings de las habilidades indicadas y de sus rubros.
+     */
+    public void invalidar(Collection<Habilidad> habilidades) {
+        if (!enabled || habilidades == null || habilidades.isEmpty()) {
+            return;
+        }
+        Set<Clave> claves = new HashSet<>();
+        for (Habilidad h : habilidades) {
+            if (h == null) {
+                continue;
+            }
+            if (h.getExternalId() != null) {
+                claves.add(new Clave(Tipo.HABILIDAD, h.getExternalId()));
+            }
+            if (h.getRubro() != null && h.getRubro().getExternalId() != null) {
+                claves.add(new Clave(Tipo.RUBRO, h.getRubro().getExternalId()));
+            }
+        }
+        despuesDelCommit(() -> {
+            synchronized (entradas) {
+                generacion++;
+                for (Clave clave : claves) {
+                    if (entradas.remove(clave) != null) {
+                        invalidaciones.increment();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Vacía la caché después del commit (cambios de catálogo que pueden mover categorías).
+     */
+    public void invalidarTodo() {
+        if (!enabled) {
+            return;
+        }
+        despuesDelCommit(() -> {
+            synchronized (entradas) {
+                generacion++;
+                invalidaciones.increment(entradas.size());
+                entradas.clear();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T obtener(Clave clave, Supplier<T> cargar) {
+        if (!enabled || clave.id() == null) {
+            return cargar.get();
+        }
+        long ahora = System.nanoTime();
+        long generacionLeida;
+        synchronized (entradas) {
+            Entrada e = entradas.get(clave);
+            if (e != null && ahora - e.creadaNanos() < ttlNanos) {
+                aciertos.increment();
+                return (T) e.valor();
+            }
+            generacionLeida = generacion;
+        }
+        // Se arma fuera del lock; si mientras tanto hubo una invalidación no se guarda
+        fallos.increment();
+        T valor = cargar.get();
+        synchronized (entradas) {
+            if (generacion == generacionLeida) {
+                entradas.put(clave, new Entrada(valor, ahora));
+            }
+        }
+        return valor;
+    }
+
+    private boolean extender(Clave clave, Object anterior, Object nuevo) {
+        if (!enabled || clave.id() == null) {
+            return false;
+        }
+        long ahora = System.nanoTime();
+        synchronized (entradas) {
+            Entrada e = entradas.get(clave);
+            if (e == null || e.valor() != anterior || ahora - e.creadaNanos() >= ttlNanos) {
+                return false;
+            }
+            entradas.put(clave, new Entrada(nuevo, e.creadaNanos()));
+            return true;
+        }
+    }
+
+    private double size() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    private static void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.demo.service;
 
 import com.example.demo.client.SimulatedCotizacionClient;
 import com.example.demo.client.SimulatedSolicitudesClient;
+import com.example.demo.config.MatchingZonasProperties;
 import com.example.demo.controller.SolicitudController.SolicitudTop3Resultado;
 import com.example.demo.dto.InvitacionCotizacionDTO;
 import com.example.demo.dto.SolicitudesCreadasDTO;
@@ -9,6 +10,7 @@ import com.example.demo.entity.Prestador;
 import com.example.demo.entity.Solicitud;
 import com.example.demo.entity.SolicitudInvitacion;
 import com.example.demo.entity.enums.EstadoSolicitud;
+import com.example.demo.repository.CotizacionRepository;
 import com.example.demo.repository.HabilidadRepository;
 import com.example.demo.repository.PrestadorRepository;
 import com.example.demo.repository.SolicitudInvitacionRepository;
@@ -17,9 +19,13 @@ import com.example.demo.repository.SolicitudRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -32,6 +38,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -55,6 +70,17 @@ public class SolicitudService {
     @Autowired private SolicitudInvitacionRepository solicitudInvitacionRepository;
     @Autowired private MatchingPublisherService matchingPublisherService;
     @Autowired private HabilidadRepository habilidadRepository;
+    @Autowired private CotizacionRepository cotizacionRepository;
+    @Autowired private PrestadorRankingIndex rankingIndex;
+    @Autowired private AgendaIndex agendaIndex;
+    @Autowired private MatchingZonasProperties zonasProperties;
+    @Autowired private BacklogExecutor backlogExecutor;
+    @Autowired private RankingCandidatosCache rankingCache;
+    @Autowired private CargaInvitacionesIndex cargaInvitaciones;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    // internalIds que está procesando algún flujo (backlog o alta por evento); el backlog las saltea
+    private final Set<Long> enProceso = ConcurrentHashMap.newKeySet();
 
     // Ventana por defecto (minutos) para considerar un turno a partir de "horario"
     @org.springframework.beans.factory.annotation.Value("${solicitudes.invite.slot-minutes:60}")
@@ -107,6 +133,7 @@ public class SolicitudService {
         }
 
         // Volver a COTIZANDO y enviar
+        cargaInvitaciones.cerrarTodas(solicitud);
         solicitud.setCotizacionRound(solicitud.getCotizacionRound() + 1);
         solicitud.setCotizacionRoundStartedAt(LocalDateTime.now());
         solicitud.setEstado(EstadoSolicitud.COTIZANDO);
@@ -145,13 +172,90 @@ public class SolicitudService {
     }
 
 
-    @Transactional
     public List<SolicitudTop3Resultado> procesarTodasLasCreadas() {
+        return procesarBacklog().resultados();
+    }
+
+    /**
+     * Procesa el backlog CREADA en el {@link BacklogExecutor}: cada solicitud corre en su propia
+     * transacción, así un error solo afecta a esa solicitud y ningún hilo retiene una conexión
+     * por todo el lote. Las solicitudes con la misma habilidad/rubro comparten el ranking de
+     * candidatos y el evento top3 se publica una sola vez al final con lo que se procesó.
+     */
+    public ResultadoBacklog procesarBacklog() {
+        long inicio = System.nanoTime();
         List<Solicitud> creadas = solicitudesClient.obtenerSolicitudesCreadas();
-        log.info("Procesando {} solicitudes en estado CREADA", creadas.size());
-        return procesarSolicitudesInterno(creadas);
+        log.info("Procesando {} solicitudes en estado CREADA con {} hilos",
+            creadas.size(), backlogExecutor.getParallelism());
+
+        TransactionTemplate porSolicitud = new TransactionTemplate(transactionManager);
+        porSolicitud.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Map<ClaveGrupo, GrupoRanking> grupos = new ConcurrentHashMap<>();
+
+        List<Solicitud> enviadas = new ArrayList<>();
+        List<CompletableFuture<SolicitudTop3Resultado>> tareas = new ArrayList<>();
+        int yaEnProceso = 0;
+        for (Solicitud solicitud : creadas) {
+            if (solicitud == null || solicitud.getInternalId() == null) {
+                continue;
+            }
+            Long internalId = solicitud.getInternalId();
+            if (!enProceso.add(internalId)) {
+                // La está procesando otro flujo (otra corrida o el alta que la creó)
+                yaEnProceso++;
+                continue;
+            }
+            enviadas.add(solicitud);
+            tareas.add(backlogExecutor.submit(() -> porSolicitud.execute(status -> {
+                // Se relee dentro de la transacción: otro proceso pudo haberla tomado mientras tanto
+                Solicitud actual = solicitudRepository.findById(internalId).orElse(null);
+                if (actual == null || actual.getEstado() != EstadoSolicitud.CREADA) {
+                    return null;
+                }
+                return procesarEnGrupo(actual, grupos);
+            })).whenComplete((r, e) -> enProceso.remove(internalId)));
+        }
+
+        List<SolicitudTop3Resultado> resultados = new ArrayList<>();
+        List<Long> fallidas = new ArrayList<>();
+        int omitidas = yaEnProceso;
+        for (int i = 0; i < tareas.size(); i++) {
+            try {
+                SolicitudTop3Resultado r = tareas.get(i).join();
+                if (r == null) {
+                    omitidas++;
+                } else {
+                    resultados.add(r);
+                }
+            } catch (CompletionException | CancellationException e) {
+                Long solicitudId = enviadas.get(i).getId();
+                fallidas.add(solicitudId);
+                log.error("Error procesando solicitud {} del backlog; se continúa con el resto",
+                    solicitudId, e.getCause() != null ? e.getCause() : e);
+            }
+        }
+
+        long millis = (System.nanoTime() - inicio) / 1_000_000;
+        log.info("Backlog procesado: {} solicitudes ({} procesadas, {} omitidas, {} con error) en {} grupos, {} consultas de candidatos en {} ms",
+            tareas.size() + yaEnProceso, resultados.size(), omitidas, fallidas.size(), grupos.size(),
+            grupos.values().stream().mapToInt(GrupoRanking::consultas).sum(), millis);
+        publicarResultados(resultados);
+        return new ResultadoBacklog(tareas.size() + yaEnProceso, resultados.size(), omitidas, fallidas, millis, resultados);
     }
 
+    /**
+     * Resumen de una corrida del backlog: {@code omitidas} son las que al momento de procesarse
+     * ya no estaban CREADA o ya las estaba procesando otro flujo; {@code fallidas} lista los IDs externos que terminaron con error.
+     */
+    public record ResultadoBacklog(
+        int total,
+        int procesadas,
+        int omitidas,
+        List<Long> fallidas,
+        long millis,
+        List<SolicitudTop3Resultado> resultados
+    ) {}
+
     @Transactional
     public List<SolicitudTop3Resultado> procesarSolicitudes(List<Solicitud> solicitudes) {
         if (solicitudes == null || solicitudes.isEmpty()) {
@@ -161,14 +265,65 @@ public class SolicitudService {
     }
 
     private List<SolicitudTop3Resultado> procesarSolicitudesInterno(List<Solicitud> solicitudes) {
-        List<SolicitudTop3Resultado> resultados = solicitudes.stream()
-            .filter(Objects::nonNull)
-            .map(this::procesarUnaSolicitud)
-            .collect(Collectors.toList());
+        long inicio = System.nanoTime();
+        // Las solicitudes con la misma habilidad/rubro comparten una única lista rankeada
+        Map<ClaveGrupo, GrupoRanking> grupos = new HashMap<>();
+        List<SolicitudTop3Resultado> resultados = new ArrayList<>();
+        List<Long> tomadas = new ArrayList<>();
+        try {
+            for (Solicitud solicitud : solicitudes) {
+                if (solicitud == null) {
+                    continue;
+                }
+                Long internalId = solicitud.getInternalId();
+                if (internalId != null) {
+                    if (!enProceso.add(internalId)) {
+                        continue;
+                    }
+                    tomadas.add(internalId);
+                }
+                resultados.add(procesarEnGrupo(solicitud, grupos));
+            }
+        } finally {
+            liberarAlTerminar(tomadas);
+        }
+        log.info("Backlog procesado: {} solicitudes en {} grupos habilidad/rubro, {} consultas de candidatos en {} ms",
+            resultados.size(), grupos.size(),
+            grupos.values().stream().mapToInt(GrupoRanking::consultas).sum(),
+            (System.nanoTime() - inicio) / 1_000_000);
         publicarResultados(resultados);
         return resultados;
     }
 
+    // Hasta que la transacción termine el backlog todavía las vería CREADA
+    private void liberarAlTerminar(List<Long> internalIds) {
+        if (internalIds.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override public void afterCompletion(int status) {
+                    internalIds.forEach(enProceso::remove);
+                }
+            });
+        } else {
+            internalIds.forEach(enProceso::remove);
+        }
+    }
+
+    private SolicitudTop3Resultado procesarEnGrupo(Solicitud solicitud, Map<ClaveGrupo, GrupoRanking> grupos) {
+        Long prestadorAsignadoId = obtenerPrestadorAsignadoId(solicitud);
+        if (prestadorAsignadoId != null) {
+            return procesarConPrestadorAsignado(solicitud, prestadorAsignadoId);
+        }
+        Long rubroId = resolveRubroId(solicitud);
+        GrupoRanking grupo = grupos.computeIfAbsent(
+            new ClaveGrupo(solicitud.getHabilidadId(), rubroId),
+            GrupoRanking::new
+        );
+        return procesarUnaSolicitud(solicitud, rubroId, grupo);
+    }
+
     private void publicarResultados(List<SolicitudTop3Resultado> resultados) {
         if (resultados == null || resultados.isEmpty()) {
             return;
@@ -187,22 +342,9 @@ public class SolicitudService {
         }
     }
 
-    private SolicitudTop3Resultado procesarUnaSolicitud(Solicitud solicitud) {
-        Long prestadorAsignadoId = obtenerPrestadorAsignadoId(solicitud);
-        if (prestadorAsignadoId != null) {
-            return procesarConPrestadorAsignado(solicitud, prestadorAsignadoId);
-        }
-
-        Long rubroId = resolveRubroId(solicitud);
-
+    private SolicitudTop3Resultado procesarUnaSolicitud(Solicitud solicitud, Long rubroId, GrupoRanking grupo) {
         int maxInicial = solicitud.isEsCritica() ? INITIAL_INVITES_CRITICA : INITIAL_INVITES_NON_CRITICA;
-        List<Prestador> seleccion = seleccionarPrestadores(
-            solicitud,
-            rubroId,
-            maxInicial,
-            false,
-            Collections.emptySet()
-        );
+        List<Prestador> seleccion = grupo.seleccionar(solicitud, maxInicial);
 
         if (seleccion.isEmpty()) {
             log.warn("Sin candidatos ACTIVO para habilidad {} ni rubro {} (solicitud {}) — se mantiene en CREADA",
@@ -384,6 +526,7 @@ public class SolicitudService {
             .enviadoAt(LocalDateTime.now())
             .build();
         solicitudInvitacionRepository.save(invitacion);
+        cargaInvitaciones.abrir(solicitud, prestadorKey(prestador));
     }
 
     @Transactional
@@ -412,7 +555,7 @@ public class SolicitudService {
         Prestador elegido = candidatos.stream()
             .filter(p -> asignado == null || !Objects.equals(p.getId(), asignado))
             .filter(p -> !invitados.contains(p.getId()))
-            .filter(p -> estaLibre(p, solicitud))
+            .filter(p -> estaLibre(prestadorKey(p), solicitud))
             .findFirst()
             .orElse(null);
 
@@ -483,6 +626,7 @@ public class SolicitudService {
             invitacion.setCotizacionIdExterno(cotizacionExternaId);
         }
         solicitudInvitacionRepository.save(invitacion);
+        cargaInvitaciones.cerrar(solicitud, prestadorId);
 
         int round = invitacion.getRound();
         long totalInvitaciones = solicitudInvitacionRepository.countBySolicitud_IdAndRound(solicitud.getId(), round);
@@ -520,6 +664,7 @@ public class SolicitudService {
         if (roundActual >= MAX_COTIZACION_ROUNDS) {
             solicitud.setEstado(EstadoSolicitud.CANCELADA);
             solicitudRepository.save(solicitud);
+            cargaInvitaciones.cerrarTodas(solicitud);
             solicitudEventsPublisher.notifySolicitudEvent(
                 solicitud,
                 "SOLICITUD_CANCELADA_POR_RECHAZOS",
@@ -535,6 +680,7 @@ public class SolicitudService {
 
         solicitud.setEstado(EstadoSolicitud.CANCELADA);
         solicitudRepository.save(solicitud);
+        cargaInvitaciones.cerrarTodas(solicitud);
 
         try {
             recotizar(solicitud.getId());
@@ -565,6 +711,8 @@ public class SolicitudService {
 
         solicitud.setEstado(EstadoSolicitud.CANCELADA);
         solicitudRepository.save(solicitud);
+        agendaIndex.registrar(solicitud);
+        cargaInvitaciones.cerrarTodas(solicitud);
 
         solicitudEventsPublisher.notifySolicitudEvent(
             solicitud,
@@ -575,8 +723,18 @@ public class SolicitudService {
         );
     }
 
-    private boolean estaLibre(Prestador prestador, Solicitud solicitud) {
-        return true;
+    private boolean estaLibre(Long prestadorId, Solicitud solicitud) {
+        if (prestadorId == null || solicitud.getFecha() == null || solicitud.getHorario() == null) {
+            return true;
+        }
+        if (agendaIndex.isCargado()) {
+            return agendaIndex.estaLibre(prestadorId, solicitud.getFecha(), solicitud.getHorario(),
+                solicitud.getInternalId());
+        }
+        // Sin índice: misma franja de superposición que AgendaIndex
+        LocalTime[] franja = AgendaIndex.franja(solicitud.getHorario(), defaultInviteSlotMinutes);
+        return solicitudRepository.findAsignadasEnDiaYFranja(prestadorId, solicitud.getFecha(), franja[0], franja[1]).stream()
+            .allMatch(s -> Objects.equals(s.getInternalId(), solicitud.getInternalId()));
     }
 
     private List<Prestador> seleccionarPrestadores(
@@ -586,64 +744,394 @@ public class SolicitudService {
         boolean excluirCotizados,
         Set<Long> excluirPrestadores
     ) {
-        List<Prestador> seleccion = new ArrayList<>();
-        Set<Long> seleccionados = new HashSet<>();
         Set<Long> excluidos = (excluirPrestadores == null || excluirPrestadores.isEmpty())
             ? Collections.emptySet()
             : excluirPrestadores.stream()
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
-        PageRequest page = PageRequest.of(0, CANDIDATE_BATCH_SIZE);
 
-        Long habilidadId = solicitud.getHabilidadId();
+        if (rankingIndex.isCargado()) {
+            return cargarEnOrden(
+                elegirDesdeIndice(solicitud, rubroId, maxInicial, excluirCotizados, excluidos).stream()
+                    .map(PrestadorRankingIndex.Candidato::internalId)
+                    .toList(),
+                new HashMap<>()
+            );
+        }
+
+        // Las exclusiones viajan a la consulta; los que ya cotizaron se suman a ellas
+        Set<Long> descartados = new HashSet<>(excluidos);
         Long solicitudExternalId = solicitud.getId();
+        if (excluirCotizados && solicitudExternalId != null) {
+            cotizacionRepository.findPrestadorIdsQueCotizaron(solicitudExternalId).stream()
+                .filter(Objects::nonNull)
+                .forEach(descartados::add);
+        }
 
+        List<Long> seleccion = new ArrayList<>();
+        Set<Long> seleccionados = new HashSet<>();
+        List<Ranqueado> diferidos = new ArrayList<>();
+        Long habilidadId = solicitud.getHabilidadId();
+        Long rubroFallback = (rubroId != null) ? rubroId : resolveRubroId(solicitud);
+
+        if (rankingCache.isEnabled()) {
+            // Rankings compartidos y cacheados sin exclusiones: se descartan al recorrerlos
+            if (habilidadId != null) {
+                rankingCacheadoPorHabilidad(habilidadId)
+                    .agregarA(seleccion, seleccionados, descartados, diferidos, solicitud, maxInicial);
+            }
+            if (seleccion.size() < maxInicial && rubroFallback != null) {
+                rankingCacheadoPorRubro(rubroFallback)
+                    .agregarA(seleccion, seleccionados, descartados, diferidos, solicitud, maxInicial);
+            }
+            completarConDiferidos(seleccion, seleccionados, diferidos, maxInicial);
+            return cargarEnOrden(seleccion, new HashMap<>());
+        }
+
+        // Misma transacción: las entidades de las páginas se reutilizan al final
+        Map<Long, Prestador> entidades = new HashMap<>();
         if (habilidadId != null) {
-            List<Prestador> porHabilidad = excluirCotizados && solicitudExternalId != null
-                ? prestadorRepository.findTopByHabilidadExcluyendoLosQueCotizaron(habilidadId, solicitudExternalId, page)
-                : prestadorRepository.findTopByHabilidadRanked(habilidadId, page);
-            agregarCandidatos(seleccion, seleccionados, porHabilidad, solicitud, maxInicial, excluidos);
+            rankingPorHabilidad(habilidadId, descartados, entidades)
+                .agregarA(seleccion, seleccionados, Set.of(), diferidos, solicitud, maxInicial);
         }
 
-        if (seleccion.size() < maxInicial) {
-            Long rubroFallback = (rubroId != null) ? rubroId : resolveRubroId(solicitud);
-            if (rubroFallback != null) {
-                List<Prestador> porRubro = excluirCotizados && solicitudExternalId != null
-                    ? prestadorRepository.findTopByRubroExcluyendoLosQueCotizaron(rubroFallback, solicitudExternalId, page)
-                    : prestadorRepository.findTopByRubroRanked(rubroFallback, page);
-                agregarCandidatos(seleccion, seleccionados, porRubro, solicitud, maxInicial, excluidos);
+        if (seleccion.size() < maxInicial && rubroFallback != null) {
+            Set<Long> descartadosRubro = new HashSet<>(descartados);
+            descartadosRubro.addAll(seleccionados);
+            diferidos.forEach(r -> descartadosRubro.add(r.key()));
+            rankingPorRubro(rubroFallback, descartadosRubro, entidades)
+                .agregarA(seleccion, seleccionados, Set.of(), diferidos, solicitud, maxInicial);
+        }
+
+        completarConDiferidos(seleccion, seleccionados, diferidos, maxInicial);
+        return cargarEnOrden(seleccion, entidades);
+    }
+
+    /**
+     * Completa el cupo con los candidatos salteados por tener demasiadas invitaciones
+     * abiertas, en el orden en que aparecieron en el ranking.
+     */
+    private static void completarConDiferidos(List<Long> seleccion, Set<Long> seleccionados,
+                                              List<Ranqueado> diferidos, int maxInicial) {
+        for (Ranqueado r : diferidos) {
+            if (seleccion.size() >= maxInicial) {
+                return;
+            }
+            if (seleccionados.add(r.key())) {
+                seleccion.add(r.internalId());
+            }
+        }
+    }
+
+    private RankingPaginado rankingCacheadoPorHabilidad(Long habilidadId) {
+        PaginaRanking fuente = paginasPorHabilidad(habilidadId);
+        PaginasRanking leidas = rankingCache.porHabilidad(habilidadId, () -> PaginasRanking.VACIO);
+        return new RankingPaginado(leidas, Collections.emptySet(), null, fuente,
+            (anterior, nuevas) -> rankingCache.extenderHabilidad(habilidadId, anterior, nuevas));
+    }
+
+    private RankingPaginado rankingCacheadoPorRubro(Long rubroId) {
+        PaginaRanking fuente = paginasPorRubro(rubroId);
+        PaginasRanking leidas = rankingCache.porRubro(rubroId, () -> PaginasRanking.VACIO);
+        return new RankingPaginado(leidas, Collections.emptySet(), null, fuente,
+            (anterior, nuevas) -> rankingCache.extenderRubro(rubroId, anterior, nuevas));
+    }
+
+    private RankingPaginado rankingPorHabilidad(Long habilidadId, Set<Long> excluidos, Map<Long, Prestador> entidades) {
+        return new RankingPaginado(PaginasRanking.VACIO, excluidos, entidades, paginasPorHabilidad(habilidadId),
+            (anterior, nuevas) -> { });
+    }
+
+    private RankingPaginado rankingPorRubro(Long rubroId, Set<Long> excluidos, Map<Long, Prestador> entidades) {
+        return new RankingPaginado(PaginasRanking.VACIO, excluidos, entidades, paginasPorRubro(rubroId),
+            (anterior, nuevas) -> { });
+    }
+
+    private PaginaRanking paginasPorHabilidad(Long habilidadId) {
+        return (excl, despuesDe, limite) -> despuesDe == null
+            ? prestadorRepository.findPrimeraPaginaPorHabilidad(habilidadId, excl, limite)
+            : prestadorRepository.findPaginaPorHabilidad(habilidadId, excl, despuesDe, limite);
+    }
+
+    private PaginaRanking paginasPorRubro(Long rubroId) {
+        return (excl, despuesDe, limite) -> despuesDe == null
+            ? prestadorRepository.findPrimeraPaginaPorRubro(rubroId, excl, limite)
+            : prestadorRepository.findPaginaPorRubro(rubroId, excl, despuesDe, limite);
+    }
+
+    @FunctionalInterface
+    private interface PaginaRanking {
+        List<Prestador> buscar(Long[] excluidos, PrestadorRepository.ClaveRanking despuesDe, int limite);
+    }
+
+    /**
+     * Prefijo ya leído de un ranking (solo IDs y claves de keyset). Es inmutable: se comparte
+     * entre hilos y se guarda en {@link RankingCandidatosCache}; leer otra página arma uno nuevo.
+     */
+    private record PaginasRanking(List<Ranqueado> vistos, boolean agotado) {
+        static final PaginasRanking VACIO = new PaginasRanking(List.of(), false);
+
+        PaginasRanking con(List<Ranqueado> pagina, boolean ultima) {
+            List<Ranqueado> todos = new ArrayList<>(vistos.size() + pagina.size());
+            todos.addAll(vistos);
+            todos.addAll(pagina);
+            return new PaginasRanking(Collections.unmodifiableList(todos), ultima);
+        }
+    }
+
+    /**
+     * Ranking de candidatos paginado por keyset: trae páginas de CANDIDATE_BATCH_SIZE a
+     * demanda (continuando después del último prestador visto) hasta llenar el cupo o
+     * agotar los candidatos, así puede recorrerse varias veces (una por solicitud del mismo
+     * grupo) sin repetir consultas. Las páginas se acumulan en un {@link PaginasRanking}
+     * inmutable que se reemplaza al leer otra; las consultas y la disponibilidad de cada
+     * candidato corren sin locks, y cada página nueva se ofrece a la caché (que la descarta si
+     * la entrada ya venció o se invalidó).
+     */
+    private final class RankingPaginado {
+        private final AtomicReference<PaginasRanking> paginas;
+        private final Long[] excluidos;
+        private final Map<Long, Prestador> entidades;
+        private final PaginaRanking fuente;
+        private final BiConsumer<PaginasRanking, PaginasRanking> alLeer;
+        private final AtomicInteger consultas = new AtomicInteger();
+
+        /**
+         * @param entidades si no es null, recibe las entidades de cada página (solo tiene
+         *                  sentido cuando el ranking se usa desde una única transacción)
+         * @param alLeer    recibe el prefijo anterior y el nuevo cada vez que se lee una página
+         */
+        private RankingPaginado(PaginasRanking leidas, Set<Long> excluidos, Map<Long, Prestador> entidades,
+                                PaginaRanking fuente, BiConsumer<PaginasRanking, PaginasRanking> alLeer) {
+            this.paginas = new AtomicReference<>(leidas);
+            this.excluidos = excluidos.toArray(Long[]::new);
+            this.entidades = entidades;
+            this.fuente = fuente;
+            this.alLeer = alLeer;
+        }
+
+        /**
+         * Agrega candidatos libres hasta llenar el cupo; los saturados de invitaciones van a
+         * {@code diferidos} para usarse solo si no alcanzan los demás.
+         */
+        void agregarA(List<Long> seleccion, Set<Long> seleccionados, Set<Long> descartados,
+                      List<Ranqueado> diferidos, Solicitud solicitud, int maxInicial) {
+            PaginasRanking leidas = paginas.get();
+            for (int i = 0; seleccion.size() < maxInicial; i++) {
+                if (i == leidas.vistos().size()) {
+                    leidas = siguientePagina(leidas);
+                    if (i == leidas.vistos().size()) {
+                        return;
+                    }
+                }
+                Ranqueado r = leidas.vistos().get(i);
+                if (r.key() == null || descartados.contains(r.key()) || seleccionados.contains(r.key())
+                        || !estaLibre(r.key(), solicitud)) {
+                    continue;
+                }
+                if (cargaInvitaciones.saturado(r.key())) {
+                    diferidos.add(r);
+                } else {
+                    seleccionados.add(r.key());
+                    seleccion.add(r.internalId());
+                }
             }
         }
 
-        return seleccion;
+        int consultas() {
+            return consultas.get();
+        }
+
+        private PaginasRanking siguientePagina(PaginasRanking leidas) {
+            PaginasRanking actuales = paginas.get();
+            if (leidas.agotado() || actuales.vistos().size() > leidas.vistos().size()) {
+                // Agotado, o ya la leyó otro hilo: el prefijo solo crece, así que contiene al leído
+                return actuales;
+            }
+            List<Ranqueado> vistos = leidas.vistos();
+            PrestadorRepository.ClaveRanking despuesDe = vistos.isEmpty() ? null : vistos.get(vistos.size() - 1).clave();
+            List<Prestador> pagina = fuente.buscar(excluidos, despuesDe, CANDIDATE_BATCH_SIZE);
+            consultas.incrementAndGet();
+            List<Ranqueado> nuevos = new ArrayList<>(pagina.size());
+            for (Prestador p : pagina) {
+                nuevos.add(new Ranqueado(p.getInternalId(), prestadorKey(p), PrestadorRepository.ClaveRanking.de(p)));
+                if (entidades != null) {
+                    entidades.put(p.getInternalId(), p);
+                }
+            }
+            PaginasRanking nuevas = leidas.con(nuevos, pagina.size() < CANDIDATE_BATCH_SIZE);
+            if (paginas.compareAndSet(leidas, nuevas)) {
+                alLeer.accept(leidas, nuevas);
+                return nuevas;
+            }
+            return paginas.get();
+        }
     }
 
-    private void agregarCandidatos(
-        List<Prestador> seleccion,
-        Set<Long> seleccionados,
-        List<Prestador> candidatos,
+    // clave: posición en el ranking tal como se leyó, para pedir la página siguiente
+    private record Ranqueado(Long internalId, Long key, PrestadorRepository.ClaveRanking clave) {}
+
+    /**
+     * Selección top-K contra {@link PrestadorRankingIndex}: recorre el ranking ya ordenado
+     * de la habilidad (y luego del rubro) aplicando exclusiones en memoria. Las entidades
+     * elegidas se cargan después con {@link #cargarEnOrden}.
+     */
+    private List<PrestadorRankingIndex.Candidato> elegirDesdeIndice(
         Solicitud solicitud,
+        Long rubroId,
         int maxInicial,
+        boolean excluirCotizados,
         Set<Long> excluidos
     ) {
-        if (candidatos == null || candidatos.isEmpty()) {
-            return;
+        Set<Long> descartados = new HashSet<>(excluidos);
+        Long solicitudExternalId = solicitud.getId();
+        if (excluirCotizados && solicitudExternalId != null) {
+            cotizacionRepository.findPrestadorIdsQueCotizaron(solicitudExternalId).stream()
+                .filter(Objects::nonNull)
+                .forEach(descartados::add);
         }
-        for (Prestador prestador : candidatos) {
-            if (seleccion.size() >= maxInicial) {
-                break;
+
+        List<PrestadorRankingIndex.Candidato> elegidos = new ArrayList<>();
+        Set<Long> seleccionados = new HashSet<>();
+        Predicate<PrestadorRankingIndex.Candidato> disponible = c -> c.key() != null
+            && !descartados.contains(c.key())
+            && !seleccionados.contains(c.key())
+            && estaLibre(c.key(), solicitud);
+        Predicate<PrestadorRankingIndex.Candidato> sinSaturar =
+            disponible.and(c -> !cargaInvitaciones.saturado(c.key()));
+
+        Long habilidadId = solicitud.getHabilidadId();
+        Long rubroFallback = (rubroId != null) ? rubroId : resolveRubroId(solicitud);
+
+        // Orden de búsqueda: zona de la solicitud, zonas vecinas y, si se permite, cualquier zona
+        List<BiFunction<Integer, Predicate<PrestadorRankingIndex.Candidato>, List<PrestadorRankingIndex.Candidato>>> fuentes =
+            new ArrayList<>();
+        Long zonaId = zonasProperties.enabled() ? solicitud.getZonaId() : null;
+        if (zonaId != null) {
+            Set<Long> zona = Set.of(zonaId);
+            Set<Long> vecinas = zonasProperties.vecinasDe(zonaId);
+            if (habilidadId != null) {
+                fuentes.add((n, filtro) -> rankingIndex.topPorHabilidadEnZonas(habilidadId, zona, n, filtro));
+                fuentes.add((n, filtro) -> rankingIndex.topPorHabilidadEnZonas(habilidadId, vecinas, n, filtro));
             }
-            if (!estaLibre(prestador, solicitud)) {
-                continue;
+            if (rubroFallback != null) {
+                fuentes.add((n, filtro) -> rankingIndex.topPorRubroEnZonas(rubroFallback, zona, n, filtro));
+                fuentes.add((n, filtro) -> rankingIndex.topPorRubroEnZonas(rubroFallback, vecinas, n, filtro));
             }
-            Long key = prestadorKey(prestador);
-            if (key == null) {
-                continue;
+        }
+        if (zonaId == null || zonasProperties.fallbackSinZona()) {
+            if (habilidadId != null) {
+                fuentes.add((n, filtro) -> rankingIndex.topPorHabilidad(habilidadId, n, filtro));
             }
-            if ((excluidos.contains(key)) || !seleccionados.add(key)) {
-                continue;
+            if (rubroFallback != null) {
+                fuentes.add((n, filtro) -> rankingIndex.topPorRubro(rubroFallback, n, filtro));
+            }
+        }
+
+        // Primero los que no están saturados de invitaciones; si no alcanza, se completa con el resto
+        var filtros = cargaInvitaciones.isCargado() ? List.of(sinSaturar, disponible) : List.of(disponible);
+        for (var filtro : filtros) {
+            for (var fuente : fuentes) {
+                if (elegidos.size() >= maxInicial) {
+                    return elegidos;
+                }
+                for (var c : fuente.apply(maxInicial - elegidos.size(), filtro)) {
+                    seleccionados.add(c.key());
+                    elegidos.add(c);
+                }
+            }
+        }
+
+        return elegidos;
+    }
+
+    /**
+     * Carga las entidades de los prestadores elegidos (internal_id) respetando el orden del
+     * ranking. {@code cargados} actúa como caché: solo se consultan los que todavía no están.
+     */
+    private List<Prestador> cargarEnOrden(List<Long> internalIds, Map<Long, Prestador> cargados) {
+        if (internalIds.isEmpty()) {
+            return List.of();
+        }
+        List<Long> faltantes = internalIds.stream()
+            .filter(id -> !cargados.containsKey(id))
+            .toList();
+        if (!faltantes.isEmpty()) {
+            prestadorRepository.findAllById(faltantes)
+                .forEach(p -> cargados.put(p.getInternalId(), p));
+        }
+        List<Prestador> out = new ArrayList<>(internalIds.size());
+        for (Long id : internalIds) {
+            Prestador p = cargados.get(id);
+            if (p != null) {
+                out.add(p);
+            }
+        }
+        return out;
+    }
+
+    private record ClaveGrupo(Long habilidadId, Long rubroId) {}
+
+    /**
+     * Candidatos rankeados compartidos por las solicitudes del backlog con la misma
+     * habilidad/rubro. Las páginas de ranking se traen una vez por grupo (las de rubro solo
+     * si alguna solicitud las necesita) y cada solicitud aplica sus propias exclusiones
+     * y cupo sobre la lista ya ordenada. Es seguro usarlo desde varios hilos: solo comparte
+     * IDs y cada solicitud carga sus entidades en su propia transacción.
+     */
+    private final class GrupoRanking {
+        private final ClaveGrupo clave;
+        private final AtomicInteger cargas = new AtomicInteger();
+        private RankingPaginado porHabilidad;
+        private RankingPaginado porRubro;
+
+        private GrupoRanking(ClaveGrupo clave) {
+            this.clave = clave;
+        }
+
+        synchronized int consultas() {
+            return cargas.get()
+                + (porHabilidad != null ? porHabilidad.consultas() : 0)
+                + (porRubro != null ? porRubro.consultas() : 0);
+        }
+
+        List<Prestador> seleccionar(Solicitud solicitud, int maxInicial) {
+            List<Long> seleccion;
+            if (rankingIndex.isCargado()) {
+                seleccion = elegirDesdeIndice(solicitud, clave.rubroId(), maxInicial, false, Collections.emptySet())
+                    .stream()
+                    .map(PrestadorRankingIndex.Candidato::internalId)
+                    .toList();
+            } else {
+                seleccion = new ArrayList<>();
+                Set<Long> seleccionados = new HashSet<>();
+                List<Ranqueado> diferidos = new ArrayList<>();
+                if (clave.habilidadId() != null) {
+                    habilidad().agregarA(seleccion, seleccionados, Set.of(), diferidos, solicitud, maxInicial);
+                }
+                if (seleccion.size() < maxInicial && clave.rubroId() != null) {
+                    rubro().agregarA(seleccion, seleccionados, Set.of(), diferidos, solicitud, maxInicial);
+                }
+                completarConDiferidos(seleccion, seleccionados, diferidos, maxInicial);
+            }
+            if (!seleccion.isEmpty()) {
+                cargas.incrementAndGet();
+            }
+            return cargarEnOrden(seleccion, new HashMap<>());
+        }
+
+        private synchronized RankingPaginado habilidad() {
+            if (porHabilidad == null) {
+                porHabilidad = rankingCacheadoPorHabilidad(clave.habilidadId());
+            }
+            return porHabilidad;
+        }
+
+        private synchronized RankingPaginado rubro() {
+            if (porRubro == null) {
+                porRubro = rankingCacheadoPorRubro(clave.rubroId());
             }
-            seleccion.add(prestador);
+            return porRubro;
         }
     }
 
@@ -712,6 +1200,7 @@ public class SolicitudService {
             .prestadorAsignadoId(e.getPrestadorId()) // externo (puede ser null)
             .rubroId(rubroId) // opcional
             .habilidadId(habilidadId) // opcional
+            .zonaId(e.getZonaId()) // opcional
             .titulo(e.getTitulo())
             .descripcion(e.getDescripcion())
             .estado(estado)
@@ -742,6 +1231,7 @@ public class SolicitudService {
         }
 
         Solicitud creada = solicitudRepository.save(b.build());
+        agendaIndex.registrar(creada);
         // Notificar creación en estado CREADA
         try {
             solicitudEventsPublisher.notifySolicitudEvent(
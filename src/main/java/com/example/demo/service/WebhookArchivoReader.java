@@ -0,0 +1,106 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Lectura de los archivos de {@link WebhookRetencionService}: los eventos se leen de a uno
+ * desde el gzip, sin cargar el archivo entero, así se puede recorrer un mes completo para
+ * una investigación. Cada línea se lee como árbol JSON, tal como se escribió: no se vuelve
+ * a armar la entidad (que recomprimiría el payload solo para serializarlo de nuevo).
+ */
+@Service
+@Slf4j
+public class WebhookArchivoReader {
+
+    public record Archivo(String nombre, long bytes) {}
+
+    private final WebhookRetencionService retencionService;
+    private final ObjectReader lector;
+
+    public WebhookArchivoReader(WebhookRetencionService retencionService, ObjectMapper objectMapper) {
+        this.retencionService = retencionService;
+        this.lector = objectMapper.readerFor(JsonNode.class);
+    }
+
+    public List<Archivo> listar() throws IOException {
+        Path directorio = retencionService.getDirectorio();
+        if (!Files.isDirectory(directorio)) {
+            return List.of();
+        }
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            return archivos.filter(WebhookRetencionService::esArchivo)
+                    .sorted()
+                    .map(p -> new Archivo(p.getFileName().toString(), p.toFile().length()))
+                    .toList();
+        }
+    }
+
+    /**
+     * Archivo de retención con ese nombre (sin rutas).
+     *
+     * @throws IllegalArgumentException si el nombre no es el de un archivo de retención
+     * @throws NoSuchFileException si el archivo no existe
+     */
+    public Path resolver(String nombre) throws IOException {
+        Path directorio = retencionService.getDirectorio().normalize();
+        Path archivo = directorio.resolve(nombre).normalize();
+        if (!directorio.equals(archivo.getParent()) || !WebhookRetencionService.esArchivo(archivo)) {
+            throw new IllegalArgumentException("Archivo inválido: " + nombre);
+        }
+        if (!Files.isRegularFile(archivo)) {
+            throw new NoSuchFileException(nombre);
+        }
+        return archivo;
+    }
+
+    /**
+     * Recorre los eventos del archivo (obtenido con {@link #resolver}) que cumplen
+     * {@code filtro} y se los pasa a {@code destino}, hasta {@code limite}. Devuelve cuántos pasó.
+     */
+    public int leer(Path archivo, Predicate<JsonNode> filtro, int limite, EventoConsumer destino) throws IOException {
+        int leidos = 0;
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(archivo)), 64 * 1024);
+             MappingIterator<JsonNode> eventos = lector.readValues(in)) {
+            while (leidos < limite && eventos.hasNextValue()) {
+                JsonNode evento = eventos.nextValue();
+                if (filtro.test(evento)) {
+                    destino.aceptar(evento);
+                    leidos++;
+                }
+            }
+        }
+        return leidos;
+    }
+
+    /** Filtro por los campos del sobre; los null no filtran. */
+    public static Predicate<JsonNode> filtro(Map<String, String> campos) {
+        String topic = campos.get("topic");
+        String eventName = campos.get("eventName");
+        String messageId = campos.get("messageId");
+        return e -> (topic == null || topic.equals(e.path("topic").textValue()))
+                && (eventName == null || eventName.equals(e.path("eventName").textValue()))
+                && (messageId == null || messageId.equals(e.path("messageId").textValue()));
+    }
+
+    @FunctionalInterface
+    public interface EventoConsumer {
+        void aceptar(JsonNode evento) throws IOException;
+    }
+}
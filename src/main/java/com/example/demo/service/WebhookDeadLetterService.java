@@ -0,0 +1,105 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.WebhookDeadLetter;
+import com.example.demo.entity.enums.EstadoDeadLetter;
+import com.example.demo.repository.WebhookDeadLetterRepository;
+import com.example.demo.webhook.WebhookRoute;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Dead letters de los handlers del webhook: cada handler que lanzó excepción queda en
+ * webhook_dead_letter apuntando al evento guardado, y {@code WebhookDeadLetterWorker} lo
+ * reintenta con backoff exponencial hasta {@code webhooks.dead-letter.max-attempts}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WebhookDeadLetterService {
+
+    private final WebhookDeadLetterRepository repository;
+
+    @Value("${webhooks.dead-letter.max-attempts:6}")
+    private int maxIntentos;
+
+    @Value("${webhooks.dead-letter.backoff-initial-ms:10000}")
+    private long backoffInicialMs;
+
+    @Value("${webhooks.dead-letter.backoff-max-ms:3600000}")
+    private long backoffMaxMs;
+
+    /**
+     * Registra los handlers que fallaron al procesar el evento. No lanza: un error acá no
+     * tiene que cambiar el resultado del webhook.
+     */
+    public void registrarFallos(Long eventoId, Map<WebhookRoute, String> fallos) {
+        if (eventoId == null || fallos.isEmpty()) {
+            return;
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        fallos.forEach((ruta, error) -> {
+            try {
+                repository.registrar(eventoId, ruta.name(), error, ahora.plusNanos(backoffMs(1) * 1_000_000), ahora);
+                log.warn("Handler {} del webhook {} falló; queda para reintento: {}", ruta, eventoId, error);
+            } catch (Exception e) {
+                log.error("No se pudo registrar el dead letter {} del webhook {}", ruta, eventoId, e);
+            }
+        });
+    }
+
+    public List<WebhookDeadLetter> tomarVencidos(int limite, long leaseSeconds) {
+        LocalDateTime ahora = LocalDateTime.now();
+        return repository.tomarVencidos(ahora, ahora.plusSeconds(leaseSeconds), limite);
+    }
+
+    public void marcarResuelto(WebhookDeadLetter deadLetter) {
+        LocalDateTime ahora = LocalDateTime.now();
+        repository.reprogramar(deadLetter.getId(), deadLetter.getIntentos() + 1, ahora,
+                deadLetter.getUltimoError(), EstadoDeadLetter.RESUELTO, ahora);
+    }
+
+    /**
+     * Otro intento fallido: se reprograma con backoff o, si llegó al máximo, queda AGOTADO.
+     * Devuelve el estado en que quedó.
+     */
+    public EstadoDeadLetter marcarFallido(WebhookDeadLetter deadLetter, String error) {
+        LocalDateTime ahora = LocalDateTime.now();
+        int intentos = deadLetter.getIntentos() + 1;
+        if (intentos >= maxIntentos) {
+            repository.reprogramar(deadLetter.getId(), intentos, ahora, error, EstadoDeadLetter.AGOTADO, ahora);
+            return EstadoDeadLetter.AGOTADO;
+        }
+        repository.reprogramar(deadLetter.getId(), intentos, ahora.plusNanos(backoffMs(intentos + 1) * 1_000_000),
+                error, EstadoDeadLetter.PENDIENTE, ahora);
+        return EstadoDeadLetter.PENDIENTE;
+    }
+
+    /** Vuelve a encolar los dead letters indicados, o todos los AGOTADO si no se indica ninguno. */
+    public int replay(Collection<Long> ids) {
+        LocalDateTime ahora = LocalDateTime.now();
+        if (ids == null || ids.isEmpty()) {
+            return repository.rearmarPorEstado(EstadoDeadLetter.AGOTADO, ahora);
+        }
+        return repository.rearmar(ids, ahora);
+    }
+
+    public List<WebhookDeadLetter> listar(EstadoDeadLetter estado, int limite) {
+        return repository.listar(estado != null ? estado.name() : null, Math.max(1, Math.min(limite, 1000)));
+    }
+
+    // 2^(n-1) * inicial, tope backoff-max-ms, con ±20 % de jitter
+    private long backoffMs(int intento) {
+        long inicial = Math.max(backoffInicialMs, 1);
+        long base = inicial << Math.min(intento - 1, 30);
+        long tope = Math.min(base > 0 ? base : backoffMaxMs, Math.max(backoffMaxMs, inicial));
+        return (long) (tope * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+}
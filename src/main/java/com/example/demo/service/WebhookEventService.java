@@ -1,23 +1,41 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.WebhookEventPaginaDTO;
+import com.example.demo.dto.WebhookEventResumenDTO;
+import com.example.demo.entity.PayloadComprimido;
 import com.example.demo.entity.WebhookEvent;
+import com.example.demo.entity.enums.EstadoWebhookEvent;
 import com.example.demo.repository.WebhookEventRepository;
+import com.example.demo.repository.WebhookEventRepositoryCustom;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Sort;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class WebhookEventService {
 
+    // Índice único de data.sql sobre (message_id, COALESCE(subscription_id, ''))
+    private static final String UX_MENSAJE = "ux_webhook_event_mensaje";
+
+    private static final int MAX_PAGINA = 500;
+
     private final WebhookEventRepository repository;
     private final ObjectMapper objectMapper;
 
@@ -26,32 +44,270 @@ public class WebhookEventService {
                                    String messageId,
                                    String subscriptionId,
                                    Map<String, Object> payload) {
-        String raw = serialize(payload);
-        WebhookEvent entity = WebhookEvent.builder()
+        return storeEvent(topic, eventName, messageId, subscriptionId, payload, EstadoWebhookEvent.PROCESSED);
+    }
+
+    /**
+     * Evento recibido y todavía no procesado (modo asíncrono): lo toma WebhookEventWorker.
+     * Vacío si el mensaje ya estaba guardado (reentrega del hub). El payload llega ya
+     * serializado (ver WebhookDispatcher#payloadRecibido).
+     */
+    public Optional<WebhookEvent> storePending(String topic,
+                                               String eventName,
+                                               String messageId,
+                                               String subscriptionId,
+                                               String rawPayload) {
+        return insertarSiNoExiste(build(topic, eventName, messageId, subscriptionId, rawPayload, EstadoWebhookEvent.PENDING));
+    }
+
+    /**
+     * Guarda el evento en PROCESSING antes de correr los handlers (modo sincrónico), así el
+     * índice único corta las reentregas antes de procesarlas. Vacío si ya estaba guardado.
+     */
+    public Optional<WebhookEvent> reservar(String topic,
+                                           String eventName,
+                                           String messageId,
+                                           String subscriptionId,
+                                           String rawPayload) {
+        WebhookEvent entity = build(topic, eventName, messageId, subscriptionId, rawPayload, EstadoWebhookEvent.PROCESSING);
+        entity.setLockedAt(LocalDateTime.now());
+        entity.setAttempts(1);
+        return insertarSiNoExiste(entity);
+    }
+
+    public WebhookEvent storeEvent(String topic,
+                                   String eventName,
+                                   String messageId,
+                                   String subscriptionId,
+                                   Map<String, Object> payload,
+                                   EstadoWebhookEvent status) {
+        WebhookEvent saved = repository.save(build(topic, eventName, messageId, subscriptionId, serialize(payload), status));
+        logStored(saved);
+        return saved;
+    }
+
+    /** Evento de un lote recibido en /api/webhook/batch, con el payload ya serializado. */
+    public record EventoLote(String topic, String eventName, String messageId, String subscriptionId, String rawPayload) {}
+
+    /** Resultado final de un evento del lote; con {@code error} queda FAILED. */
+    public record CierreLote(Long id, String rawPayload, String error) {}
+
+    /**
+     * Guarda un lote de eventos con un único INSERT. Devuelve el id de cada evento en el mismo
+     * orden, o null para los que ya estaban guardados (reentregas del hub).
+     */
+    @Transactional
+    public List<Long> storeLote(List<EventoLote> eventos, EstadoWebhookEvent status) {
+        if (eventos.isEmpty()) {
+            return List.of();
+        }
+        int n = eventos.size();
+        Long[] ids = repository.reservarIds(n).toArray(new Long[0]);
+        String[] topics = new String[n];
+        String[] eventNames = new String[n];
+        String[] messageIds = new String[n];
+        String[] subscriptionIds = new String[n];
+        String[] payloads = new String[n];
+        for (int i = 0; i < n; i++) {
+            EventoLote evento = eventos.get(i);
+            topics[i] = trimToNull(evento.topic());
+            eventNames[i] = trimToNull(evento.eventName());
+            messageIds[i] = trimToNull(evento.messageId());
+            subscriptionIds[i] = trimToNull(evento.subscriptionId());
+            payloads[i] = comprimido(evento.rawPayload());
+        }
+        Set<Long> insertados = new HashSet<>(repository.insertarLote(
+                ids, topics, eventNames, messageIds, subscriptionIds, payloads,
+                status.name(), status == EstadoWebhookEvent.PROCESSING, LocalDateTime.now()));
+
+        List<Long> resultado = new ArrayList<>(n);
+        for (Long id : ids) {
+            resultado.add(insertados.contains(id) ? id : null);
+        }
+        log.info("Lote de webhooks guardado: {} eventos, {} duplicados", insertados.size(), n - insertados.size());
+        return resultado;
+    }
+
+    /**
+     * Guarda como PENDING los eventos acumulados por la escritura diferida
+     * (WebhookEscrituraDiferida) en una transacción: con la secuencia pooled los INSERT salen
+     * en batch JDBC. Si alguno choca con el índice único de mensajes falla el lote entero.
+     */
+    @Transactional
+    public void guardarPendientes(List<EventoLote> eventos) {
+        List<WebhookEvent> entidades = new ArrayList<>(eventos.size());
+        for (EventoLote evento : eventos) {
+            entidades.add(build(evento.topic(), evento.eventName(), evento.messageId(), evento.subscriptionId(),
+                    evento.rawPayload(), EstadoWebhookEvent.PENDING));
+        }
+        repository.saveAll(entidades);
+        repository.flush();
+    }
+
+    /** Deja en PROCESSED o FAILED todos los eventos de un lote con un único UPDATE. */
+    @Transactional
+    public void cerrarLote(List<CierreLote> cierres) {
+        if (cierres.isEmpty()) {
+            return;
+        }
+        int n = cierres.size();
+        Long[] ids = new Long[n];
+        String[] payloads = new String[n];
+        String[] estados = new String[n];
+        String[] errores = new String[n];
+        for (int i = 0; i < n; i++) {
+            CierreLote cierre = cierres.get(i);
+            ids[i] = cierre.id();
+            payloads[i] = comprimido(cierre.rawPayload());
+            estados[i] = (cierre.error() == null ? EstadoWebhookEvent.PROCESSED : EstadoWebhookEvent.FAILED).name();
+            errores[i] = cierre.error();
+        }
+        repository.cerrarLote(ids, payloads, estados, errores, LocalDateTime.now());
+    }
+
+    private Optional<WebhookEvent> insertarSiNoExiste(WebhookEvent entity) {
+        try {
+            WebhookEvent saved = repository.saveAndFlush(entity);
+            logStored(saved);
+            return Optional.of(saved);
+        } catch (DataIntegrityViolationException e) {
+            if (!esMensajeDuplicado(e)) {
+                throw e;
+            }
+            log.info("Webhook duplicado ignorado messageId={} subscriptionId={}",
+                    entity.getMessageId(), entity.getSubscriptionId());
+            return Optional.empty();
+        }
+    }
+
+    private static boolean esMensajeDuplicado(DataIntegrityViolationException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof ConstraintViolationException cve
+                    && cve.getConstraintName() != null
+                    && cve.getConstraintName().toLowerCase().contains(UX_MENSAJE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private WebhookEvent build(String topic,
+                               String eventName,
+                               String messageId,
+                               String subscriptionId,
+                               String rawPayload,
+                               EstadoWebhookEvent status) {
+        return WebhookEvent.builder()
                 .topic(trimToNull(topic))
                 .eventName(trimToNull(eventName))
                 .messageId(trimToNull(messageId))
                 .subscriptionId(trimToNull(subscriptionId))
-                .rawPayload(raw)
+                .rawPayload(rawPayload)
+                .status(status)
+                .processedAt(status == EstadoWebhookEvent.PENDING || status == EstadoWebhookEvent.PROCESSING
+                        ? null : LocalDateTime.now())
                 .build();
-        WebhookEvent saved = repository.save(entity);
-        log.info("Webhook event stored id={} topic={} eventName={} messageId={} subscriptionId={}",
+    }
+
+    private void logStored(WebhookEvent saved) {
+        log.info("Webhook event stored id={} status={} topic={} eventName={} messageId={} subscriptionId={}",
                 saved.getId(),
+                saved.getStatus(),
                 saved.getTopic(),
                 saved.getEventName(),
                 saved.getMessageId(),
                 saved.getSubscriptionId());
-        return saved;
     }
 
-    public List<WebhookEvent> listEvents() {
-        return repository.findAll(Sort.by(Sort.Direction.DESC, "receivedAt"));
+    /**
+     * Toma hasta {@code limite} eventos PENDING y los pasa a PROCESSING en la misma
+     * transacción, así ningún otro worker los vuelve a tomar.
+     */
+    @Transactional
+    public List<Long> tomarPendientes(int limite) {
+        List<Long> ids = repository.findPendientesParaProcesar(limite);
+        if (!ids.isEmpty()) {
+            repository.marcarTomados(ids, EstadoWebhookEvent.PROCESSING, LocalDateTime.now());
+        }
+        return ids;
+    }
+
+    /**
+     * Devuelve a PENDING los eventos que quedaron en PROCESSING más de lo esperado
+     * (worker caído o reinicio a mitad de proceso).
+     */
+    @Transactional
+    public int liberarVencidos(LocalDateTime tomadosAntesDe) {
+        return repository.liberarVencidos(EstadoWebhookEvent.PENDING, EstadoWebhookEvent.PROCESSING, tomadosAntesDe);
+    }
+
+    @Transactional
+    public void marcarProcesado(Long id, String rawPayload) {
+        repository.findById(id).ifPresent(e -> {
+            e.setRawPayload(rawPayload);
+            e.setStatus(EstadoWebhookEvent.PROCESSED);
+            e.setProcessedAt(LocalDateTime.now());
+            e.setLockedAt(null);
+            e.setLastError(null);
+        });
+    }
+
+    @Transactional
+    public void marcarFallido(Long id, String error) {
+        repository.findById(id).ifPresent(e -> {
+            e.setStatus(EstadoWebhookEvent.FAILED);
+            e.setProcessedAt(LocalDateTime.now());
+            e.setLockedAt(null);
+            e.setLastError(error);
+        });
+    }
+
+    /**
+     * Listado liviano (sin rawPayload) paginado por keyset. El cursor es el
+     * "receivedAt,id" de la última fila de la página anterior.
+     */
+    public WebhookEventPaginaDTO listEvents(WebhookEventRepositoryCustom.Filtro filtro, String cursor, int limite) {
+        int tamanio = Math.max(1, Math.min(limite, MAX_PAGINA));
+        LocalDateTime cursorAt = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            int coma = cursor.lastIndexOf(',');
+            try {
+                cursorAt = LocalDateTime.parse(cursor.substring(0, coma));
+                cursorId = Long.parseLong(cursor.substring(coma + 1));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + cursor);
+            }
+        }
+        // Una fila de más para saber si hay página siguiente
+        List<WebhookEventResumenDTO> filas = repository.buscarResumen(filtro, cursorAt, cursorId, tamanio + 1);
+        String siguiente = null;
+        if (filas.size() > tamanio) {
+            filas = filas.subList(0, tamanio);
+            WebhookEventResumenDTO ultima = filas.get(tamanio - 1);
+            siguiente = ultima.getReceivedAt() + "," + ultima.getId();
+        }
+        return new WebhookEventPaginaDTO(filas, siguiente);
+    }
+
+    /** Página del replay: eventos cerrados en orden de id (ver WebhookReplay). */
+    public List<WebhookEvent> paraReplay(WebhookEventRepositoryCustom.Filtro filtro, long despuesDeId, Long hastaId, int limite) {
+        return repository.buscarParaReplay(filtro, despuesDeId, hastaId, limite);
+    }
+
+    public List<WebhookEvent> findAllById(Collection<Long> ids) {
+        return repository.findAllById(ids);
     }
 
     public Optional<WebhookEvent> findById(Long id) {
         return repository.findById(id);
     }
 
+    // Los lotes nativos reciben el payload comprimido en base64 (se decodifica en el SQL)
+    private static String comprimido(String rawPayload) {
+        return rawPayload == null ? null : Base64.getEncoder().encodeToString(PayloadComprimido.comprimir(rawPayload));
+    }
+
     private String serialize(Map<String, Object> payload) {
         if (payload == null || payload.isEmpty()) {
             return "{}";
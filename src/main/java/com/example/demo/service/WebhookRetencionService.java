@@ -0,0 +1,175 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.repository.WebhookDeadLetterRepository;
+import com.example.demo.repository.WebhookEventRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retención de webhook_event: una vez por día archiva los meses que quedaron fuera de
+ * {@code webhooks.retencion.meses} y los borra. Cada mes se exporta primero a un NDJSON
+ * comprimido ({@code webhook_event-AAAA-MM_<corrida>.ndjson.gz}, un evento por línea) en
+ * {@code webhooks.retencion.directorio}; recién con el archivo cerrado se borran de la base,
+ * de a tandas, los eventos que quedaron escritos. Los eventos PENDING/PROCESSING y los que
+ * tienen dead letters pendientes no se tocan; eso se vuelve a comprobar al borrar, así que un
+ * evento cuya dead letter se rearmó después de exportarlo queda en la base (y también en el
+ * archivo). Apagada por defecto.
+ *
+ * <p>Los archivos se leen con {@link WebhookArchivoReader}.
+ */
+@Service
+@Slf4j
+public class WebhookRetencionService {
+
+    static final String PREFIJO = "webhook_event-";
+    static final String EXTENSION = ".ndjson.gz";
+    private static final DateTimeFormatter CORRIDA = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+
+    private final WebhookEventRepository eventRepository;
+    private final WebhookDeadLetterRepository deadLetterRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter escritor;
+    private final boolean enabled;
+    private final int meses;
+    private final int tanda;
+    private final Path directorio;
+    private final AtomicBoolean corriendo = new AtomicBoolean();
+
+    public WebhookRetencionService(
+            WebhookEventRepository eventRepository,
+            WebhookDeadLetterRepository deadLetterRepository,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            @Value("${webhooks.retencion.enabled:false}") boolean enabled,
+            @Value("${webhooks.retencion.meses:6}") int meses,
+            @Value("${webhooks.retencion.tanda:500}") int tanda,
+            @Value("${webhooks.retencion.directorio:./archivo/webhooks}") String directorio) {
+        this.eventRepository = eventRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Una línea por evento: sin indentación aunque el ObjectMapper de la app la tenga
+        this.escritor = objectMapper.writerFor(WebhookEvent.class)
+                .without(SerializationFeature.INDENT_OUTPUT);
+        this.enabled = enabled;
+        this.meses = Math.max(meses, 1);
+        this.tanda = Math.max(tanda, 1);
+        this.directorio = Paths.get(directorio);
+    }
+
+    public Path getDirectorio() {
+        return directorio;
+    }
+
+    @Scheduled(cron = "${webhooks.retencion.cron:0 30 3 * * *}")
+    public void programada() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            depurar();
+        } catch (Exception e) {
+            log.error("Error en la retención de webhook_event", e);
+        }
+    }
+
+    /**
+     * Archiva y borra todos los meses anteriores al corte. Devuelve los eventos borrados.
+     *
+     * @throws IllegalStateException si la retención está deshabilitada
+     */
+    public long depurar() throws IOException {
+        if (!enabled) {
+            throw new IllegalStateException("La retención de webhook_event está deshabilitada (webhooks.retencion.enabled)");
+        }
+        if (!corriendo.compareAndSet(false, true)) {
+            log.info("Retención de webhook_event ya en curso; se omite");
+            return 0;
+        }
+        try {
+            LocalDateTime corte = YearMonth.now().minusMonths(meses).atDay(1).atStartOfDay();
+            LocalDateTime primero = eventRepository.primerArchivable(corte);
+            if (primero == null) {
+                return 0;
+            }
+            Files.createDirectories(directorio);
+            String corrida = LocalDateTime.now().format(CORRIDA);
+            long borrados = 0;
+            for (YearMonth mes = YearMonth.from(primero); mes.atDay(1).atStartOfDay().isBefore(corte); mes = mes.plusMonths(1)) {
+                borrados += archivarMes(mes, corrida);
+            }
+            return borrados;
+        } finally {
+            corriendo.set(false);
+        }
+    }
+
+    private long archivarMes(YearMonth mes, String corrida) throws IOException {
+        LocalDateTime desde = mes.atDay(1).atStartOfDay();
+        LocalDateTime hasta = mes.plusMonths(1).atDay(1).atStartOfDay();
+        Path destino = directorio.resolve(PREFIJO + mes + "_" + corrida + EXTENSION);
+        Path parcial = destino.resolveSibling(destino.getFileName() + ".part");
+
+        List<Long> exportados = new ArrayList<>();
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(parcial)), 64 * 1024);
+             JsonGenerator gen = escritor.getFactory().createGenerator(out)) {
+            gen.setRootValueSeparator(null);
+            long despuesDe = 0;
+            List<WebhookEvent> lote;
+            while (!(lote = eventRepository.archivables(desde, hasta, despuesDe, tanda)).isEmpty()) {
+                for (WebhookEvent evento : lote) {
+                    escritor.writeValue(gen, evento);
+                    gen.writeRaw('\n');
+                    exportados.add(evento.getId());
+                }
+                despuesDe = lote.get(lote.size() - 1).getId();
+            }
+        }
+        if (exportados.isEmpty()) {
+            Files.deleteIfExists(parcial);
+            return 0;
+        }
+        Files.move(parcial, destino, StandardCopyOption.ATOMIC_MOVE);
+
+        // Solo con el archivo completo en disco se borra lo exportado
+        long borrados = 0;
+        for (int i = 0; i < exportados.size(); i += tanda) {
+            List<Long> ids = exportados.subList(i, Math.min(i + tanda, exportados.size()));
+            Integer n = transactionTemplate.execute(status -> {
+                deadLetterRepository.borrarPorEventos(ids);
+                return eventRepository.borrarArchivados(ids);
+            });
+            borrados += n != null ? n : 0;
+        }
+        log.info("webhook_event {}: {} eventos archivados en {}, {} borrados", mes, exportados.size(), destino, borrados);
+        return borrados;
+    }
+
+    static boolean esArchivo(Path path) {
+        String nombre = path.getFileName().toString();
+        return nombre.startsWith(PREFIJO) && nombre.endsWith(EXTENSION);
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.AckPendiente;
+import com.example.demo.entity.enums.EstadoAckPendiente;
+import com.example.demo.repository.AckPendienteRepository;
+import com.example.demo.service.MatchingSubscriptionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ACK al hub en segundo plano ({@code matching.ack.async.enabled}): el webhook solo registra
+ * el ACK en ack_pendiente y lo encola; un pool de {@code matching.ack.senders} hilos lo envía.
+ * Los envíos fallidos se reintentan con backoff exponencial (con jitter) hasta
+ * {@code matching.ack.max-attempts}; los 4xx que no sean 408/429 no se reintentan.
+ *
+ * <p>Lo que no entra en la cola, los reintentos y lo que quedó a medio enviar tras un reinicio
+ * lo retoma el poller desde la base cuando vence su {@code proximo_intento}.
+ */
+@Component
+@Slf4j
+public class AckDispatcher {
+
+    private record Envio(Long id, String messageId, String subscriptionId, int intentos) {}
+
+    private final MatchingSubscriptionService subscriptionService;
+    private final AckPendienteRepository repository;
+    private final boolean enabled;
+    private final int queueCapacity;
+    private final int maxIntentos;
+    private final long backoffInicialMs;
+    private final long backoffMaxMs;
+    private final long leaseSeconds;
+    private final ThreadPoolExecutor senders;
+    private final Timer latenciaOk;
+    private final Timer latenciaError;
+    private final Counter reintentos;
+    private final Counter fallidos;
+    private final Counter desbordes;
+
+    public AckDispatcher(
+            MatchingSubscriptionService subscriptionService,
+            AckPendienteRepository repository,
+            MeterRegistry meterRegistry,
+            @Value("${matching.ack.async.enabled:true}") boolean enabled,
+            @Value("${matching.ack.senders:4}") int senders,
+            @Value("${matching.ack.queue-capacity:1000}") int queueCapacity,
+            @Value("${matching.ack.max-attempts:8}") int maxIntentos,
+            @Value("${matching.ack.backoff-initial-ms:1000}") long backoffInicialMs,
+            @Value("${matching.ack.backoff-max-ms:300000}") long backoffMaxMs,
+            @Value("${matching.ack.lease-seconds:60}") long leaseSeconds) {
+        this.subscriptionService = subscriptionService;
+        this.repository = repository;
+        this.enabled = enabled;
+        this.queueCapacity = Math.max(queueCapacity, 1);
+        this.maxIntentos = Math.max(maxIntentos, 1);
+        this.backoffInicialMs = Math.max(backoffInicialMs, 1);
+        this.backoffMaxMs = Math.max(backoffMaxMs, this.backoffInicialMs);
+        this.leaseSeconds = Math.max(leaseSeconds, 1);
+        int hilos = Math.max(senders, 1);
+        AtomicInteger secuencia = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(
+                hilos, hilos,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "ack-" + secuencia.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.senders.allowCoreThreadTimeOut(true);
+
+        this.latenciaOk = Timer.builder("matching.ack.latencia").tag("resultado", "ok")
+                .description("Duración del POST de ACK al hub").register(meterRegistry);
+        this.latenciaError = Timer.builder("matching.ack.latencia").tag("resultado", "error")
+                .description("Duración del POST de ACK al hub").register(meterRegistry);
+        this.reintentos = Counter.builder("matching.ack.reintentos")
+                .description("ACKs fallidos reprogramados con backoff").register(meterRegistry);
+        this.fallidos = Counter.builder("matching.ack.fallidos")
+                .description("ACKs que agotaron los reintentos o el hub rechazó").register(meterRegistry);
+        this.desbordes = Counter.builder("matching.ack.desbordes")
+                .description("ACKs que no entraron en la cola y quedaron para el poller").register(meterRegistry);
+        Gauge.builder("matching.ack.cola", this.senders, p -> p.getQueue().size())
+                .description("ACKs en cola esperando un hilo de envío").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registra el ACK y lo encola para enviarlo en segundo plano. Si el mensaje ya tenía un ACK
+     * pendiente no se duplica.
+     */
+    public AckOutcome encolar(String messageId, String subscriptionId) {
+        String msg = messageId.trim();
+        String sub = subscriptionId.trim();
+        LocalDateTime ahora = LocalDateTime.now();
+        List<Long> ids = repository.registrar(msg, sub, ahora.plusSeconds(leaseSeconds), ahora);
+        if (!ids.isEmpty()) {
+            programar(new Envio(ids.get(0), msg, sub, 0));
+        }
+        return AckOutcome.encolado();
+    }
+
+    @Scheduled(fixedDelayString = "${matching.ack.poll-interval-ms:2000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        int libres = queueCapacity - senders.getQueue().size();
+        if (libres <= 0) {
+            return;
+        }
+        try {
+            LocalDateTime ahora = LocalDateTime.now();
+            for (AckPendiente ack : repository.tomarVencidos(ahora, ahora.plusSeconds(leaseSeconds), libres)) {
+                programar(new Envio(ack.getId(), ack.getMessageId(), ack.getSubscriptionId(), ack.getIntentos()));
+            }
+        } catch (Exception e) {
+            log.error("Error tomando ACKs pendientes", e);
+        }
+    }
+
+    private void programar(Envio envio) {
+        try {
+            senders.execute(() -> enviar(envio));
+        } catch (RejectedExecutionException e) {
+            // Queda en la base: el poller lo retoma cuando vence el lease
+            desbordes.increment();
+        }
+    }
+
+    private void enviar(Envio envio) {
+        long inicio = System.nanoTime();
+        MatchingSubscriptionService.AckResult result;
+        try {
+            result = subscriptionService.acknowledgeMessage(envio.messageId(), envio.subscriptionId());
+        } catch (Exception e) {
+            result = MatchingSubscriptionService.AckResult.failure(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
+        }
+        long duracion = System.nanoTime() - inicio;
+
+        try {
+            if (result.isSuccess()) {
+                latenciaOk.record(duracion, TimeUnit.NANOSECONDS);
+                repository.deleteById(envio.id());
+                return;
+            }
+            latenciaError.record(duracion, TimeUnit.NANOSECONDS);
+            int intentos = envio.intentos() + 1;
+            String error = (result.status() != null ? result.status().value() + " " : "") + result.errorBody();
+            if (intentos >= maxIntentos || !reintentable(result.status())) {
+                fallidos.increment();
+                log.error("ACK del mensaje {} abandonado tras {} intentos: {}", envio.messageId(), intentos, error);
+                repository.reprogramar(envio.id(), intentos, LocalDateTime.now(), error, EstadoAckPendiente.FALLIDO);
+                return;
+            }
+            reintentos.increment();
+            long espera = backoffMs(intentos);
+            log.warn("ACK del mensaje {} falló (intento {}), se reintenta en {} ms: {}",
+                    envio.messageId(), intentos, espera, error);
+            repository.reprogramar(envio.id(), intentos, LocalDateTime.now().plusNanos(espera * 1_000_000),
+                    error, EstadoAckPendiente.PENDIENTE);
+        } catch (Exception e) {
+            // Sin actualizar la base, el lease vence y el poller lo vuelve a tomar
+            log.error("Error registrando el resultado del ACK del mensaje {}", envio.messageId(), e);
+        }
+    }
+
+    // 2^(n-1) * inicial, tope backoff-max-ms, con ±20 % de jitter para no reintentar en bloque
+    long backoffMs(int intentos) {
+        long base = backoffInicialMs << Math.min(intentos - 1, 30);
+        long tope = Math.min(base > 0 ? base : backoffMaxMs, backoffMaxMs);
+        return (long) (tope * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    static boolean reintentable(HttpStatus status) {
+        return status == null
+                || status.is5xxServerError()
+                || status == HttpStatus.REQUEST_TIMEOUT
+                || status == HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senders.shutdown();
+    }
+}
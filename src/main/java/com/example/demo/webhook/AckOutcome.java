@@ -0,0 +1,45 @@
+package com.example.demo.webhook;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resultado del ACK al hub de un mensaje recibido por webhook. Con el envío en segundo plano
+ * ({@link AckDispatcher}) el ACK queda {@code queued}: no se hizo todavía, pero se va a hacer
+ * (con reintentos) aunque la aplicación se reinicie.
+ */
+public record AckOutcome(boolean performed, boolean queued, boolean success, Integer statusCode, String errorMessage) {
+
+    public static AckOutcome notPerformed() {
+        return new AckOutcome(false, false, false, null, null);
+    }
+
+    public static AckOutcome encolado() {
+        return new AckOutcome(false, true, false, null, null);
+    }
+
+    public static AckOutcome success(int statusCode) {
+        return new AckOutcome(true, false, true, statusCode, null);
+    }
+
+    public static AckOutcome failure(int statusCode, String errorMessage) {
+        return new AckOutcome(true, false, false, statusCode, errorMessage);
+    }
+
+    /** Metadata que se guarda junto al evento ("ack"). */
+    public Map<String, Object> metadata() {
+        Map<String, Object> ackMetadata = new HashMap<>();
+        ackMetadata.put("performed", performed);
+        if (queued) {
+            ackMetadata.put("queued", true);
+        }
+        ackMetadata.put("success", success);
+        if (statusCode != null) {
+            ackMetadata.put("status", statusCode);
+        }
+        if (errorMessage != null) {
+            ackMetadata.put("error", errorMessage);
+        }
+        return ackMetadata;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.demo.webhook;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Ejecutor particionado por clave de agregado (solicitud, prestador, catálogo): cada partición
+ * es un hilo con su propia cola, y todas las tareas con la misma clave caen en la misma
+ * partición, así que corren de a una y en el orden en que se enviaron. Claves distintas corren
+ * en paralelo en {@code webhooks.particiones} hilos (0 = uno por núcleo).
+ *
+ * <p>La profundidad de cada partición (en cola + en curso) se publica como
+ * {@code webhooks.particion.pendientes{particion=N}}.
+ */
+@Component
+@Slf4j
+public class EjecutorPorClave {
+
+    private final ThreadPoolExecutor[] particiones;
+
+    public EjecutorPorClave(MeterRegistry meterRegistry,
+                            @Value("${webhooks.particiones:0}") int particiones) {
+        int n = particiones > 0 ? particiones : Runtime.getRuntime().availableProcessors();
+        this.particiones = new ThreadPoolExecutor[n];
+        for (int i = 0; i < n; i++) {
+            String nombre = "webhook-p" + i;
+            ThreadPoolExecutor particion = new ThreadPoolExecutor(
+                    1, 1,
+                    0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread t = new Thread(r, nombre);
+                        t.setDaemon(true);
+                        return t;
+                    });
+            this.particiones[i] = particion;
+            Gauge.builder("webhooks.particion.pendientes", particion, p -> p.getQueue().size() + p.getActiveCount())
+                    .tag("particion", String.valueOf(i))
+                    .description("Eventos de webhook en cola o en curso en la partición")
+                    .register(meterRegistry);
+        }
+        log.info("Ejecutor de webhooks particionado: {} particiones", n);
+    }
+
+    /**
+     * Encola la tarea en la partición de {@code clave}. Sin clave (evento que no toca un
+     * agregado conocido) va a la partición menos cargada.
+     */
+    public <T> CompletableFuture<T> ejecutar(String clave, Supplier<T> tarea) {
+        return CompletableFuture.supplyAsync(tarea, particiones[particion(clave)]);
+    }
+
+    public int getParticiones() {
+        return particiones.length;
+    }
+
+    private int particion(String clave) {
+        if (clave != null) {
+            return Math.floorMod(clave.hashCode(), particiones.length);
+        }
+        int elegida = 0;
+        int menor = Integer.MAX_VALUE;
+        for (int i = 0; i < particiones.length; i++) {
+            int pendientes = particiones[i].getQueue().size() + particiones[i].getActiveCount();
+            if (pendientes < menor) {
+                menor = pendientes;
+                elegida = i;
+            }
+        }
+        return elegida;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (ThreadPoolExecutor particion : particiones) {
+            particion.shutdown();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.demo.webhook;
+
+import com.example.demo.config.WebhookAdmisionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Control de admisión del webhook: cada familia de topics tiene un cupo de mensajes en curso
+ * ({@link WebhookAdmisionProperties}). Un mensaje que no entra se rechaza enseguida con 429 y
+ * Retry-After en lugar de quedarse esperando en un hilo de Tomcat, así una ráfaga del hub de
+ * una familia no bloquea a las demás ni a los endpoints de health.
+ *
+ * <p>Estado en {@code /actuator/webhookadmision} y en las métricas
+ * {@code webhooks.admision.ocupados} / {@code webhooks.admision.rechazos} por familia.
+ */
+@Component
+@Endpoint(id = "webhookadmision")
+public class WebhookAdmision {
+
+    public static final String OTROS = "otros";
+    public static final String LOTE = "lote";
+
+    private record Cupo(int limite, Semaphore permisos, Counter rechazos) {
+        int ocupados() {
+            return limite - permisos.availablePermits();
+        }
+    }
+
+    private final WebhookRoutingTable routingTable;
+    private final WebhookAdmisionProperties properties;
+    private final Map<String, Cupo> cupos = new LinkedHashMap<>();
+
+    public WebhookAdmision(WebhookRoutingTable routingTable,
+                           WebhookAdmisionProperties properties,
+                           MeterRegistry meterRegistry) {
+        this.routingTable = routingTable;
+        this.properties = properties;
+        for (WebhookRoute ruta : WebhookRoute.values()) {
+            cupos.computeIfAbsent(ruta.familia(), familia -> cupo(familia, meterRegistry));
+        }
+        cupos.put(OTROS, cupo(OTROS, meterRegistry));
+        cupos.put(LOTE, cupo(LOTE, meterRegistry));
+    }
+
+    private Cupo cupo(String familia, MeterRegistry meterRegistry) {
+        int limite = properties.limiteDe(familia);
+        Semaphore permisos = new Semaphore(limite);
+        Gauge.builder("webhooks.admision.ocupados", permisos, p -> limite - p.availablePermits())
+                .tag("familia", familia)
+                .description("Mensajes de webhook de la familia en curso")
+                .register(meterRegistry);
+        Counter rechazos = Counter.builder("webhooks.admision.rechazos")
+                .tag("familia", familia)
+                .description("Mensajes de webhook rechazados con 429 por cupo lleno")
+                .register(meterRegistry);
+        return new Cupo(limite, permisos, rechazos);
+    }
+
+    /** Familia del mensaje según sus rutas; {@link #OTROS} si no tiene handler. */
+    public String familia(WebhookMensaje.Sobre sobre) {
+        Set<WebhookRoute> rutas = routingTable.resolver(sobre.topic(), sobre.eventName());
+        return rutas.isEmpty() ? OTROS : rutas.iterator().next().familia();
+    }
+
+    /**
+     * Toma un lugar en el cupo de la familia sin esperar. Si devuelve true, el llamador tiene
+     * que liberarlo con {@link #salir}.
+     */
+    public boolean entrar(String familia) {
+        if (!properties.enabled()) {
+            return true;
+        }
+        Cupo cupo = cupos.get(familia);
+        if (cupo.permisos().tryAcquire()) {
+            return true;
+        }
+        cupo.rechazos().increment();
+        return false;
+    }
+
+    public void salir(String familia) {
+        if (properties.enabled()) {
+            cupos.get(familia).permisos().release();
+        }
+    }
+
+    public int getRetryAfterSeconds() {
+        return properties.retryAfterSeconds();
+    }
+
+    @ReadOperation
+    public Map<String, Object> estado() {
+        Map<String, Object> familias = new LinkedHashMap<>();
+        cupos.forEach((familia, cupo) -> familias.put(familia, Map.of(
+                "limite", cupo.limite(),
+                "ocupados", cupo.ocupados(),
+                "rechazos", (long) cupo.rechazos().count())));
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("enabled", properties.enabled());
+        estado.put("retryAfterSeconds", properties.retryAfterSeconds());
+        estado.put("familias", familias);
+        return estado;
+    }
+}
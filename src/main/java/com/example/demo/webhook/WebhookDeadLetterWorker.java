@@ -0,0 +1,145 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.WebhookDeadLetter;
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.entity.enums.EstadoDeadLetter;
+import com.example.demo.service.WebhookDeadLetterService;
+import com.example.demo.service.WebhookEventService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Reintenta los handlers registrados en webhook_dead_letter: un poller toma los vencidos
+ * (FOR UPDATE SKIP LOCKED), relee el mensaje del evento guardado y vuelve a correr solo el
+ * handler que falló. Los reintentos van por {@link EjecutorPorClave} con la clave del
+ * agregado, así no se cruzan con eventos nuevos de la misma solicitud o prestador, y nunca
+ * hay más de {@code webhooks.dead-letter.max-en-curso} en curso.
+ */
+@Component
+@Slf4j
+public class WebhookDeadLetterWorker {
+
+    private final WebhookDeadLetterService deadLetterService;
+    private final WebhookEventService webhookEventService;
+    private final WebhookDispatcher dispatcher;
+    private final EjecutorPorClave ejecutor;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxEnCurso;
+    private final long leaseSeconds;
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final Counter resueltos;
+    private final Counter reintentosFallidos;
+    private final Counter agotados;
+
+    public WebhookDeadLetterWorker(
+            WebhookDeadLetterService deadLetterService,
+            WebhookEventService webhookEventService,
+            WebhookDispatcher dispatcher,
+            EjecutorPorClave ejecutor,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${webhooks.dead-letter.enabled:true}") boolean enabled,
+            @Value("${webhooks.dead-letter.max-en-curso:8}") int maxEnCurso,
+            @Value("${webhooks.dead-letter.lease-seconds:300}") long leaseSeconds) {
+        this.deadLetterService = deadLetterService;
+        this.webhookEventService = webhookEventService;
+        this.dispatcher = dispatcher;
+        this.ejecutor = ejecutor;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxEnCurso = Math.max(maxEnCurso, 1);
+        this.leaseSeconds = Math.max(leaseSeconds, 1);
+        this.resueltos = Counter.builder("webhooks.dead-letter.reintentos").tag("resultado", "resuelto")
+                .description("Reintentos de handlers de webhook").register(meterRegistry);
+        this.reintentosFallidos = Counter.builder("webhooks.dead-letter.reintentos").tag("resultado", "fallido")
+                .description("Reintentos de handlers de webhook").register(meterRegistry);
+        this.agotados = Counter.builder("webhooks.dead-letter.reintentos").tag("resultado", "agotado")
+                .description("Reintentos de handlers de webhook").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${webhooks.dead-letter.poll-interval-ms:5000}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        int libres = maxEnCurso - enCurso.get();
+        if (libres <= 0) {
+            return;
+        }
+        try {
+            List<WebhookDeadLetter> vencidos = deadLetterService.tomarVencidos(libres, leaseSeconds);
+            if (vencidos.isEmpty()) {
+                return;
+            }
+            Map<Long, WebhookEvent> eventos = webhookEventService
+                    .findAllById(vencidos.stream().map(WebhookDeadLetter::getWebhookEventId).distinct().toList())
+                    .stream()
+                    .collect(Collectors.toMap(WebhookEvent::getId, Function.identity()));
+            for (WebhookDeadLetter deadLetter : vencidos) {
+                WebhookEvent evento = eventos.get(deadLetter.getWebhookEventId());
+                WebhookMensaje mensaje;
+                try {
+                    if (evento == null) {
+                        throw new IllegalStateException("Evento " + deadLetter.getWebhookEventId() + " no encontrado");
+                    }
+                    mensaje = WebhookMensaje.desdeAlmacenado(objectMapper.readTree(evento.getRawPayload()), objectMapper);
+                } catch (Exception e) {
+                    registrarFallo(deadLetter, e.getClass().getName() + ": " + e.getMessage());
+                    continue;
+                }
+                enCurso.incrementAndGet();
+                ejecutor.ejecutar(dispatcher.claveAgregado(mensaje), () -> {
+                    reintentar(deadLetter, mensaje);
+                    return null;
+                }).whenComplete((r, e) -> enCurso.decrementAndGet());
+            }
+        } catch (Exception e) {
+            log.error("Error tomando dead letters de webhooks", e);
+        }
+    }
+
+    private void reintentar(WebhookDeadLetter deadLetter, WebhookMensaje mensaje) {
+        String error;
+        try {
+            Map<String, Object> resultado = dispatcher.reintentar(mensaje, deadLetter.getRuta());
+            error = WebhookDispatcher.fallos(resultado).get(deadLetter.getRuta());
+        } catch (Exception e) {
+            error = e.getClass().getName() + ": " + e.getMessage();
+        }
+        try {
+            if (error == null) {
+                deadLetterService.marcarResuelto(deadLetter);
+                resueltos.increment();
+                log.info("Handler {} del webhook {} resuelto en el reintento {}",
+                        deadLetter.getRuta(), deadLetter.getWebhookEventId(), deadLetter.getIntentos() + 1);
+                return;
+            }
+            registrarFallo(deadLetter, error);
+        } catch (Exception e) {
+            // Sin actualizar la base, el lease vence y el poller lo vuelve a tomar
+            log.error("Error registrando el reintento del dead letter {}", deadLetter.getId(), e);
+        }
+    }
+
+    private void registrarFallo(WebhookDeadLetter deadLetter, String error) {
+        if (deadLetterService.marcarFallido(deadLetter, error) == EstadoDeadLetter.AGOTADO) {
+            agotados.increment();
+            log.error("Handler {} del webhook {} agotó los reintentos: {}",
+                    deadLetter.getRuta(), deadLetter.getWebhookEventId(), error);
+        } else {
+            reintentosFallidos.increment();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.webhook;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Frente en memoria de la deduplicación de mensajes del hub: recuerda los últimos
+ * {@code webhooks.dedupe.cache-size} pares (messageId, subscriptionId) aceptados, así una
+ * reentrega reciente se corta sin tocar la base. La garantía la da el índice único
+ * ux_webhook_event_mensaje sobre webhook_event; esta caché solo evita llegar hasta él.
+ */
+@Component
+public class WebhookDedupe {
+
+    private final Map<String, Boolean> vistos;
+    private final Counter duplicadosCache;
+    private final Counter duplicadosBase;
+
+    public WebhookDedupe(MeterRegistry meterRegistry,
+                         @Value("${webhooks.dedupe.cache-size:10000}") int cacheSize) {
+        final int limite = Math.max(cacheSize, 1);
+        this.vistos = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > limite;
+            }
+        };
+        this.duplicadosCache = Counter.builder("webhooks.duplicados").tag("origen", "cache")
+                .description("Mensajes reentregados descartados por la caché en memoria").register(meterRegistry);
+        this.duplicadosBase = Counter.builder("webhooks.duplicados").tag("origen", "db")
+                .description("Mensajes reentregados descartados por el índice único").register(meterRegistry);
+    }
+
+    /**
+     * {@code true} si el mensaje ya se aceptó hace poco (y lo cuenta como duplicado).
+     * Mensajes sin messageId nunca se consideran duplicados.
+     */
+    public boolean yaVisto(String messageId, String subscriptionId) {
+        String clave = clave(messageId, subscriptionId);
+        if (clave == null) {
+            return false;
+        }
+        boolean visto;
+        synchronized (vistos) {
+            visto = vistos.get(clave) != null;
+        }
+        if (visto) {
+            duplicadosCache.increment();
+        }
+        return visto;
+    }
+
+    /** El mensaje quedó guardado: las próximas reentregas se cortan en memoria. */
+    public void registrar(String messageId, String subscriptionId) {
+        String clave = clave(messageId, subscriptionId);
+        if (clave != null) {
+            synchronized (vistos) {
+                vistos.put(clave, Boolean.TRUE);
+            }
+        }
+    }
+
+    /** No se pudo guardar el mensaje: se olvida para que la reentrega del hub entre. */
+    public void olvidar(String messageId, String subscriptionId) {
+        String clave = clave(messageId, subscriptionId);
+        if (clave != null) {
+            synchronized (vistos) {
+                vistos.remove(clave);
+            }
+        }
+    }
+
+    /** La base rechazó el mensaje por duplicado: se cuenta y se recuerda. */
+    public void duplicadoEnBase(String messageId, String subscriptionId) {
+        duplicadosBase.increment();
+        registrar(messageId, subscriptionId);
+    }
+
+    // Misma normalización que WebhookEventService (trim, vacío = null) y que el índice (COALESCE)
+    private static String clave(String messageId, String subscriptionId) {
+        String msg = messageId != null ? messageId.trim() : "";
+        if (msg.isEmpty()) {
+            return null;
+        }
+        String sub = subscriptionId != null ? subscriptionId.trim() : "";
+        return msg + '\u0000' + sub;
+    }
+}
@@ -0,0 +1,1312 @@
+package com.example.demo.webhook;
+
+import com.example.demo.dto.CotizacionWebhookDTO;
+import com.example.demo.dto.CotizacionesSubmit;
+import com.example.demo.dto.HabilidadAltaWebhookDTO;
+import com.example.demo.dto.PrestadorDTO;
+import com.example.demo.dto.PrestadorDireccionDTO;
+import com.example.demo.dto.RecibirCalificacionesDTO;
+import com.example.demo.dto.RubroAltaWebhookDTO;
+import com.example.demo.dto.RubroModificacionWebhookDTO;
+import com.example.demo.dto.SolicitudesCreadasDTO;
+import com.example.demo.dto.ZonaAltaWebhookDTO;
+import com.example.demo.dto.ZonaModificacionWebhookDTO;
+import com.example.demo.entity.Habilidad;
+import com.example.demo.entity.Prestador;
+import com.example.demo.entity.Rubro;
+import com.example.demo.service.BacklogTrigger;
+import com.example.demo.service.CalificacionService;
+import com.example.demo.service.CotizacionService;
+import com.example.demo.service.HabilidadSyncService;
+import com.example.demo.service.MatchingSubscriptionService;
+import com.example.demo.service.PrestadorSyncService;
+import com.example.demo.service.RubroSyncService;
+import com.example.demo.service.SolicitudService;
+import com.example.demo.service.ZonaSyncService;
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ejecuta los handlers del webhook de matching sobre un {@link WebhookMensaje}: ACK al hub,
+ * ruteo por (topic, eventName) y alta/modificación de solicitudes, cotizaciones,
+ * calificaciones, prestadores y catálogo. Lo usan tanto el endpoint (modo sincrónico) como
+ * el worker de eventos pendientes (modo asíncrono).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WebhookDispatcher {
+
+    private final MatchingSubscriptionService subscriptionService;
+    private final SolicitudService solicitudService;
+    private final BacklogTrigger backlogTrigger;
+    private final CotizacionService cotizacionService;
+    private final CalificacionService calificacionService;
+    private final RubroSyncService rubroSyncService;
+    private final ZonaSyncService zonaSyncService;
+    private final HabilidadSyncService habilidadSyncService;
+    private final ObjectMapper objectMapper;
+    private final PrestadorSyncService prestadorSyncService;
+    private final WebhookRoutingTable routingTable;
+    private final AckDispatcher ackDispatcher;
+    // Un ObjectReader por DTO de payload: se arma una vez y se reusa en cada mensaje
+    private final Map<Class<?>, ObjectReader> lectores = new ConcurrentHashMap<>();
+
+    // Clave del resultado con los handlers que fallaron (ruta -> error)
+    public static final String HANDLERS_FALLIDOS = "handlersFallidos";
+
+    // Ids del payload que identifican el agregado que toca cada handler
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record IdsAgregado(
+            @JsonProperty("solicitud_id") @JsonAlias({"solicitudId", "id_pedido"}) String solicitudId,
+            @JsonProperty("prestador_id") @JsonAlias({"prestadorId", "id_prestador"}) String prestadorId,
+            String userId,
+            String id) {}
+
+    /**
+     * Clave del agregado que modifica el mensaje ("solicitud:N", "prestador:N" o "catalogo"),
+     * para que {@link EjecutorPorClave} procese en orden los eventos de un mismo agregado: una
+     * cotización no se adelanta a la creación de su solicitud y dos cotizaciones de la misma
+     * solicitud no corren a la vez. El catálogo va en una sola clave porque las habilidades
+     * referencian rubros. Null si el mensaje no toca ningún agregado conocido.
+     */
+    public String claveAgregado(WebhookMensaje mensaje) {
+        Set<WebhookRoute> rutas = routingTable.resolver(mensaje.sobre().topic(), mensaje.sobre().eventName());
+        if (!mensaje.tienePayload() || rutas.isEmpty()) {
+            return null;
+        }
+        IdsAgregado ids;
+        try {
+            ids = leerPayload(mensaje, IdsAgregado.class);
+        } catch (PayloadInvalidoException e) {
+            return null;
+        }
+        for (WebhookRoute ruta : rutas) {
+            String clave = switch (ruta) {
+                case SOLICITUD_CREADA, SOLICITUD_CANCELADA, COTIZACION_ACEPTADA, COTIZACION_RECHAZADA,
+                     PEDIDO_COTIZACION_ENVIADA -> clave("solicitud:", ids.solicitudId());
+                case CALIFICACION -> clave("prestador:", ids.prestadorId() != null ? ids.prestadorId() : ids.id());
+                case USER_CREATED, USER_UPDATED, USER_DEACTIVATED, USER_REJECTED ->
+                        clave("prestador:", ids.userId() != null ? ids.userId() : ids.id());
+                case HABILIDAD_ALTA, HABILIDAD_MODIFICACION, RUBRO_ALTA, RUBRO_MODIFICACION,
+                     ZONA_ALTA, ZONA_MODIFICACION -> "catalogo";
+            };
+            if (clave != null) {
+                return clave;
+            }
+        }
+        return null;
+    }
+
+    private static String clave(String prefijo, String id) {
+        return id == null || id.isBlank() ? null : prefijo + id.trim();
+    }
+
+    /**
+     * Corre los handlers que correspondan al mensaje y devuelve lo que hicieron (flags, IDs
+     * procesados y advertencias), con las mismas claves que se guardan en el evento y se
+     * devuelven al proveedor.
+     */
+    public Map<String, Object> despachar(WebhookMensaje mensaje) {
+        return despachar(mensaje, routingTable.resolver(mensaje.sobre().topic(), mensaje.sobre().eventName()));
+    }
+
+    /**
+     * Despacha un lote de mensajes en el orden del lote. Las altas de solicitud consecutivas
+     * (mensajes que solo son solicitud.creada) se crean juntas en un crearDesdeEventos y una
+     * sola marca del backlog CREADA; si ese tramo falla se vuelve a crear de a una, así una
+     * solicitud inválida no tira las demás. El resto de los mensajes corre de a uno, recién
+     * después de las altas que tenían antes. Devuelve el resultado de cada mensaje en el mismo
+     * orden (null si el mensaje falló; el error queda en {@code errores}).
+     */
+    public List<Map<String, Object>> despacharLote(List<WebhookMensaje> mensajes, Map<Integer, Exception> errores) {
+        List<Map<String, Object>> resultados = new ArrayList<>(Collections.nCopies(mensajes.size(), null));
+        Map<Integer, SolicitudesCreadasDTO> tramo = new LinkedHashMap<>();
+        for (int i = 0; i < mensajes.size(); i++) {
+            WebhookMensaje mensaje = mensajes.get(i);
+            Set<WebhookRoute> rutas = routingTable.resolver(mensaje.sobre().topic(), mensaje.sobre().eventName());
+            SolicitudesCreadasDTO alta = soloAlta(mensaje, rutas);
+            if (alta != null) {
+                tramo.put(i, alta);
+                continue;
+            }
+            crearTramo(mensajes, tramo, resultados, errores);
+            despacharEnLote(i, mensaje, rutas, resultados, errores);
+        }
+        crearTramo(mensajes, tramo, resultados, errores);
+        return resultados;
+    }
+
+    // Alta de solicitud agrupable: el mensaje no dispara otra ruta y trae solicitud_id
+    private SolicitudesCreadasDTO soloAlta(WebhookMensaje mensaje, Set<WebhookRoute> rutas) {
+        if (!mensaje.tienePayload() || rutas.size() != 1 || !rutas.contains(WebhookRoute.SOLICITUD_CREADA)) {
+            return null;
+        }
+        try {
+            SolicitudesCreadasDTO dto = leerPayload(mensaje, SolicitudesCreadasDTO.class);
+            return dto.getSolicitudId() != null ? dto : null;
+        } catch (PayloadInvalidoException e) {
+            // Lo informa despachar, como en un mensaje suelto
+            return null;
+        }
+    }
+
+    private void crearTramo(List<WebhookMensaje> mensajes, Map<Integer, SolicitudesCreadasDTO> tramo,
+                            List<Map<String, Object>> resultados, Map<Integer, Exception> errores) {
+        if (tramo.isEmpty()) {
+            return;
+        }
+        try {
+            Set<Long> creadas = new HashSet<>();
+            for (var creada : solicitudService.crearDesdeEventos(new ArrayList<>(tramo.values()))) {
+                if (creada != null) {
+                    creadas.add(creada.getId());
+                }
+            }
+            // El resto del backlog CREADA lo drena una corrida en segundo plano
+            backlogTrigger.marcar();
+            for (Map.Entry<Integer, SolicitudesCreadasDTO> alta : tramo.entrySet()) {
+                Map<String, Object> resultado = despachar(mensajes.get(alta.getKey()), EnumSet.noneOf(WebhookRoute.class));
+                if (creadas.contains(alta.getValue().getSolicitudId())) {
+                    resultado.put("solicitudCreada", true);
+                    resultado.put("solicitudId", alta.getValue().getSolicitudId());
+                }
+                resultados.set(alta.getKey(), resultado);
+            }
+        } catch (Exception e) {
+            log.warn("No se pudieron crear juntas {} solicitudes del lote de webhooks; se crean de a una: {}",
+                    tramo.size(), e.getMessage());
+            for (Integer i : tramo.keySet()) {
+                despacharEnLote(i, mensajes.get(i), EnumSet.of(WebhookRoute.SOLICITUD_CREADA), resultados, errores);
+            }
+        } finally {
+            tramo.clear();
+        }
+    }
+
+    private void despacharEnLote(int i, WebhookMensaje mensaje, Set<WebhookRoute> rutas,
+                                 List<Map<String, Object>> resultados, Map<Integer, Exception> errores) {
+        try {
+            resultados.set(i, despachar(mensaje, rutas));
+        } catch (Exception e) {
+            log.error("Error procesando mensaje {} del lote de webhooks", i, e);
+            errores.put(i, e);
+        }
+    }
+
+    /** Rutas que resuelve el mensaje (vacío si no corresponde a ningún handler). */
+    public Set<WebhookRoute> rutas(WebhookMensaje mensaje) {
+        return routingTable.resolver(mensaje.sobre().topic(), mensaje.sobre().eventName());
+    }
+
+    /** Corre solo las rutas indicadas sobre el mensaje (replay de las que son reproducibles). */
+    public Map<String, Object> despachar(WebhookMensaje mensaje, Set<WebhookRoute> rutas) {
+        // Intentamos crear una solicitud si viene payload compatible
+        boolean hayPayload = mensaje.tienePayload();
+        boolean solicitudCreada = false;
+        boolean prestadorUpsert = false;
+        boolean prestadorDesactivado = false;
+        Long prestadorIdProcesado = null;
+        Long solicitudIdCreada = null;
+        List<String> solicitudCreadaWarnings = new ArrayList<>();
+        boolean solicitudCancelada = false;
+        Long solicitudIdCancelada = null;
+        List<String> solicitudCancelWarnings = new ArrayList<>();
+        boolean habilidadProcesada = false;
+        Long habilidadIdProcesada = null;
+        List<String> habilidadWarnings = new ArrayList<>();
+        boolean habilidadModificada = false;
+        Long habilidadIdModificada = null;
+        List<String> habilidadModWarnings = new ArrayList<>();
+        boolean cotizacionAceptada = false;
+        Map<String, Object> cotizacionAceptadaDetails = null;
+        List<String> cotizacionAceptadaWarnings = new ArrayList<>();
+        boolean cotizacionRecibida = false;
+        Map<String, Object> cotizacionRecibidaDetails = null;
+        List<String> cotizacionRecibidaWarnings = new ArrayList<>();
+        boolean cotizacionRechazada = false;
+        Map<String, Object> cotizacionRechazadaDetails = null;
+        List<String> cotizacionRechazadaWarnings = new ArrayList<>();
+        boolean calificacionProcesada = false;
+        Long calificacionPrestadorId = null;
+        Long calificacionEventoId = null;
+        Long calificacionSolicitudId = null;
+        Long calificacionUsuarioId = null;
+        List<Short> calificacionPuntuaciones = null;
+        String calificacionComentario = null;
+        List<String> calificacionWarnings = new ArrayList<>();
+        boolean rubroProcesado = false;
+        Long rubroIdProcesado = null;
+        List<String> rubroWarnings = new ArrayList<>();
+        boolean rubroModificado = false;
+        Long rubroIdModificado = null;
+        List<String> rubroModificacionWarnings = new ArrayList<>();
+        boolean zonaProcesada = false;
+        Long zonaIdProcesada = null;
+        List<String> zonaWarnings = new ArrayList<>();
+        boolean zonaModificada = false;
+        Long zonaIdModificada = null;
+        List<String> zonaModificacionWarnings = new ArrayList<>();
+        // Handlers que fallaron: quedan en webhook_dead_letter para reintentarlos. También los rechazos
+        // de los servicios (entidad no encontrada, estado todavía no alcanzado): suelen ser eventos que
+        // llegaron antes que aquel del que dependen. Solo el payload que no mapea al DTO es permanente
+        // y queda como advertencia en la respuesta: reintentarlo daría siempre lo mismo
+        Map<WebhookRoute, String> fallos = new EnumMap<>(WebhookRoute.class);
+
+        if (hayPayload && rutas.contains(WebhookRoute.SOLICITUD_CREADA)) {
+            try {
+                SolicitudesCreadasDTO solicitudDto = leerPayload(mensaje, SolicitudesCreadasDTO.class);
+                if (solicitudDto.getSolicitudId() != null) {
+                    var creadas = solicitudService.crearDesdeEventos(List.of(solicitudDto));
+                    for (var creada : creadas) {
+                        if (creada != null) {
+                            solicitudCreada = true;
+                            solicitudIdCreada = creada.getId();
+                            break;
+                        }
+                    }
+                    // crearDesdeEventos ya procesó la nueva; el resto del backlog CREADA lo drena
+                    // una corrida en segundo plano, una sola por ráfaga de altas
+                    backlogTrigger.marcar();
+                } else {
+                    solicitudCreadaWarnings.add("solicitud_id ausente en evento de alta");
+                    log.warn("Evento solicitud.creada sin solicitud_id: {}", mensaje.payloadSection());
+                }
+            } catch (PayloadInvalidoException e) {
+                solicitudCreadaWarnings.add(e.getMessage());
+                log.warn("No se pudo mapear payload de webhook a SolicitudesCreadasDTO: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.SOLICITUD_CREADA, descripcion(e));
+                log.error("Error procesando creación de solicitud desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.SOLICITUD_CANCELADA)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            Long solicitudId = extractLong(payloadSection, "solicitud_id");
+            if (solicitudId == null) {
+                solicitudCancelWarnings.add("solicitud_id ausente en evento de cancelación");
+                log.warn("Evento solicitud.cancelada sin solicitud_id: {}", payloadSection);
+            } else {
+                try {
+                    solicitudService.cancelarPorId(solicitudId);
+                    solicitudCancelada = true;
+                    solicitudIdCancelada = solicitudId;
+                } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                    fallos.put(WebhookRoute.SOLICITUD_CANCELADA, descripcion(e));
+                    solicitudCancelWarnings.add(mensajeDe(e));
+                    log.warn("No se pudo cancelar la solicitud {}: {}", solicitudId, e.getMessage());
+                } catch (Exception e) {
+                    fallos.put(WebhookRoute.SOLICITUD_CANCELADA, descripcion(e));
+                    solicitudCancelWarnings.add("Error inesperado al cancelar: " + e.getMessage());
+                    log.error("Error cancelando solicitud {} desde webhook", solicitudId, e);
+                }
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.COTIZACION_ACEPTADA)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            Long solicitudId = extractLong(payloadSection, "solicitud_id");
+            Long prestadorId = extractLong(payloadSection, "prestador_id");
+            BigDecimal monto = extractBigDecimal(payloadSection, "monto");
+            if (solicitudId == null || prestadorId == null) {
+                cotizacionAceptadaWarnings.add("solicitud_id o prestador_id ausentes en evento de cotizacion.aceptada");
+                log.warn("Evento cotizacion.aceptada incompleto: {}", payloadSection);
+            } else {
+                try {
+                    var dto = com.example.demo.dto.SolicitudAsignarDTO.builder()
+                        .solicitudId(solicitudId)
+                        .prestadorId(prestadorId)
+                        .monto(monto)
+                        .build();
+                    var pago = cotizacionService.aceptarYAsignar(dto);
+                    cotizacionAceptada = true;
+                    cotizacionAceptadaDetails = Map.of(
+                        "solicitudId", pago.getSolicitudId(),
+                        "prestadorId", pago.getPrestadorId(),
+                        "pagoId", pago.getId(),
+                        "cotizacionId", pago.getCotizacionId()
+                    );
+                } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                    fallos.put(WebhookRoute.COTIZACION_ACEPTADA, descripcion(e));
+                    cotizacionAceptadaWarnings.add(mensajeDe(e));
+                    log.warn("Error validando cotizacion.aceptada {}: {}", solicitudId, e.getMessage());
+                } catch (Exception e) {
+                    fallos.put(WebhookRoute.COTIZACION_ACEPTADA, descripcion(e));
+                    cotizacionAceptadaWarnings.add("Error inesperado al aceptar cotización: " + e.getMessage());
+                    log.error("Error aceptando cotización {}-{} desde webhook", solicitudId, prestadorId, e);
+                }
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.COTIZACION_RECHAZADA)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            Long solicitudId = extractLong(payloadSection, "solicitud_id");
+            Long prestadorId = extractLong(payloadSection, "prestador_id");
+            Long cotizacionId = extractLong(payloadSection, "cotizacion_id");
+            String comentario = firstNonNull(
+                    extractString(payloadSection, "comentario"),
+                    extractString(payloadSection, "motivo")
+            );
+
+            if (solicitudId == null || prestadorId == null) {
+                cotizacionRechazadaWarnings.add("solicitud_id o prestador_id ausentes en evento de cotizacion.rechazada");
+                log.warn("Evento cotizacion.rechazada incompleto: {}", payloadSection);
+            } else {
+                try {
+                    solicitudService.registrarRechazoCotizacion(solicitudId, prestadorId, cotizacionId, comentario);
+                    cotizacionRechazada = true;
+                    Map<String, Object> rejectionDetails = new java.util.HashMap<>();
+                    rejectionDetails.put("solicitudId", solicitudId);
+                    rejectionDetails.put("prestadorId", prestadorId);
+                    if (cotizacionId != null) {
+                        rejectionDetails.put("cotizacionId", cotizacionId);
+                    }
+                    if (comentario != null && !comentario.isBlank()) {
+                        rejectionDetails.put("comentario", comentario);
+                    }
+                    cotizacionRechazadaDetails = rejectionDetails;
+                } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                    fallos.put(WebhookRoute.COTIZACION_RECHAZADA, descripcion(e));
+                    cotizacionRechazadaWarnings.add(mensajeDe(e));
+                    log.warn("Error validando cotizacion.rechazada {}-{}: {}", solicitudId, prestadorId, e.getMessage());
+                } catch (Exception e) {
+                    fallos.put(WebhookRoute.COTIZACION_RECHAZADA, descripcion(e));
+                    cotizacionRechazadaWarnings.add("Error inesperado al procesar rechazo de cotización: " + e.getMessage());
+                    log.error("Error procesando cotizacion.rechazada solicitud={} prestador={}", solicitudId, prestadorId, e);
+                }
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.PEDIDO_COTIZACION_ENVIADA)) {
+            try {
+                CotizacionWebhookDTO cotizacionDto = leerPayload(mensaje, CotizacionWebhookDTO.class);
+                if (cotizacionDto.getIdPedido() == null) {
+                    cotizacionRecibidaWarnings.add("id_pedido ausente en cotización");
+                    log.warn("Cotizacion enviada sin id_pedido: {}", mensaje.payloadSection());
+                } else if (cotizacionDto.getIdPrestador() == null) {
+                    cotizacionRecibidaWarnings.add("id_prestador ausente en cotización");
+                    log.warn("Cotizacion enviada sin id_prestador: {}", mensaje.payloadSection());
+                } else if (cotizacionDto.getTarifa() == null) {
+                    cotizacionRecibidaWarnings.add("tarifa ausente en cotización");
+                    log.warn("Cotizacion enviada sin tarifa: {}", mensaje.payloadSection());
+                } else {
+                    var submit = CotizacionesSubmit.builder()
+                        .solicitudId(cotizacionDto.getIdPedido())
+                        .prestadorId(cotizacionDto.getIdPrestador())
+                        .monto(BigDecimal.valueOf(cotizacionDto.getTarifa()))
+                        .build();
+                    cotizacionService.recibirCotizacion(submit);
+                    cotizacionRecibida = true;
+                    cotizacionRecibidaDetails = Map.of(
+                        "cotizacionIdExterna", cotizacionDto.getId(),
+                        "solicitudId", cotizacionDto.getIdPedido(),
+                        "prestadorId", cotizacionDto.getIdPrestador(),
+                        "monto", cotizacionDto.getTarifa()
+                    );
+                }
+            } catch (PayloadInvalidoException e) {
+                cotizacionRecibidaWarnings.add(e.getMessage());
+                log.warn("Payload de cotizacion enviada inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.PEDIDO_COTIZACION_ENVIADA, descripcion(e));
+                cotizacionRecibidaWarnings.add(mensajeDe(e));
+                log.warn("Cotización enviada rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.PEDIDO_COTIZACION_ENVIADA, descripcion(e));
+                cotizacionRecibidaWarnings.add("Error inesperado al procesar cotización: " + e.getMessage());
+                log.error("Error procesando cotizacion enviada desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.CALIFICACION)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            RecibirCalificacionesDTO calificacionDto = null;
+            try {
+                calificacionDto = buildCalificacionDTO(payloadSection);
+            } catch (IllegalArgumentException e) {
+                calificacionWarnings.add(e.getMessage());
+                log.warn("Payload de calificaciones inválido: {}", e.getMessage());
+            }
+
+            if (calificacionDto != null) {
+                Long prestadorId = calificacionDto.getId();
+                if (prestadorId == null) {
+                    calificacionWarnings.add("prestador_id ausente en evento de calificaciones");
+                    log.warn("Evento calificacion sin prestador_id: {}", payloadSection);
+                } else if (calificacionDto.getPuntuaciones() == null || calificacionDto.getPuntuaciones().isEmpty()) {
+                    calificacionWarnings.add("puntuaciones ausentes en evento de calificaciones");
+                    log.warn("Evento calificacion sin puntuaciones: {}", payloadSection);
+                } else {
+                    calificacionPrestadorId = prestadorId;
+                    calificacionPuntuaciones = new ArrayList<>(calificacionDto.getPuntuaciones());
+                    calificacionEventoId = extractLong(payloadSection, "calificacion_id");
+                    calificacionSolicitudId = extractLong(payloadSection, "solicitud_id");
+                    calificacionUsuarioId = extractLong(payloadSection, "usuario_id");
+                    calificacionComentario = firstNonNull(
+                            extractString(payloadSection, "comentario"),
+                            extractString(payloadSection, "comment")
+                    );
+
+                    try {
+                        calificacionService.appendBatchItem(calificacionDto);
+                        calificacionProcesada = true;
+                    } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                        fallos.put(WebhookRoute.CALIFICACION, descripcion(e));
+                        calificacionWarnings.add(mensajeDe(e));
+                        log.warn("Error validando calificaciones para prestador {}: {}", prestadorId, e.getMessage());
+                    } catch (Exception e) {
+                        fallos.put(WebhookRoute.CALIFICACION, descripcion(e));
+                        calificacionWarnings.add("Error inesperado al procesar calificaciones: " + e.getMessage());
+                        log.error("Error procesando calificaciones para prestador {}", prestadorId, e);
+                    }
+                }
+            }
+        }
+
+        // ==== Usuarios -> Prestadores (ABM por eventos de usuarios) ====
+        if (hayPayload && rutas.contains(WebhookRoute.USER_CREATED)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            try {
+                String role = firstNonNull(
+                        extractString(payloadSection, "role"),
+                        extractString(payloadSection, "rol")
+                );
+                if (role != null && role.equalsIgnoreCase("PRESTADOR")) {
+                    Long userId = firstNonNull(extractLong(payloadSection, "userId"), extractLong(payloadSection, "id"));
+                    if (userId == null) {
+                        log.warn("user_created sin userId/id: {}", payloadSection);
+                    } else {
+                        PrestadorDTO dto = buildPrestadorDTOFromUserEvent(mensaje.root(), payloadSection);
+                        dto.setId(userId);
+                        dto.setEstado("ACTIVO");
+                        prestadorSyncService.upsertDesdeDTO(dto);
+                        prestadorUpsert = true;
+                        prestadorIdProcesado = userId;
+                    }
+                } else {
+                    log.info("user_created ignorado por rol: {}", role);
+                }
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.USER_CREATED, descripcion(e));
+                log.error("Error procesando user_created -> prestador", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.USER_UPDATED)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            try {
+                String role = firstNonNull(
+                        extractString(payloadSection, "role"),
+                        extractString(payloadSection, "rol")
+                );
+                Long userId = firstNonNull(extractLong(payloadSection, "userId"), extractLong(payloadSection, "id"));
+                if (userId == null) {
+                    log.warn("user_updated sin userId/id: {}", payloadSection);
+                } else {
+                    var existenteOpt = prestadorSyncService.buscarPorUsuarioId(userId);
+                    boolean esPrestador = role != null && role.equalsIgnoreCase("PRESTADOR");
+                    if (!esPrestador && existenteOpt.isEmpty()) {
+                        log.info("user_updated ignorado: sin rol PRESTADOR ni prestador existente. userId={}", userId);
+                    } else {
+                        PrestadorDTO dto = buildPrestadorDTOFromUserEvent(mensaje.root(), payloadSection);
+                        dto.setId(userId);
+                        dto.setEstado(esPrestador ? "ACTIVO" : existenteOpt.map(Prestador::getEstado).orElse("ACTIVO"));
+                        prestadorSyncService.upsertDesdeDTO(dto);
+                        prestadorUpsert = true;
+                        prestadorIdProcesado = userId;
+                    }
+                }
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.USER_UPDATED, descripcion(e));
+                log.error("Error procesando user_updated -> prestador", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.USER_DEACTIVATED)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            try {
+                Long userId = firstNonNull(extractLong(payloadSection, "userId"), extractLong(payloadSection, "id"));
+                if (userId == null) {
+                    log.warn("user_deactivated sin id/userId: {}", payloadSection);
+                } else {
+                    prestadorSyncService.desactivarPorUsuarioId(userId);
+                    prestadorDesactivado = true;
+                    prestadorIdProcesado = userId;
+                }
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.USER_DEACTIVATED, descripcion(e));
+                log.error("Error procesando user_deactivated -> prestador", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.USER_REJECTED)) {
+            Map<String, Object> payloadSection = mensaje.payloadSection();
+            try {
+                Long userId = firstNonNull(extractLong(payloadSection, "userId"), extractLong(payloadSection, "id"));
+                if (userId == null) {
+                    log.warn("user_rejected sin id/userId: {}", payloadSection);
+                } else {
+                    prestadorSyncService.rechazarPorUsuarioId(userId);
+                    prestadorDesactivado = true;
+                    prestadorIdProcesado = userId;
+                }
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.USER_REJECTED, descripcion(e));
+                log.error("Error procesando user_rejected -> prestador", e);
+            }
+        }
+
+        // ==== Resto de handlers existentes ====
+        if (hayPayload && rutas.contains(WebhookRoute.HABILIDAD_ALTA)) {
+            try {
+                HabilidadAltaWebhookDTO habilidadAlta = leerPayload(mensaje, HabilidadAltaWebhookDTO.class);
+                if (habilidadAlta.getId() == null) {
+                    habilidadWarnings.add("payload.id ausente en alta de habilidad");
+                    log.warn("Alta de habilidad sin id: {}", mensaje.payloadSection());
+                } else if (habilidadAlta.getIdRubro() == null) {
+                    habilidadWarnings.add("payload.id_rubro ausente en alta de habilidad");
+                    log.warn("Alta de habilidad {} sin id_rubro", habilidadAlta.getId());
+                } else {
+                    habilidadSyncService.upsertDesdeDTO(habilidadAlta);
+                    habilidadProcesada = true;
+                    habilidadIdProcesada = habilidadAlta.getId();
+                }
+            } catch (PayloadInvalidoException e) {
+                habilidadWarnings.add(e.getMessage());
+                log.warn("Payload de alta de habilidad inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.HABILIDAD_ALTA, descripcion(e));
+                habilidadWarnings.add(mensajeDe(e));
+                log.warn("Alta de habilidad rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.HABILIDAD_ALTA, descripcion(e));
+                habilidadWarnings.add("Error procesando alta de habilidad: " + e.getMessage());
+                log.error("Error procesando alta de habilidad desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.HABILIDAD_MODIFICACION)) {
+            try {
+                HabilidadAltaWebhookDTO habilidadMod = leerPayload(mensaje, HabilidadAltaWebhookDTO.class);
+                if (habilidadMod.getId() == null) {
+                    habilidadModWarnings.add("payload.id ausente en modificacion de habilidad");
+                    log.warn("Modificación de habilidad sin id: {}", mensaje.payloadSection());
+                } else if (habilidadMod.getIdRubro() == null) {
+                    habilidadModWarnings.add("payload.id_rubro ausente en modificacion de habilidad");
+                    log.warn("Modificación de habilidad {} sin id_rubro", habilidadMod.getId());
+                } else {
+                    habilidadSyncService.actualizarDesdeDTO(habilidadMod);
+                    habilidadModificada = true;
+                    habilidadIdModificada = habilidadMod.getId();
+                }
+            } catch (PayloadInvalidoException e) {
+                habilidadModWarnings.add(e.getMessage());
+                log.warn("Payload de modificacion de habilidad inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.HABILIDAD_MODIFICACION, descripcion(e));
+                habilidadModWarnings.add(mensajeDe(e));
+                log.warn("Modificación de habilidad rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.HABILIDAD_MODIFICACION, descripcion(e));
+                habilidadModWarnings.add("Error procesando modificacion de habilidad: " + e.getMessage());
+                log.error("Error procesando modificacion de habilidad desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.RUBRO_ALTA)) {
+            try {
+                RubroAltaWebhookDTO rubroAlta = leerPayload(mensaje, RubroAltaWebhookDTO.class);
+                rubroSyncService.upsertDesdeDTO(rubroAlta);
+                rubroProcesado = true;
+                rubroIdProcesado = rubroAlta.getId();
+            } catch (PayloadInvalidoException e) {
+                rubroWarnings.add(e.getMessage());
+                log.warn("Payload de alta de rubro inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.RUBRO_ALTA, descripcion(e));
+                rubroWarnings.add(mensajeDe(e));
+                log.warn("Alta de rubro rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.RUBRO_ALTA, descripcion(e));
+                rubroWarnings.add("Error procesando alta de rubro: " + e.getMessage());
+                log.error("Error procesando alta de rubro desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.RUBRO_MODIFICACION)) {
+            try {
+                RubroModificacionWebhookDTO rubroModificacion = leerPayload(mensaje, RubroModificacionWebhookDTO.class);
+                rubroSyncService.actualizarDesdeDTO(rubroModificacion);
+                rubroModificado = true;
+                rubroIdModificado = rubroModificacion.getId();
+            } catch (PayloadInvalidoException e) {
+                rubroModificacionWarnings.add(e.getMessage());
+                log.warn("Payload de modificación de rubro inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.RUBRO_MODIFICACION, descripcion(e));
+                rubroModificacionWarnings.add(mensajeDe(e));
+                log.warn("Modificación de rubro rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.RUBRO_MODIFICACION, descripcion(e));
+                rubroModificacionWarnings.add("Error procesando modificación de rubro: " + e.getMessage());
+                log.error("Error procesando modificación de rubro desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.ZONA_ALTA)) {
+            try {
+                ZonaAltaWebhookDTO zonaAlta = leerPayload(mensaje, ZonaAltaWebhookDTO.class);
+                zonaSyncService.upsertDesdeDTO(zonaAlta);
+                zonaProcesada = true;
+                zonaIdProcesada = zonaAlta.getId();
+            } catch (PayloadInvalidoException e) {
+                zonaWarnings.add(e.getMessage());
+                log.warn("Payload de alta de zona inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.ZONA_ALTA, descripcion(e));
+                zonaWarnings.add(mensajeDe(e));
+                log.warn("Alta de zona rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.ZONA_ALTA, descripcion(e));
+                zonaWarnings.add("Error procesando alta de zona: " + e.getMessage());
+                log.error("Error procesando alta de zona desde webhook", e);
+            }
+        }
+
+        if (hayPayload && rutas.contains(WebhookRoute.ZONA_MODIFICACION)) {
+            try {
+                ZonaModificacionWebhookDTO zonaModificacion = leerPayload(mensaje, ZonaModificacionWebhookDTO.class);
+                zonaSyncService.actualizarDesdeDTO(zonaModificacion);
+                zonaModificada = true;
+                zonaIdModificada = zonaModificacion.getId();
+            } catch (PayloadInvalidoException e) {
+                zonaModificacionWarnings.add(e.getMessage());
+                log.warn("Payload de modificación de zona inválido: {}", e.getMessage());
+            } catch (IllegalArgumentException | IllegalStateException | ResponseStatusException e) {
+                fallos.put(WebhookRoute.ZONA_MODIFICACION, descripcion(e));
+                zonaModificacionWarnings.add(mensajeDe(e));
+                log.warn("Modificación de zona rechazada, se reintentará: {}", e.getMessage());
+            } catch (Exception e) {
+                fallos.put(WebhookRoute.ZONA_MODIFICACION, descripcion(e));
+                zonaModificacionWarnings.add("Error procesando modificación de zona: " + e.getMessage());
+                log.error("Error procesando modificación de zona desde webhook", e);
+            }
+        }
+
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("solicitudCreada", solicitudCreada);
+        if (solicitudIdCreada != null) {
+            resultado.put("solicitudId", solicitudIdCreada);
+        }
+        if (!solicitudCreadaWarnings.isEmpty()) {
+            resultado.put("solicitudCreadaWarnings", solicitudCreadaWarnings);
+        }
+        resultado.put("prestadorUpsert", prestadorUpsert);
+        resultado.put("prestadorDesactivado", prestadorDesactivado);
+        if (prestadorIdProcesado != null) {
+            resultado.put("prestadorId", prestadorIdProcesado);
+        }
+        resultado.put("solicitudCancelada", solicitudCancelada);
+        if (solicitudIdCancelada != null) {
+            resultado.put("solicitudIdCancelada", solicitudIdCancelada);
+        }
+        if (!solicitudCancelWarnings.isEmpty()) {
+            resultado.put("solicitudCancelWarnings", solicitudCancelWarnings);
+        }
+        resultado.put("cotizacionAceptada", cotizacionAceptada);
+        if (cotizacionAceptadaDetails != null) {
+            resultado.put("cotizacionAceptadaDetails", cotizacionAceptadaDetails);
+        }
+        if (!cotizacionAceptadaWarnings.isEmpty()) {
+            resultado.put("cotizacionAceptadaWarnings", cotizacionAceptadaWarnings);
+        }
+        resultado.put("cotizacionRecibida", cotizacionRecibida);
+        if (cotizacionRecibidaDetails != null) {
+            resultado.put("cotizacionRecibidaDetails", cotizacionRecibidaDetails);
+        }
+        if (!cotizacionRecibidaWarnings.isEmpty()) {
+            resultado.put("cotizacionRecibidaWarnings", cotizacionRecibidaWarnings);
+        }
+        resultado.put("cotizacionRechazada", cotizacionRechazada);
+        if (cotizacionRechazadaDetails != null) {
+            resultado.put("cotizacionRechazadaDetails", cotizacionRechazadaDetails);
+        }
+        if (!cotizacionRechazadaWarnings.isEmpty()) {
+            resultado.put("cotizacionRechazadaWarnings", cotizacionRechazadaWarnings);
+        }
+        resultado.put("calificacionProcesada", calificacionProcesada);
+        if (calificacionPrestadorId != null) {
+            resultado.put("calificacionPrestadorId", calificacionPrestadorId);
+        }
+        if (calificacionEventoId != null) {
+            resultado.put("calificacionId", calificacionEventoId);
+        }
+        if (calificacionSolicitudId != null) {
+            resultado.put("calificacionSolicitudId", calificacionSolicitudId);
+        }
+        if (calificacionUsuarioId != null) {
+            resultado.put("calificacionUsuarioId", calificacionUsuarioId);
+        }
+        if (calificacionPuntuaciones != null) {
+            resultado.put("calificacionPuntuaciones", calificacionPuntuaciones);
+        }
+        if (calificacionComentario != null && !calificacionComentario.isBlank()) {
+            resultado.put("calificacionComentario", calificacionComentario);
+        }
+        if (!calificacionWarnings.isEmpty()) {
+            resultado.put("calificacionWarnings", calificacionWarnings);
+        }
+        resultado.put("habilidadProcesada", habilidadProcesada);
+        if (habilidadIdProcesada != null) {
+            resultado.put("habilidadId", habilidadIdProcesada);
+        }
+        if (!habilidadWarnings.isEmpty()) {
+            resultado.put("habilidadWarnings", habilidadWarnings);
+        }
+        resultado.put("habilidadModificada", habilidadModificada);
+        if (habilidadIdModificada != null) {
+            resultado.put("habilidadIdModificada", habilidadIdModificada);
+        }
+        if (!habilidadModWarnings.isEmpty()) {
+            resultado.put("habilidadModWarnings", habilidadModWarnings);
+        }
+        resultado.put("rubroProcesado", rubroProcesado);
+        if (rubroIdProcesado != null) {
+            resultado.put("rubroId", rubroIdProcesado);
+        }
+        if (!rubroWarnings.isEmpty()) {
+            resultado.put("rubroWarnings", rubroWarnings);
+        }
+        resultado.put("rubroModificado", rubroModificado);
+        if (rubroIdModificado != null) {
+            resultado.put("rubroIdModificado", rubroIdModificado);
+        }
+        if (!rubroModificacionWarnings.isEmpty()) {
+            resultado.put("rubroModificacionWarnings", rubroModificacionWarnings);
+        }
+        resultado.put("zonaProcesada", zonaProcesada);
+        if (zonaIdProcesada != null) {
+            resultado.put("zonaId", zonaIdProcesada);
+        }
+        if (!zonaWarnings.isEmpty()) {
+            resultado.put("zonaWarnings", zonaWarnings);
+        }
+        resultado.put("zonaModificada", zonaModificada);
+        if (zonaIdModificada != null) {
+            resultado.put("zonaIdModificada", zonaIdModificada);
+        }
+        if (!zonaModificacionWarnings.isEmpty()) {
+            resultado.put("zonaModificacionWarnings", zonaModificacionWarnings);
+        }
+        if (!fallos.isEmpty()) {
+            resultado.put(HANDLERS_FALLIDOS, fallos);
+        }
+        return resultado;
+    }
+
+    /**
+     * Vuelve a correr un solo handler sobre el mensaje (reintento desde webhook_dead_letter).
+     * El handler volvió a fallar si {@link #fallos} del resultado lo incluye.
+     */
+    public Map<String, Object> reintentar(WebhookMensaje mensaje, WebhookRoute ruta) {
+        return despachar(mensaje, EnumSet.of(ruta));
+    }
+
+    /** Handlers que fallaron según el resultado de {@link #despachar}, con su error. */
+    @SuppressWarnings("unchecked")
+    public static Map<WebhookRoute, String> fallos(Map<String, Object> resultado) {
+        Object fallos = resultado != null ? resultado.get(HANDLERS_FALLIDOS) : null;
+        return fallos instanceof Map<?, ?> m ? (Map<WebhookRoute, String>) m : Map.of();
+    }
+
+    private static String mensajeDe(Exception e) {
+        if (e instanceof ResponseStatusException rse) {
+            return rse.getReason() != null ? rse.getReason() : rse.getStatusCode().toString();
+        }
+        return e.getMessage();
+    }
+
+    private static String descripcion(Exception e) {
+        return e.getClass().getName() + ": " + e.getMessage();
+    }
+
+    /**
+     * Lo recibido tal como se guarda en webhook_event antes de procesar: el JSON original
+     * ("parsed", copiado sin re-serializar) y los headers.
+     */
+    public String payloadRecibido(WebhookMensaje mensaje, Map<String, String> headers) throws IOException {
+        return escribirAlmacenado(mensaje, headers, null, Map.of());
+    }
+
+    /**
+     * Payload que se persiste en webhook_event una vez procesado: lo recibido, el resultado
+     * del ACK y el de los handlers.
+     */
+    public String payloadAlmacenado(WebhookMensaje mensaje,
+                                    Map<String, String> headers,
+                                    AckOutcome ackOutcome,
+                                    Map<String, Object> resultado) throws IOException {
+        return escribirAlmacenado(mensaje, headers, ackOutcome, resultado);
+    }
+
+    private String escribirAlmacenado(WebhookMensaje mensaje,
+                                      Map<String, String> headers,
+                                      AckOutcome ackOutcome,
+                                      Map<String, Object> resultado) throws IOException {
+        StringWriter out = new StringWriter(mensaje.body().length + 512);
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            mensaje.escribirRecibido(gen);
+            gen.writeObjectField("headers", headers);
+            if (ackOutcome != null) {
+                gen.writeObjectField("ack", ackOutcome.metadata());
+            }
+            for (Map.Entry<String, Object> entry : resultado.entrySet()) {
+                gen.writeObjectField(entry.getKey(), entry.getValue());
+            }
+            gen.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    // Un payload que no mapea al DTO es un error permanente: no se reintenta
+    private <T> T leerPayload(WebhookMensaje mensaje, Class<T> tipo) {
+        try {
+            return mensaje.payloadComo(lectores.computeIfAbsent(tipo, objectMapper::readerFor));
+        } catch (IOException e) {
+            throw new PayloadInvalidoException(e.getMessage(), e);
+        }
+    }
+
+    /** El payload no mapea al DTO del handler. */
+    private static final class PayloadInvalidoException extends RuntimeException {
+        PayloadInvalidoException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private PrestadorDTO buildPrestadorDTOFromUserEvent(Map<String, Object> root, Map<String, Object> payloadSection) {
+        String firstName = extractString(payloadSection, "firstName");
+        String lastName = extractString(payloadSection, "lastName");
+        String email = extractString(payloadSection, "email");
+        String phone = firstNonNull(
+                extractString(payloadSection, "phoneNumber"),
+                extractString(payloadSection, "telefono")
+        );
+
+        String direccion = composeDireccion(payloadSection);
+
+        Long zonaId = extractFirstIdFromMixedList(root, "zones");
+
+        java.util.List<Habilidad> habilidades = extractHabilidadesFlexible(root);
+
+        return PrestadorDTO.builder()
+                .nombre(firstName != null ? firstName : "")
+                .apellido(lastName != null ? lastName : "")
+                .email(email != null ? email : "")
+                .telefono(phone != null ? phone : "")
+                .direccion(direccion != null ? direccion : "")
+                .precioHora(0.0)
+                .zonaId(zonaId)
+                .zonaIds(extractLongListFlexible(root, "zones"))
+                .habilidades(habilidades)
+                .direcciones(extractDireccionesDTO(payloadSection))
+                .build();
+    }
+
+    private java.util.List<Long> extractLongListFlexible(Map<String, Object> payload, String key) {
+        if (payload == null) return java.util.List.of();
+        Object raw = payload.get(key);
+        if (!(raw instanceof java.util.List<?> list)) {
+            return java.util.List.of();
+        }
+        java.util.List<Long> out = new java.util.ArrayList<>();
+        for (Object item : list) {
+            if (item == null) continue;
+            if (item instanceof Number n) {
+                out.add(n.longValue());
+            } else {
+                if (item instanceof java.util.Map<?, ?> m) {
+                    Object idVal = m.get("id");
+                    if (idVal instanceof Number nn) {
+                        out.add(nn.longValue());
+                    } else if (idVal != null) {
+                        try { out.add(Long.valueOf(idVal.toString().trim())); } catch (Exception ignore) {}
+                    }
+                } else {
+                    try {
+                        String s = item.toString();
+                        if (s != null && !s.isBlank()) {
+                            out.add(Long.valueOf(s.trim()));
+                        }
+                    } catch (NumberFormatException ignore) {
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    private Long extractFirstIdFromMixedList(Map<String, Object> payload, String key) {
+        if (payload == null) return null;
+        Object raw = payload.get(key);
+        if (!(raw instanceof java.util.List<?> list) || list.isEmpty()) return null;
+        Object first = list.get(0);
+        if (first == null) return null;
+        if (first instanceof Number n) return n.longValue();
+        if (first instanceof java.util.Map<?, ?> m) {
+            Object idVal = m.get("id");
+            if (idVal instanceof Number nn) return nn.longValue();
+            if (idVal != null) {
+                try { return Long.valueOf(idVal.toString().trim()); } catch (Exception ignore) {}
+            }
+        }
+        try { return Long.valueOf(first.toString().trim()); } catch (Exception ignore) { return null; }
+    }
+
+    private java.util.List<Habilidad> extractHabilidadesFlexible(Map<String, Object> payload) {
+        Object raw = payload != null ? payload.get("skills") : null;
+        if (!(raw instanceof java.util.List<?> list) || list.isEmpty()) return java.util.List.of();
+        java.util.List<Habilidad> out = new java.util.ArrayList<>();
+        for (Object item : list) {
+            if (item == null) continue;
+            if (item instanceof Number n) {
+                Habilidad h = new Habilidad();
+                h.setId(n.longValue());
+                out.add(h);
+            } else if (item instanceof java.util.Map<?, ?> m) {
+                Habilidad h = new Habilidad();
+                Object idVal = m.get("id");
+                if (idVal instanceof Number nn) { h.setId(nn.longValue()); }
+                else if (idVal != null) {
+                    try { h.setId(Long.valueOf(idVal.toString().trim())); } catch (Exception ignore) {}
+                }
+                Object nameVal = m.get("name");
+                if (nameVal != null) h.setNombre(nameVal.toString());
+                // rubroId puede venir como rubroId, idRubro, rubro.id
+                Long rubroId = null;
+                Object rid = m.get("rubroId");
+                if (rIdIsPresent(rid)) rubroId = asLong(rid);
+                if (rubroId == null) {
+                    Object rid2 = m.get("idRubro");
+                    if (rIdIsPresent(rid2)) rubroId = asLong(rid2);
+                }
+                if (rubroId == null) {
+                    Object rubroObj = m.get("rubro");
+                    if (rubroObj instanceof java.util.Map<?, ?> rmap) {
+                        Object inner = rmap.get("id");
+                        if (rIdIsPresent(inner)) rubroId = asLong(inner);
+                    }
+                }
+                if (rubroId != null) {
+                    Rubro r = new Rubro();
+                    r.setId(rubroId); // usamos campo id como externalId (PrestadorSyncService lo interpreta)
+                    h.setRubro(r);
+                }
+                out.add(h);
+            } else {
+                try {
+                    Long id = Long.valueOf(item.toString().trim());
+                    Habilidad h = new Habilidad();
+                    h.setId(id);
+                    out.add(h);
+                } catch (Exception ignore) {}
+            }
+        }
+        return out;
+    }
+
+    private boolean rIdIsPresent(Object o) { return o != null && !o.toString().isBlank(); }
+    private Long asLong(Object o) { return (o instanceof Number n) ? n.longValue() : Long.valueOf(o.toString().trim()); }
+
+    private String composeDireccion(Map<String, Object> payloadSection) {
+        if (payloadSection == null) return null;
+        Object addrRaw = payloadSection.get("address");
+        if (!(addrRaw instanceof java.util.List<?> list) || list.isEmpty()) {
+            return null;
+        }
+        Object first = list.get(0);
+        if (!(first instanceof java.util.Map<?, ?> map)) {
+            return null;
+        }
+        String street = strOrNull(map.get("street"));
+        String number = strOrNull(map.get("number"));
+        String floor = strOrNull(map.get("floor"));
+        String apartment = strOrNull(map.get("apartment"));
+        String city = strOrNull(map.get("city"));
+        String state = strOrNull(map.get("state"));
+
+        java.util.List<String> parts = new java.util.ArrayList<>();
+        if (street != null || number != null) {
+            parts.add(((street != null ? street : "") + (number != null ? " " + number : "")).trim());
+        }
+        if (floor != null || apartment != null) {
+            parts.add(((floor != null ? "Piso " + floor : "") + (apartment != null ? " Dto " + apartment : "")).trim());
+        }
+        if (city != null) parts.add(city);
+        if (state != null) parts.add(state);
+        return parts.isEmpty() ? null : String.join(", ", parts);
+    }
+
+    private java.util.List<PrestadorDireccionDTO> extractDireccionesDTO(Map<String, Object> payloadSection) {
+        Object addrRaw = payloadSection != null ? payloadSection.get("address") : null;
+        if (!(addrRaw instanceof java.util.List<?> list) || list.isEmpty()) {
+            return java.util.List.of();
+        }
+        java.util.List<PrestadorDireccionDTO> out = new java.util.ArrayList<>();
+        for (Object item : list) {
+            if (!(item instanceof java.util.Map<?, ?> map)) continue;
+            PrestadorDireccionDTO d = PrestadorDireccionDTO.builder()
+                    .state(strOrNull(map.get("state")))
+                    .city(strOrNull(map.get("city")))
+                    .street(strOrNull(map.get("street")))
+                    .number(strOrNull(map.get("number")))
+                    .floor(strOrNull(map.get("floor")))
+                    .apartment(strOrNull(map.get("apartment")))
+                    .build();
+            out.add(d);
+        }
+        return out;
+    }
+
+    private String strOrNull(Object o) {
+        if (o == null) return null;
+        String s = o.toString();
+        return s.isBlank() ? null : s;
+    }
+
+    public AckOutcome attemptAckIfPossible(WebhookMensaje.Sobre sobre, Map<String, String> headers) {
+        String messageId = sobre.messageId();
+        String subscriptionId = sobre.subscriptionId();
+
+        if (messageId == null && headers != null) {
+            messageId = extractHeader(headers, "x-message-id", "x_msg_id", "message-id");
+        }
+        if (subscriptionId == null && headers != null) {
+            subscriptionId = extractHeader(headers, "x-subscription-id", "subscription-id");
+        }
+
+        if (messageId == null || subscriptionId == null) {
+            return AckOutcome.notPerformed();
+        }
+
+        if (ackDispatcher.isEnabled() && !messageId.isBlank() && !subscriptionId.isBlank()) {
+            return ackDispatcher.encolar(messageId, subscriptionId);
+        }
+
+        var result = subscriptionService.acknowledgeMessage(messageId, subscriptionId);
+        return result.isSuccess()
+                ? AckOutcome.success(result.status().value())
+                : AckOutcome.failure(result.status() != null ? result.status().value() : 500, result.errorBody());
+    }
+
+    private String extractString(Map<String, Object> payload, String key) {
+        if (payload == null) return null;
+        Object value = payload.get(key);
+        if (value == null) return null;
+        if (value instanceof String str) {
+            return str.isBlank() ? null : str;
+        }
+        return value.toString();
+    }
+
+    private Long extractLong(Map<String, Object> payload, String key) {
+        if (payload == null) return null;
+        Object value = payload.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Number n) {
+            return n.longValue();
+        }
+        try {
+            String text = value.toString();
+            if (text == null || text.isBlank()) {
+                return null;
+            }
+            return Long.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private BigDecimal extractBigDecimal(Map<String, Object> payload, String key) {
+        if (payload == null) return null;
+        Object value = payload.get(key);
+        if (value == null) return null;
+        if (value instanceof Number n) {
+            return BigDecimal.valueOf(n.doubleValue());
+        }
+        try {
+            String text = value.toString();
+            if (text == null || text.isBlank()) {
+                return null;
+            }
+            return new BigDecimal(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private RecibirCalificacionesDTO buildCalificacionDTO(Map<String, Object> payload) {
+        if (payload == null) {
+            throw new IllegalArgumentException("Payload de calificaciones vacío");
+        }
+        RecibirCalificacionesDTO dto = new RecibirCalificacionesDTO();
+        Long prestadorId = firstNonNull(
+                firstNonNull(extractLong(payload, "prestador_id"), extractLong(payload, "prestadorId")),
+                extractLong(payload, "id")
+        );
+        dto.setId(prestadorId);
+
+        List<Short> puntuaciones = extractShortList(payload, "puntuaciones", "calificaciones", "scores", "ratings");
+        if (puntuaciones == null || puntuaciones.isEmpty()) {
+            Short single = extractShort(payload, "puntuacion", "rating", "score");
+            if (single != null) {
+                puntuaciones = List.of(single);
+            }
+        }
+        dto.setPuntuaciones(puntuaciones);
+        return dto;
+    }
+
+    private List<Short> extractShortList(Map<String, Object> payload, String... keys) {
+        if (payload == null || keys == null) {
+            return null;
+        }
+        for (String key : keys) {
+            if (key == null) continue;
+            Object raw = payload.get(key);
+            if (raw == null) continue;
+            List<Short> parsed = convertToShortList(raw);
+            if (parsed != null) {
+                return parsed;
+            }
+        }
+        return null;
+    }
+
+    private Short extractShort(Map<String, Object> payload, String... keys) {
+        if (payload == null || keys == null) {
+            return null;
+        }
+        for (String key : keys) {
+            if (key == null) continue;
+            Object raw = payload.get(key);
+            if (raw == null) continue;
+            return convertToShort(raw);
+        }
+        return null;
+    }
+
+    private List<Short> convertToShortList(Object raw) {
+        if (raw == null) {
+            return null;
+        }
+        List<Short> result = new ArrayList<>();
+        if (raw instanceof List<?> list) {
+            for (Object element : list) {
+                result.add(convertToShort(element));
+            }
+            return result;
+        }
+        if (raw.getClass().isArray()) {
+            int length = Array.getLength(raw);
+            for (int i = 0; i < length; i++) {
+                result.add(convertToShort(Array.get(raw, i)));
+            }
+            return result;
+        }
+        if (raw instanceof CharSequence seq) {
+            String text = seq.toString().trim();
+            if (text.isEmpty()) {
+                return List.of();
+            }
+            String[] parts = text.split(",");
+            for (String part : parts) {
+                if (part != null && !part.isBlank()) {
+                    result.add(convertToShort(part.trim()));
+                }
+            }
+            return result;
+        }
+        if (raw instanceof Number) {
+            return List.of(convertToShort(raw));
+        }
+        return null;
+    }
+
+    private Short convertToShort(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Puntuación nula no permitida");
+        }
+        if (value instanceof Short s) {
+            return s;
+        }
+        if (value instanceof Number n) {
+            return (short) n.intValue();
+        }
+        if (value instanceof CharSequence seq) {
+            String text = seq.toString().trim();
+            if (text.isEmpty()) {
+                throw new IllegalArgumentException("Puntuación vacía no permitida");
+            }
+            try {
+                return Short.valueOf(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valor de puntuación inválido: " + text, e);
+            }
+        }
+        throw new IllegalArgumentException("Tipo de puntuación no soportado: " + value.getClass());
+    }
+
+    private String extractHeader(Map<String, String> headers, String... candidateNames) {
+        if (headers == null || headers.isEmpty()) return null;
+        for (String candidate : candidateNames) {
+            if (candidate == null) continue;
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                String headerName = entry.getKey();
+                if (headerName != null && headerName.equalsIgnoreCase(candidate)) {
+                    String value = entry.getValue();
+                    if (value != null && !value.isBlank()) {
+                        return value.trim();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private String firstNonNull(String a, String b) {
+        return a != null ? a : b;
+    }
+
+    private Long firstNonNull(Long a, Long b) {
+        return a != null ? a : b;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.demo.webhook;
+
+import com.example.demo.service.WebhookEventService;
+import com.example.demo.service.WebhookEventService.EventoLote;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Escritura diferida de webhooks en modo asíncrono ({@code webhooks.write-behind.enabled}):
+ * receive() deja el evento en un buffer acotado y responde; un hilo lo guarda como PENDING
+ * junto con los demás cada {@code intervalo-ms} o al juntar {@code tanda} eventos, en una
+ * transacción con batch JDBC (ver {@link WebhookEventService#guardarPendientes}), y despierta a
+ * {@link WebhookEventWorker}.
+ *
+ * <p>No pasan por el buffer, y se guardan en el momento como siempre: los eventos de
+ * {@code topics-sincronicos} (cuando quien llama necesita el id guardado o la garantía de que
+ * quedó en la base antes del 202), los que llegan con el buffer lleno y, en modo sincrónico,
+ * todos. Si un lote choca con el índice único de mensajes (reentrega que no estaba en
+ * {@link WebhookDedupe}) se guarda de a uno y se descartan los repetidos. Los mensajes se
+ * registran en {@link WebhookDedupe} recién cuando quedaron en la base; si no se pudieron
+ * guardar se olvidan, así la reentrega del hub vuelve a entrar. Al apagar se guarda lo que
+ * quedó en el buffer.
+ */
+@Component
+@Slf4j
+public class WebhookEscrituraDiferida {
+
+    private final WebhookEventService webhookEventService;
+    private final WebhookEventWorker eventWorker;
+    private final WebhookDedupe webhookDedupe;
+    private final boolean enabled;
+    private final int tanda;
+    private final long intervaloMs;
+    private final Set<String> topicsSincronicos;
+    private final BlockingQueue<EventoLote> buffer;
+    private final Thread escritor;
+    private final Counter desbordes;
+    private volatile boolean corriendo = true;
+
+    public WebhookEscrituraDiferida(
+            WebhookEventService webhookEventService,
+            WebhookEventWorker eventWorker,
+            WebhookDedupe webhookDedupe,
+            MeterRegistry meterRegistry,
+            @Value("${webhooks.write-behind.enabled:false}") boolean enabled,
+            @Value("${webhooks.write-behind.capacidad:5000}") int capacidad,
+            @Value("${webhooks.write-behind.tanda:200}") int tanda,
+            @Value("${webhooks.write-behind.intervalo-ms:20}") long intervaloMs,
+            @Value("${webhooks.write-behind.topics-sincronicos:}") String topicsSincronicos) {
+        this.webhookEventService = webhookEventService;
+        this.eventWorker = eventWorker;
+        this.webhookDedupe = webhookDedupe;
+        this.enabled = enabled;
+        this.tanda = Math.max(tanda, 1);
+        this.intervaloMs = Math.max(intervaloMs, 1);
+        this.topicsSincronicos = Arrays.stream(topicsSincronicos.split(","))
+                .map(String::trim)
+                .filter(t -> !t.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        this.buffer = new ArrayBlockingQueue<>(Math.max(capacidad, 1));
+        this.desbordes = Counter.builder("webhooks.write-behind.desbordes")
+                .description("Webhooks guardados en el momento porque el buffer estaba lleno")
+                .register(meterRegistry);
+        Gauge.builder("webhooks.write-behind.buffer", buffer, BlockingQueue::size)
+                .description("Webhooks recibidos esperando ser guardados")
+                .register(meterRegistry);
+        this.escritor = new Thread(this::escribir, "webhook-write-behind");
+        this.escritor.setDaemon(true);
+        if (enabled) {
+            this.escritor.start();
+        }
+    }
+
+    /**
+     * Encola el evento para guardarlo en el próximo lote. Devuelve false si tiene que guardarse
+     * en el momento (escritura diferida apagada, topic sincrónico o buffer lleno).
+     */
+    public boolean encolar(EventoLote evento) {
+        if (!enabled || !corriendo || (evento.topic() != null && topicsSincronicos.contains(evento.topic()))) {
+            return false;
+        }
+        if (!buffer.offer(evento)) {
+            desbordes.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void escribir() {
+        List<EventoLote> lote = new ArrayList<>(tanda);
+        while (corriendo || !buffer.isEmpty()) {
+            try {
+                EventoLote primero = buffer.poll(intervaloMs, TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                lote.add(primero);
+                // Se junta hasta la tanda o hasta que vence el intervalo desde el primero
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(intervaloMs);
+                long resto;
+                while (lote.size() < tanda && (resto = limite - System.nanoTime()) > 0) {
+                    EventoLote siguiente = buffer.poll(resto, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) {
+                        break;
+                    }
+                    lote.add(siguiente);
+                    buffer.drainTo(lote, tanda - lote.size());
+                }
+                guardar(lote);
+            } catch (InterruptedException e) {
+                // Apagado: se sigue hasta vaciar el buffer
+                Thread.interrupted();
+                corriendo = false;
+                buffer.drainTo(lote);
+                guardar(lote);
+            } catch (Exception e) {
+                log.error("Error en la escritura diferida de webhooks", e);
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private void guardar(List<EventoLote> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        try {
+            webhookEventService.guardarPendientes(lote);
+            for (EventoLote evento : lote) {
+                webhookDedupe.registrar(evento.messageId(), evento.subscriptionId());
+            }
+        } catch (Exception e) {
+            if (e instanceof DataIntegrityViolationException) {
+                log.info("Lote diferido de {} webhooks con reentregas; se guarda de a uno", lote.size());
+            } else {
+                log.warn("No se pudo guardar el lote diferido de {} webhooks; se guarda de a uno: {}",
+                        lote.size(), e.getMessage());
+            }
+            for (EventoLote evento : lote) {
+                guardarUno(evento);
+            }
+        }
+        eventWorker.despertar();
+    }
+
+    private void guardarUno(EventoLote evento) {
+        try {
+            boolean guardado = webhookEventService.storePending(evento.topic(), evento.eventName(),
+                    evento.messageId(), evento.subscriptionId(), evento.rawPayload()).isPresent();
+            if (guardado) {
+                webhookDedupe.registrar(evento.messageId(), evento.subscriptionId());
+            } else {
+                webhookDedupe.duplicadoEnBase(evento.messageId(), evento.subscriptionId());
+            }
+        } catch (Exception ex) {
+            // Se perdió: que la reentrega del hub no la corte la caché
+            webhookDedupe.olvidar(evento.messageId(), evento.subscriptionId());
+            log.error("No se pudo guardar el webhook messageId={}", evento.messageId(), ex);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        corriendo = false;
+        if (escritor.isAlive()) {
+            escritor.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.service.WebhookDeadLetterService;
+import com.example.demo.service.WebhookEventService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Procesa los webhooks guardados como PENDING (modo {@code webhooks.async.enabled}): un
+ * poller toma lotes con SELECT ... FOR UPDATE SKIP LOCKED, los marca PROCESSING y los reparte
+ * en {@link EjecutorPorClave} según el agregado que tocan, así los eventos de una misma
+ * solicitud o prestador corren en orden de llegada y el resto en paralelo. Cada tarea hace el
+ * ACK, corre los handlers y deja el evento en PROCESSED o FAILED. Se toman a lo sumo
+ * {@code webhooks.async.max-en-curso} eventos a la vez, así lo pendiente espera en la base y
+ * no en memoria.
+ *
+ * <p>El orden por agregado vale dentro de una instancia: con varias instancias cada una toma
+ * lotes distintos.
+ *
+ * <p>En modo sincrónico solo retoma los eventos que quedaron en PROCESSING más de
+ * {@code webhooks.async.processing-timeout-seconds} (ver {@link #liberarVencidos()}).
+ */
+@Component
+@Slf4j
+public class WebhookEventWorker {
+
+    private final WebhookEventService webhookEventService;
+    private final WebhookDeadLetterService deadLetterService;
+    private final WebhookDispatcher dispatcher;
+    private final EjecutorPorClave ejecutor;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int maxEnCurso;
+    private final long processingTimeoutSeconds;
+    private final ThreadPoolExecutor buscador;
+    private final AtomicInteger enCurso = new AtomicInteger();
+    private final AtomicBoolean buscando = new AtomicBoolean();
+
+    public WebhookEventWorker(
+            WebhookEventService webhookEventService,
+            WebhookDeadLetterService deadLetterService,
+            WebhookDispatcher dispatcher,
+            EjecutorPorClave ejecutor,
+            ObjectMapper objectMapper,
+            @Value("${webhooks.async.enabled:false}") boolean enabled,
+            @Value("${webhooks.async.max-en-curso:64}") int maxEnCurso,
+            @Value("${webhooks.async.processing-timeout-seconds:300}") long processingTimeoutSeconds) {
+        this.webhookEventService = webhookEventService;
+        this.deadLetterService = deadLetterService;
+        this.dispatcher = dispatcher;
+        this.ejecutor = ejecutor;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxEnCurso = Math.max(maxEnCurso, 1);
+        this.processingTimeoutSeconds = Math.max(processingTimeoutSeconds, 1);
+        // Un solo hilo de búsqueda; los pedidos que llegan mientras hay uno en cola se descartan
+        this.buscador = new ThreadPoolExecutor(
+                1, 1,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1),
+                r -> {
+                    Thread t = new Thread(r, "webhook-poller");
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Pide una búsqueda inmediata (p. ej. recién guardado un evento) sin esperar al poller.
+     */
+    public void despertar() {
+        if (enabled) {
+            buscador.execute(this::buscarPendientes);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${webhooks.async.poll-interval-ms:1000}")
+    public void poll() {
+        if (enabled) {
+            buscarPendientes();
+        }
+    }
+
+    /**
+     * Corre también en modo sincrónico: receive() guarda el evento en PROCESSING antes de los
+     * handlers, y si la instancia se cae a mitad quedaría así para siempre (la reentrega del
+     * hub la corta el índice único). Los vencidos vuelven a PENDING y se procesan acá.
+     */
+    @Scheduled(fixedDelayString = "${webhooks.async.reclaim-interval-ms:60000}")
+    public void liberarVencidos() {
+        int liberados = webhookEventService.liberarVencidos(LocalDateTime.now().minusSeconds(processingTimeoutSeconds));
+        if (liberados > 0) {
+            log.warn("{} webhooks estaban en PROCESSING hace más de {} s; vuelven a PENDING", liberados, processingTimeoutSeconds);
+            buscador.execute(this::buscarPendientes);
+        }
+    }
+
+    private void buscarPendientes() {
+        if (!buscando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int libres;
+            while ((libres = maxEnCurso - enCurso.get()) > 0) {
+                List<Long> ids = webhookEventService.tomarPendientes(libres);
+                if (ids.isEmpty()) {
+                    return;
+                }
+                // Se reparten en orden de id: dentro de cada partición se respeta el orden de llegada
+                List<WebhookEvent> eventos = new ArrayList<>(webhookEventService.findAllById(ids));
+                eventos.sort(Comparator.comparing(WebhookEvent::getId));
+                for (WebhookEvent evento : eventos) {
+                    Long id = evento.getId();
+                    Recibido recibido;
+                    try {
+                        recibido = leer(evento);
+                    } catch (Exception e) {
+                        log.error("Error leyendo webhook {}", id, e);
+                        webhookEventService.marcarFallido(id, e.getClass().getName() + ": " + e.getMessage());
+                        continue;
+                    }
+                    enCurso.incrementAndGet();
+                    ejecutor.ejecutar(recibido.clave(), () -> {
+                        procesar(id, recibido);
+                        return null;
+                    }).whenComplete((r, e) -> {
+                        enCurso.decrementAndGet();
+                        despertar();
+                    });
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error buscando webhooks pendientes", e);
+        } finally {
+            buscando.set(false);
+        }
+    }
+
+    private record Recibido(WebhookMensaje mensaje, Map<String, String> headers, String clave) {}
+
+    @SuppressWarnings("unchecked")
+    private Recibido leer(WebhookEvent evento) throws IOException {
+        JsonNode stored = objectMapper.readTree(evento.getRawPayload());
+        Map<String, String> headers = stored.path("headers").isObject()
+                ? objectMapper.convertValue(stored.get("headers"), Map.class) : Map.of();
+        WebhookMensaje mensaje = WebhookMensaje.desdeAlmacenado(stored, objectMapper);
+        return new Recibido(mensaje, headers, dispatcher.claveAgregado(mensaje));
+    }
+
+    private void procesar(Long id, Recibido recibido) {
+        long inicio = System.nanoTime();
+        try {
+            WebhookMensaje mensaje = recibido.mensaje();
+            AckOutcome ackOutcome = dispatcher.attemptAckIfPossible(mensaje.sobre(), recibido.headers());
+            Map<String, Object> resultado = dispatcher.despachar(mensaje);
+            webhookEventService.marcarProcesado(id,
+                    dispatcher.payloadAlmacenado(mensaje, recibido.headers(), ackOutcome, resultado));
+            deadLetterService.registrarFallos(id, WebhookDispatcher.fallos(resultado));
+            log.info("Webhook {} procesado en {} ms (clave {})", id, (System.nanoTime() - inicio) / 1_000_000, recibido.clave());
+        } catch (Exception e) {
+            log.error("Error procesando webhook {}", id, e);
+            webhookEventService.marcarFallido(id, e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        buscador.shutdown();
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.enums.EstadoWebhookEvent;
+import com.example.demo.service.WebhookDeadLetterService;
+import com.example.demo.service.WebhookEventService;
+import com.example.demo.service.WebhookEventService.CierreLote;
+import com.example.demo.service.WebhookEventService.EventoLote;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ingesta de lotes de mensajes del hub (array JSON, p. ej. el backfill tras una caída):
+ * los eventos se guardan con un solo INSERT, se deduplican contra la caché, el propio lote y
+ * el índice único, se despachan juntos ({@link WebhookDispatcher#despacharLote}) y se cierran
+ * con un solo UPDATE. Devuelve un resultado por mensaje, en el orden del lote.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class WebhookLote {
+
+    private final WebhookDispatcher dispatcher;
+    private final WebhookEventService webhookEventService;
+    private final WebhookDeadLetterService deadLetterService;
+    private final WebhookDedupe webhookDedupe;
+    private final WebhookEventWorker eventWorker;
+    private final ObjectMapper objectMapper;
+
+    @Value("${webhooks.async.enabled:false}")
+    private boolean asyncEnabled;
+
+    /** Lanza IOException si el cuerpo no es un array JSON. */
+    public List<Map<String, Object>> procesar(byte[] body, Map<String, String> headers) throws IOException {
+        List<byte[]> elementos = WebhookMensaje.separarLote(body, objectMapper);
+        List<Map<String, Object>> respuesta = new ArrayList<>(elementos.size());
+
+        // Mensajes a guardar: índice en el lote -> mensaje
+        List<Integer> indices = new ArrayList<>();
+        List<WebhookMensaje> mensajes = new ArrayList<>();
+        List<EventoLote> eventos = new ArrayList<>();
+        Set<String> vistosEnLote = new HashSet<>();
+        for (int i = 0; i < elementos.size(); i++) {
+            Map<String, Object> resultado = new HashMap<>();
+            resultado.put("index", i);
+            respuesta.add(resultado);
+
+            WebhookMensaje mensaje;
+            try {
+                mensaje = WebhookMensaje.leer(elementos.get(i), objectMapper);
+            } catch (IOException e) {
+                resultado.put("error", e.getMessage());
+                continue;
+            }
+            if (!mensaje.esJson()) {
+                resultado.put("error", "El mensaje no es un objeto JSON");
+                continue;
+            }
+            WebhookMensaje.Sobre sobre = mensaje.sobre();
+            resultado.put("messageId", sobre.messageId());
+            resultado.put("topic", sobre.topic());
+            resultado.put("eventName", sobre.eventName());
+
+            // Reentregas ya vistas o repetidas dentro del mismo lote
+            if (webhookDedupe.yaVisto(sobre.messageId(), sobre.subscriptionId())
+                    || (sobre.messageId() != null && !vistosEnLote.add(sobre.messageId() + '\u0000' + sobre.subscriptionId()))) {
+                duplicado(resultado, sobre);
+                continue;
+            }
+            indices.add(i);
+            mensajes.add(mensaje);
+            eventos.add(new EventoLote(sobre.topic(), sobre.eventName(), sobre.messageId(), sobre.subscriptionId(),
+                    dispatcher.payloadRecibido(mensaje, headers)));
+        }
+
+        EstadoWebhookEvent estado = asyncEnabled ? EstadoWebhookEvent.PENDING : EstadoWebhookEvent.PROCESSING;
+        List<Long> ids = webhookEventService.storeLote(eventos, estado);
+
+        List<Integer> aceptados = new ArrayList<>();
+        for (int j = 0; j < ids.size(); j++) {
+            WebhookMensaje.Sobre sobre = mensajes.get(j).sobre();
+            Map<String, Object> resultado = respuesta.get(indices.get(j));
+            if (ids.get(j) == null) {
+                webhookDedupe.duplicadoEnBase(sobre.messageId(), sobre.subscriptionId());
+                duplicado(resultado, sobre);
+                continue;
+            }
+            webhookDedupe.registrar(sobre.messageId(), sobre.subscriptionId());
+            resultado.put("storedEventId", ids.get(j));
+            resultado.put("status", estado.name());
+            aceptados.add(j);
+        }
+
+        if (asyncEnabled) {
+            // Modo asíncrono: el ACK y los handlers los corre WebhookEventWorker
+            if (!aceptados.isEmpty()) {
+                eventWorker.despertar();
+            }
+            return respuesta;
+        }
+
+        List<WebhookMensaje> aDespachar = new ArrayList<>(aceptados.size());
+        List<AckOutcome> acks = new ArrayList<>(aceptados.size());
+        for (int j : aceptados) {
+            aDespachar.add(mensajes.get(j));
+            acks.add(ack(mensajes.get(j).sobre()));
+        }
+        Map<Integer, Exception> errores = new HashMap<>();
+        List<Map<String, Object>> resultados = dispatcher.despacharLote(aDespachar, errores);
+
+        List<CierreLote> cierres = new ArrayList<>(aceptados.size());
+        for (int k = 0; k < aceptados.size(); k++) {
+            int j = aceptados.get(k);
+            Map<String, Object> resultado = respuesta.get(indices.get(j));
+            AckOutcome ackOutcome = acks.get(k);
+            if (ackOutcome.performed()) {
+                resultado.put("ackStatus", ackOutcome.statusCode());
+                resultado.put("ackSuccess", ackOutcome.success());
+            } else if (ackOutcome.queued()) {
+                resultado.put("ackQueued", true);
+            }
+            Exception error = errores.get(k);
+            if (error != null) {
+                String detalle = error.getClass().getName() + ": " + error.getMessage();
+                resultado.put("status", EstadoWebhookEvent.FAILED.name());
+                resultado.put("error", error.getMessage());
+                cierres.add(new CierreLote(ids.get(j), eventos.get(j).rawPayload(), detalle));
+                continue;
+            }
+            resultado.putAll(resultados.get(k));
+            resultado.put("status", EstadoWebhookEvent.PROCESSED.name());
+            cierres.add(new CierreLote(ids.get(j),
+                    dispatcher.payloadAlmacenado(mensajes.get(j), headers, ackOutcome, resultados.get(k)), null));
+        }
+        webhookEventService.cerrarLote(cierres);
+        for (int k = 0; k < aceptados.size(); k++) {
+            if (resultados.get(k) != null) {
+                deadLetterService.registrarFallos(ids.get(aceptados.get(k)), WebhookDispatcher.fallos(resultados.get(k)));
+            }
+        }
+        log.info("Lote de webhooks procesado: {} mensajes, {} guardados, {} con error",
+                elementos.size(), aceptados.size(), errores.size());
+        return respuesta;
+    }
+
+    // Reentrega: no se procesa, pero se repite el ACK como en el endpoint de a un mensaje
+    private void duplicado(Map<String, Object> resultado, WebhookMensaje.Sobre sobre) {
+        resultado.put("duplicate", true);
+        AckOutcome ackOutcome = ack(sobre);
+        if (ackOutcome.performed()) {
+            resultado.put("ackStatus", ackOutcome.statusCode());
+            resultado.put("ackSuccess", ackOutcome.success());
+        } else if (ackOutcome.queued()) {
+            resultado.put("ackQueued", true);
+        }
+    }
+
+    // En un lote los headers son de la request, no de cada mensaje: el ACK usa solo los ids del sobre
+    private AckOutcome ack(WebhookMensaje.Sobre sobre) {
+        try {
+            return dispatcher.attemptAckIfPossible(sobre, Map.of());
+        } catch (Exception e) {
+            log.warn("No se pudo hacer ACK del mensaje {}: {}", sobre.messageId(), e.getMessage());
+            return AckOutcome.failure(500, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.demo.webhook;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mensaje recibido por el webhook, leído en una sola pasada con el parser de streaming de
+ * Jackson: del nivel raíz se toman solo los campos del sobre (topic, eventName, msgId, ...)
+ * y la sección payload/cuerpo se guarda como tokens, así cada handler la bindea directo a su
+ * DTO sin pasar por un Map. Los bytes originales se conservan para persistir el evento.
+ *
+ * <p>El Map completo del mensaje ({@link #root()}) y el de la sección payload
+ * ({@link #payloadSection()}) se arman recién cuando alguien los pide. No es thread-safe:
+ * cada mensaje lo usa un solo hilo.
+ */
+public final class WebhookMensaje {
+
+    /** Datos del sobre del mensaje usados para rutear, guardar y hacer ACK. */
+    public record Sobre(String topic, String eventName, String messageId, String subscriptionId) {}
+
+    private final ObjectMapper objectMapper;
+    private final byte[] body;
+    // Largo del objeto JSON raíz dentro de body; 0 si el cuerpo no es JSON
+    private final int largoJson;
+    private final Sobre sobre;
+    private final TokenBuffer payload;
+
+    private Map<String, Object> root;
+    private Map<String, Object> payloadSection;
+
+    private WebhookMensaje(ObjectMapper objectMapper, byte[] body, int largoJson, Sobre sobre, TokenBuffer payload) {
+        this.objectMapper = objectMapper;
+        this.body = body;
+        this.largoJson = largoJson;
+        this.sobre = sobre;
+        this.payload = payload;
+    }
+
+    /**
+     * Lee el cuerpo tal como llegó. Si no luce como JSON (sin depender del Content-Type) el
+     * mensaje queda vacío; si luce como JSON pero no es un objeto válido, falla como antes.
+     */
+    public static WebhookMensaje leer(byte[] body, ObjectMapper objectMapper) throws IOException {
+        byte[] bytes = body != null ? body : new byte[0];
+        if (!pareceJson(bytes)) {
+            return new WebhookMensaje(objectMapper, bytes, 0, new Sobre(null, null, null, null), null);
+        }
+
+        String topic = null, topico = null, eventName = null, evento = null;
+        String msgId = null, messageId = null, subscriptionId = null;
+        String destinoTopic = null, destinoChannel = null, destinoEvento = null;
+        TokenBuffer payload = null, cuerpo = null;
+
+        try (JsonParser p = objectMapper.createParser(bytes)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw JsonMappingException.from(p, "El cuerpo del webhook no es un objeto JSON");
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String campo = p.currentName();
+                JsonToken valor = p.nextToken();
+                switch (campo) {
+                    case "topic" -> topic = texto(p, objectMapper);
+                    case "topico" -> topico = texto(p, objectMapper);
+                    case "eventName" -> eventName = texto(p, objectMapper);
+                    case "evento" -> evento = texto(p, objectMapper);
+                    case "msgId" -> msgId = texto(p, objectMapper);
+                    case "messageId" -> messageId = texto(p, objectMapper);
+                    case "subscriptionId" -> subscriptionId = texto(p, objectMapper);
+                    case "payload" -> payload = valor == JsonToken.START_OBJECT ? copiar(p) : saltear(p);
+                    case "cuerpo" -> cuerpo = valor == JsonToken.START_OBJECT ? copiar(p) : saltear(p);
+                    case "destination" -> {
+                        destinoTopic = destinoChannel = destinoEvento = null;
+                        if (valor != JsonToken.START_OBJECT) {
+                            p.skipChildren();
+                            break;
+                        }
+                        while (p.nextToken() == JsonToken.FIELD_NAME) {
+                            String anidado = p.currentName();
+                            p.nextToken();
+                            switch (anidado) {
+                                case "topic" -> destinoTopic = texto(p, objectMapper);
+                                case "channel" -> destinoChannel = texto(p, objectMapper);
+                                case "eventName" -> destinoEvento = texto(p, objectMapper);
+                                default -> p.skipChildren();
+                            }
+                        }
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+            int largoJson = (int) p.currentLocation().getByteOffset();
+
+            Sobre sobre = new Sobre(
+                    primero(topic, topico, destinoTopic, destinoChannel),
+                    primero(eventName, evento, destinoEvento),
+                    primero(msgId, messageId),
+                    subscriptionId
+            );
+            return new WebhookMensaje(objectMapper, bytes, largoJson, sobre, payload != null ? payload : cuerpo);
+        }
+    }
+
+    /**
+     * Vuelve a leer el mensaje original a partir de lo guardado en webhook_event
+     * ({@code rawPayload}): "rawBody" si el cuerpo no era JSON (o en eventos viejos); si no,
+     * el "parsed" guardado.
+     */
+    public static WebhookMensaje desdeAlmacenado(JsonNode stored, ObjectMapper objectMapper) throws IOException {
+        byte[] body = stored.path("rawBody").isTextual()
+                ? stored.get("rawBody").asText().getBytes(StandardCharsets.UTF_8)
+                : objectMapper.writeValueAsBytes(stored.path("parsed").isObject() ? stored.get("parsed") : Map.of());
+        return leer(body, objectMapper);
+    }
+
+    /**
+     * Separa un lote (array JSON de mensajes del hub) en los bytes de cada elemento, sin
+     * parsearlos: cada uno se lee después con {@link #leer}, así un elemento inválido no
+     * invalida al resto.
+     */
+    public static List<byte[]> separarLote(byte[] body, ObjectMapper objectMapper) throws IOException {
+        try (JsonParser p = objectMapper.createParser(body != null ? body : new byte[0])) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw JsonMappingException.from(p, "El lote de webhooks debe ser un array JSON");
+            }
+            List<byte[]> elementos = new ArrayList<>();
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                int inicio = (int) p.currentTokenLocation().getByteOffset();
+                // skipChildren saltea objetos y arrays; una cadena se lee recién con finishToken
+                p.skipChildren();
+                p.finishToken();
+                int fin = (int) p.currentLocation().getByteOffset();
+                elementos.add(Arrays.copyOfRange(body, inicio, fin));
+            }
+            return elementos;
+        }
+    }
+
+    public Sobre sobre() {
+        return sobre;
+    }
+
+    /** {@code true} si el cuerpo era un objeto JSON. */
+    public boolean esJson() {
+        return largoJson > 0;
+    }
+
+    /** {@code true} si vino una sección payload (o cuerpo) con forma de objeto. */
+    public boolean tienePayload() {
+        return payload != null;
+    }
+
+    /** Bindea la sección payload al tipo del lector (cacheado por quien llama). */
+    public <T> T payloadComo(ObjectReader lector) throws IOException {
+        try (JsonParser p = payload.asParser()) {
+            return lector.readValue(p);
+        }
+    }
+
+    /** Sección payload como Map, para los handlers que leen campos sueltos. */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> payloadSection() {
+        if (payloadSection == null && payload != null) {
+            try (JsonParser p = payload.asParser()) {
+                payloadSection = objectMapper.readValue(p, Map.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return payloadSection;
+    }
+
+    /** Mensaje completo como Map (vacío si el cuerpo no era JSON). */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> root() {
+        if (root == null) {
+            if (largoJson == 0) {
+                root = Map.of();
+            } else {
+                try {
+                    Map<String, Object> parsed = objectMapper.readValue(body, 0, largoJson, Map.class);
+                    root = parsed != null ? parsed : Map.of();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return root;
+    }
+
+    public byte[] body() {
+        return body;
+    }
+
+    /** Cuerpo como texto; solo para diagnóstico (log y eventos de error). */
+    public String rawBody() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escribe lo recibido tal como se guarda en webhook_event: "parsed" con el JSON original
+     * copiado sin re-serializar y, si el cuerpo no era JSON, el texto en "rawBody".
+     */
+    public void escribirRecibido(JsonGenerator gen) throws IOException {
+        gen.writeFieldName("parsed");
+        if (largoJson > 0) {
+            gen.writeRawValue(new String(body, 0, largoJson, StandardCharsets.UTF_8));
+        } else {
+            gen.writeStartObject();
+            gen.writeEndObject();
+            if (body.length > 0) {
+                gen.writeStringField("rawBody", rawBody());
+            }
+        }
+    }
+
+    // Misma conversión que extractString sobre el Map: texto en blanco = null, el resto toString()
+    private static String texto(JsonParser p, ObjectMapper objectMapper) throws IOException {
+        return switch (p.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING -> p.getText().isBlank() ? null : p.getText();
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> p.getNumberValue().toString();
+            case VALUE_TRUE, VALUE_FALSE -> String.valueOf(p.getBooleanValue());
+            default -> String.valueOf(objectMapper.readValue(p, Object.class));
+        };
+    }
+
+    private static TokenBuffer copiar(JsonParser p) throws IOException {
+        TokenBuffer buffer = new TokenBuffer(p);
+        buffer.copyCurrentStructure(p);
+        return buffer;
+    }
+
+    // Un valor repetido que no es objeto pisa al anterior, como en el Map
+    private static TokenBuffer saltear(JsonParser p) throws IOException {
+        p.skipChildren();
+        return null;
+    }
+
+    private static String primero(String... valores) {
+        for (String valor : valores) {
+            if (valor != null) {
+                return valor;
+            }
+        }
+        return null;
+    }
+
+    // Mismo criterio que el controller: empieza con '{' o '[' (ignorando espacios) y termina con '}' o ']'
+    private static boolean pareceJson(byte[] bytes) {
+        int inicio = 0;
+        while (inicio < bytes.length && bytes[inicio] >= 0 && Character.isWhitespace(bytes[inicio])) {
+            inicio++;
+        }
+        if (inicio >= bytes.length) {
+            return false;
+        }
+        byte primero = bytes[inicio];
+        byte ultimo = bytes[bytes.length - 1];
+        return (primero == '{' && ultimo == '}') || (primero == '[' && ultimo == ']');
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.repository.WebhookEventRepositoryCustom;
+import com.example.demo.service.WebhookDeadLetterService;
+import com.example.demo.service.WebhookEventService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replay de webhooks guardados: recorre webhook_event por id (rango de ids y/o de fechas,
+ * topic y eventName opcionales) de a páginas y vuelve a pasar cada evento por
+ * {@link WebhookDispatcher#despachar}, como receive(), pero sin volver a hacer el ACK. Los
+ * eventos van por {@link EjecutorPorClave} con la clave del agregado, así los de una misma
+ * solicitud o prestador se reprocesan en orden de id (y no se cruzan con eventos nuevos) y el
+ * resto en paralelo. Los handlers que fallen quedan como dead letters.
+ *
+ * <p>Solo se corren las rutas {@link WebhookRoute#reproducible() reproducibles}: las que
+ * duplicarían efectos (calificaciones, aceptación y envío de cotizaciones) se omiten y se
+ * cuentan en {@code omitidos} por ruta.
+ *
+ * <p>Solo corre un replay a la vez, con a lo sumo {@code webhooks.replay.max-en-curso}
+ * eventos en curso y a {@code porSegundo} eventos por segundo como máximo. En dry-run solo
+ * lee y cuenta lo que se reprocesaría. El progreso se ve en {@code GET /api/webhook/replay}.
+ */
+@Component
+@Slf4j
+public class WebhookReplay {
+
+    public enum EstadoReplay { EN_CURSO, TERMINADO, CANCELADO, ERROR }
+
+    /** Pedido de replay; los null no filtran. {@code hasta} es exclusivo, {@code hastaId} no. */
+    public record Pedido(Long desdeId, Long hastaId, LocalDateTime desde, LocalDateTime hasta,
+                         String topic, String eventName, boolean dryRun, Integer porSegundo) {}
+
+    private final WebhookEventService webhookEventService;
+    private final WebhookDeadLetterService deadLetterService;
+    private final WebhookDispatcher dispatcher;
+    private final EjecutorPorClave ejecutor;
+    private final ObjectMapper objectMapper;
+    private final int maxEnCurso;
+    private final int tanda;
+    private final int porSegundoDefault;
+    private final AtomicLong corridas = new AtomicLong();
+    private final AtomicReference<Corrida> actual = new AtomicReference<>();
+
+    public WebhookReplay(
+            WebhookEventService webhookEventService,
+            WebhookDeadLetterService deadLetterService,
+            WebhookDispatcher dispatcher,
+            EjecutorPorClave ejecutor,
+            ObjectMapper objectMapper,
+            @Value("${webhooks.replay.max-en-curso:32}") int maxEnCurso,
+            @Value("${webhooks.replay.tanda:200}") int tanda,
+            @Value("${webhooks.replay.por-segundo:100}") int porSegundoDefault) {
+        this.webhookEventService = webhookEventService;
+        this.deadLetterService = deadLetterService;
+        this.dispatcher = dispatcher;
+        this.ejecutor = ejecutor;
+        this.objectMapper = objectMapper;
+        this.maxEnCurso = Math.max(maxEnCurso, 1);
+        this.tanda = Math.max(tanda, 1);
+        this.porSegundoDefault = Math.max(porSegundoDefault, 0);
+    }
+
+    private static final class Corrida {
+        final long id;
+        final Pedido pedido;
+        final int porSegundo;
+        final LocalDateTime inicio = LocalDateTime.now();
+        volatile LocalDateTime fin;
+        volatile EstadoReplay estado = EstadoReplay.EN_CURSO;
+        volatile boolean cancelar;
+        volatile String error;
+        volatile long ultimoId;
+        final LongAdder leidos = new LongAdder();
+        final LongAdder despachados = new LongAdder();
+        final LongAdder conFallos = new LongAdder();
+        final LongAdder errores = new LongAdder();
+        final Map<String, LongAdder> porTopic = new ConcurrentHashMap<>();
+        final Map<WebhookRoute, LongAdder> omitidos = new ConcurrentHashMap<>();
+
+        Corrida(long id, Pedido pedido, int porSegundo) {
+            this.id = id;
+            this.pedido = pedido;
+            this.porSegundo = porSegundo;
+        }
+    }
+
+    /**
+     * Arranca un replay en segundo plano y devuelve su estado inicial.
+     *
+     * @throws IllegalStateException si ya hay uno en curso
+     */
+    public Map<String, Object> iniciar(Pedido pedido) {
+        int porSegundo = pedido.porSegundo() != null ? Math.max(pedido.porSegundo(), 0) : porSegundoDefault;
+        Corrida corrida = new Corrida(corridas.incrementAndGet(), pedido, porSegundo);
+        Corrida anterior = actual.get();
+        if ((anterior != null && anterior.estado == EstadoReplay.EN_CURSO) || !actual.compareAndSet(anterior, corrida)) {
+            throw new IllegalStateException("Ya hay un replay en curso");
+        }
+        Thread hilo = new Thread(() -> correr(corrida), "webhook-replay-" + corrida.id);
+        hilo.setDaemon(true);
+        hilo.start();
+        log.info("Replay de webhooks {} iniciado: {} (porSegundo={})", corrida.id, pedido, porSegundo);
+        return estado();
+    }
+
+    /** Pide cortar el replay en curso; los eventos ya enviados terminan igual. */
+    public boolean cancelar() {
+        Corrida corrida = actual.get();
+        if (corrida == null || corrida.estado != EstadoReplay.EN_CURSO) {
+            return false;
+        }
+        corrida.cancelar = true;
+        return true;
+    }
+
+    /** Progreso del último replay (o vacío si no hubo ninguno). */
+    public Map<String, Object> estado() {
+        Corrida corrida = actual.get();
+        Map<String, Object> estado = new LinkedHashMap<>();
+        if (corrida == null) {
+            return estado;
+        }
+        LocalDateTime hasta = corrida.fin != null ? corrida.fin : LocalDateTime.now();
+        long millis = Math.max(Duration.between(corrida.inicio, hasta).toMillis(), 1);
+        Map<String, Long> porTopic = new TreeMap<>();
+        corrida.porTopic.forEach((topic, n) -> porTopic.put(topic, n.sum()));
+        Map<WebhookRoute, Long> omitidos = new TreeMap<>();
+        corrida.omitidos.forEach((ruta, n) -> omitidos.put(ruta, n.sum()));
+        estado.put("id", corrida.id);
+        estado.put("estado", corrida.estado);
+        estado.put("dryRun", corrida.pedido.dryRun());
+        estado.put("pedido", corrida.pedido);
+        estado.put("porSegundo", corrida.porSegundo);
+        estado.put("inicio", corrida.inicio);
+        estado.put("fin", corrida.fin);
+        estado.put("leidos", corrida.leidos.sum());
+        estado.put("despachados", corrida.despachados.sum());
+        estado.put("conFallos", corrida.conFallos.sum());
+        estado.put("errores", corrida.errores.sum());
+        estado.put("ultimoId", corrida.ultimoId);
+        estado.put("eventosPorSegundo", corrida.leidos.sum() * 1000.0 / millis);
+        estado.put("porTopic", porTopic);
+        estado.put("omitidos", omitidos);
+        estado.put("error", corrida.error);
+        return estado;
+    }
+
+    private void correr(Corrida corrida) {
+        Pedido pedido = corrida.pedido;
+        WebhookEventRepositoryCustom.Filtro filtro = new WebhookEventRepositoryCustom.Filtro(
+                pedido.topic(), pedido.eventName(), null, pedido.desde(), pedido.hasta());
+        Semaphore enCurso = new Semaphore(maxEnCurso);
+        long intervalo = corrida.porSegundo > 0 ? TimeUnit.SECONDS.toNanos(1) / corrida.porSegundo : 0;
+        long proximo = System.nanoTime();
+        long despuesDe = pedido.desdeId() != null ? pedido.desdeId() - 1 : 0;
+        try {
+            List<WebhookEvent> pagina;
+            while (!corrida.cancelar
+                    && !(pagina = webhookEventService.paraReplay(filtro, despuesDe, pedido.hastaId(), tanda)).isEmpty()) {
+                for (WebhookEvent evento : pagina) {
+                    if (corrida.cancelar) {
+                        break;
+                    }
+                    if (intervalo > 0) {
+                        long espera = proximo - System.nanoTime();
+                        if (espera > 0) {
+                            TimeUnit.NANOSECONDS.sleep(espera);
+                        }
+                        proximo = Math.max(proximo, System.nanoTime() - intervalo) + intervalo;
+                    }
+                    enviar(corrida, evento, enCurso);
+                    corrida.ultimoId = evento.getId();
+                }
+                despuesDe = pagina.get(pagina.size() - 1).getId();
+            }
+            // Se espera a que terminen los eventos ya enviados
+            enCurso.acquire(maxEnCurso);
+            corrida.estado = corrida.cancelar ? EstadoReplay.CANCELADO : EstadoReplay.TERMINADO;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            corrida.estado = EstadoReplay.CANCELADO;
+        } catch (Exception e) {
+            log.error("Error en el replay de webhooks {}", corrida.id, e);
+            corrida.error = e.getClass().getName() + ": " + e.getMessage();
+            corrida.estado = EstadoReplay.ERROR;
+        } finally {
+            corrida.fin = LocalDateTime.now();
+            log.info("Replay de webhooks {} {}: {} leídos, {} despachados, {} con handlers fallidos, {} errores",
+                    corrida.id, corrida.estado, corrida.leidos.sum(), corrida.despachados.sum(),
+                    corrida.conFallos.sum(), corrida.errores.sum());
+        }
+    }
+
+    private void enviar(Corrida corrida, WebhookEvent evento, Semaphore enCurso) throws InterruptedException {
+        Long id = evento.getId();
+        corrida.leidos.increment();
+        corrida.porTopic.computeIfAbsent(String.valueOf(evento.getTopic()), t -> new LongAdder()).increment();
+        WebhookMensaje mensaje;
+        try {
+            mensaje = WebhookMensaje.desdeAlmacenado(objectMapper.readTree(evento.getRawPayload()), objectMapper);
+        } catch (Exception e) {
+            corrida.errores.increment();
+            log.warn("Replay {}: no se pudo leer el webhook {}: {}", corrida.id, id, e.getMessage());
+            return;
+        }
+        Set<WebhookRoute> rutas = EnumSet.noneOf(WebhookRoute.class);
+        for (WebhookRoute ruta : dispatcher.rutas(mensaje)) {
+            if (ruta.reproducible()) {
+                rutas.add(ruta);
+            } else {
+                corrida.omitidos.computeIfAbsent(ruta, r -> new LongAdder()).increment();
+            }
+        }
+        if (corrida.pedido.dryRun() || rutas.isEmpty()) {
+            return;
+        }
+        enCurso.acquire();
+        ejecutor.ejecutar(dispatcher.claveAgregado(mensaje), () -> {
+            Map<WebhookRoute, String> fallos = WebhookDispatcher.fallos(dispatcher.despachar(mensaje, rutas));
+            corrida.despachados.increment();
+            if (!fallos.isEmpty()) {
+                corrida.conFallos.increment();
+                deadLetterService.registrarFallos(id, fallos);
+            }
+            return null;
+        }).whenComplete((r, e) -> {
+            enCurso.release();
+            if (e != null) {
+                corrida.errores.increment();
+                log.error("Replay {}: error despachando el webhook {}", corrida.id, id, e);
+            }
+        });
+    }
+}
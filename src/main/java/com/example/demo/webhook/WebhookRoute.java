@@ -0,0 +1,54 @@
+package com.example.demo.webhook;
+
+/**
+ * Handlers del webhook de matching. {@link WebhookRoutingTable} resuelve qué rutas
+ * aplican a un par (topic, eventName). La familia agrupa las rutas para el control de
+ * admisión ({@link WebhookAdmision}).
+ *
+ * <p>{@link #reproducible()} indica si la ruta se puede volver a correr sobre un evento ya
+ * procesado ({@link WebhookReplay}) sin duplicar efectos:
+ * <ul>
+ *   <li>Sí: el alta de solicitud (se busca por ID externo), la cancelación y el rechazo (no
+ *   hacen nada si ya estaban aplicados), los eventos de usuario y de catálogo (upsert con el
+ *   estado del payload; un rango que no llega hasta el último evento deja el estado de ese
+ *   momento).</li>
+ *   <li>No: la calificación (suma las puntuaciones al prestador; no hay registro por
+ *   calificacion_id para deduplicarla), la aceptación de cotización (emite una nueva
+ *   solicitud de pago cada vez) y la cotización enviada (con la ronda completa vuelve a
+ *   mandar las cotizaciones al Core).</li>
+ * </ul>
+ */
+public enum WebhookRoute {
+    SOLICITUD_CREADA("solicitud", true),
+    SOLICITUD_CANCELADA("solicitud", true),
+    COTIZACION_ACEPTADA("solicitud", false),
+    COTIZACION_RECHAZADA("solicitud", true),
+    PEDIDO_COTIZACION_ENVIADA("solicitud", false),
+    CALIFICACION("prestador", false),
+    USER_CREATED("prestador", true),
+    USER_UPDATED("prestador", true),
+    USER_DEACTIVATED("prestador", true),
+    USER_REJECTED("prestador", true),
+    HABILIDAD_ALTA("catalogo", true),
+    HABILIDAD_MODIFICACION("catalogo", true),
+    RUBRO_ALTA("catalogo", true),
+    RUBRO_MODIFICACION("catalogo", true),
+    ZONA_ALTA("catalogo", true),
+    ZONA_MODIFICACION("catalogo", true);
+
+    private final String familia;
+    private final boolean reproducible;
+
+    WebhookRoute(String familia, boolean reproducible) {
+        this.familia = familia;
+        this.reproducible = reproducible;
+    }
+
+    public String familia() {
+        return familia;
+    }
+
+    public boolean reproducible() {
+        return reproducible;
+    }
+}
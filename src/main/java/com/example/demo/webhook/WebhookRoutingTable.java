@@ -0,0 +1,236 @@
+package com.example.demo.webhook;
+
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tabla de ruteo del webhook: las reglas (topic, eventName) de cada handler se registran una
+ * vez como claves normalizadas, así que resolver un mensaje son unas pocas búsquedas en mapas
+ * en lugar de recorrer los candidatos de cada handler.
+ *
+ * <p>Reglas (mismas que aplicaba el controller):
+ * <ul>
+ *   <li>topic: igual a un candidato, o su dominio ({@link #normalizeTopicDomain}) igual a un
+ *       candidato sin puntos;</li>
+ *   <li>eventName: igual a un candidato o a {@code candidato_dominio}, {@code dominio.candidato},
+ *       {@code dominio_candidato}; o bien el evento normalizado ({@link #normalizeEventName}) o
+ *       alguna de sus partes separadas por '_' o '.' igual a un candidato.</li>
+ * </ul>
+ * Todas las comparaciones ignoran mayúsculas.
+ */
+@Component
+public class WebhookRoutingTable {
+
+    private final Set<WebhookRoute> cualquierTopico = EnumSet.noneOf(WebhookRoute.class);
+    private final Map<String, Set<WebhookRoute>> porTopico = new HashMap<>();
+    private final Map<String, Set<WebhookRoute>> porDominio = new HashMap<>();
+    private final Map<String, Set<WebhookRoute>> porEvento = new HashMap<>();
+    private final Map<String, Set<WebhookRoute>> porParteEvento = new HashMap<>();
+
+    public WebhookRoutingTable() {
+        ruta(WebhookRoute.SOLICITUD_CREADA)
+            .topicosExactos("search.solicitud.creada", "solicitud")
+            .eventosExactos("creada", "solicitud.creada");
+        ruta(WebhookRoute.SOLICITUD_CANCELADA)
+            .cualquierTopico()
+            .eventos("solicitud", "cancelada", "solicitud.cancelada");
+        ruta(WebhookRoute.COTIZACION_ACEPTADA)
+            .topicos("cotizacion", "cotizaciones")
+            .eventos("cotizacion", "aceptada", "cotizacion.aceptada");
+        ruta(WebhookRoute.COTIZACION_RECHAZADA)
+            .topicos("cotizacion", "cotizaciones")
+            .eventos("cotizacion", "rechazada", "cotizacion.rechazada");
+        ruta(WebhookRoute.PEDIDO_COTIZACION_ENVIADA)
+            .topicos("pedido", "pedidos", "catalogue.pedidos.cotizacion_enviada", "matching.pedidos.cotizacion_enviada")
+            .eventos("pedido", "cotizacion_enviada");
+        ruta(WebhookRoute.CALIFICACION)
+            .topicos("calificacion", "calificaciones")
+            .eventos("calificacion", "creada", "creado", "recibida", "recibidas", "actualizada", "actualizacion");
+        ruta(WebhookRoute.USER_CREATED)
+            .topicos("user", "users")
+            .eventos("user", "created", "user_created");
+        ruta(WebhookRoute.USER_UPDATED)
+            .topicos("user", "users")
+            .eventos("user", "updated", "user_updated");
+        ruta(WebhookRoute.USER_DEACTIVATED)
+            .topicos("user", "users")
+            .eventos("user", "deactivated", "user_deactivated");
+        ruta(WebhookRoute.USER_REJECTED)
+            .topicos("user", "users")
+            .eventos("user", "rejected", "user_rejected");
+        ruta(WebhookRoute.HABILIDAD_ALTA)
+            .topicos("habilidad", "catalogue.habilidad.alta", "matching.habilidad.alta")
+            .eventos("habilidad", "alta");
+        ruta(WebhookRoute.HABILIDAD_MODIFICACION)
+            .topicos("habilidad", "catalogue.habilidad.modificacion", "matching.habilidad.modificacion")
+            .eventos("habilidad", "modificacion", "alta_modificacion");
+        ruta(WebhookRoute.RUBRO_ALTA)
+            .topicos("rubro", "catalogue.rubro.alta", "matching.rubro.alta")
+            .eventos("rubro", "alta");
+        ruta(WebhookRoute.RUBRO_MODIFICACION)
+            .topicos("rubro", "catalogue.rubro.modificacion", "matching.rubro.modificacion")
+            .eventos("rubro", "modificacion");
+        ruta(WebhookRoute.ZONA_ALTA)
+            .topicos("zona", "catalogue.zona.alta", "matching.zona.alta")
+            .eventos("zona", "alta");
+        ruta(WebhookRoute.ZONA_MODIFICACION)
+            .topicos("zona", "catalogue.zona.modificacion", "matching.zona.modificacion")
+            .eventos("zona", "modificacion");
+    }
+
+    /**
+     * Rutas que aplican al mensaje. Puede haber más de una (p. ej. "alta_modificacion"
+     * dispara alta y modificación de habilidad, como antes).
+     */
+    public Set<WebhookRoute> resolver(String topic, String eventName) {
+        Set<WebhookRoute> rutas = EnumSet.noneOf(WebhookRoute.class);
+        rutas.addAll(cualquierTopico);
+        if (topic != null && !topic.isBlank()) {
+            agregar(rutas, porTopico, topic);
+            agregar(rutas, porDominio, normalizeTopicDomain(topic));
+        }
+        if (rutas.isEmpty() || eventName == null) {
+            return EnumSet.noneOf(WebhookRoute.class);
+        }
+
+        Set<WebhookRoute> porEventName = EnumSet.noneOf(WebhookRoute.class);
+        agregar(porEventName, porEvento, eventName);
+        agregar(porEventName, porParteEvento, normalizeEventName(eventName));
+        if (eventName.indexOf('_') >= 0) {
+            for (String parte : eventName.split("_")) {
+                agregar(porEventName, porParteEvento, parte);
+            }
+        }
+        if (eventName.indexOf('.') >= 0) {
+            for (String parte : eventName.split("\\.")) {
+                agregar(porEventName, porParteEvento, parte);
+            }
+        }
+        rutas.retainAll(porEventName);
+        return rutas;
+    }
+
+    /**
+     * Dominio del topic: el único segmento, el último si hay dos, o el anteúltimo si hay
+     * tres o más ("catalogue.rubro.alta" -> "rubro").
+     */
+    public static String normalizeTopicDomain(String topic) {
+        if (topic == null) {
+            return null;
+        }
+        String trimmed = topic.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        String[] parts = trimmed.split("\\.");
+        if (parts.length == 0) {
+            return null;
+        }
+        if (parts.length == 1) {
+            return parts[0];
+        }
+        if (parts.length >= 3) {
+            return parts[parts.length - 2];
+        }
+        return parts[parts.length - 1];
+    }
+
+    /**
+     * Nombre de evento sin prefijos de path/dominio ni sufijos tras el primer '_'
+     * ("matching/solicitud.cancelada" -> "cancelada", "created_user" -> "created").
+     */
+    public static String normalizeEventName(String eventName) {
+        if (eventName == null) {
+            return null;
+        }
+        String trimmed = eventName.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        int lastSlash = trimmed.lastIndexOf('/');
+        if (lastSlash >= 0 && lastSlash < trimmed.length() - 1) {
+            trimmed = trimmed.substring(lastSlash + 1);
+        }
+        int lastDot = trimmed.lastIndexOf('.');
+        if (lastDot >= 0 && lastDot < trimmed.length() - 1) {
+            trimmed = trimmed.substring(lastDot + 1);
+        }
+        int firstUnderscore = trimmed.indexOf('_');
+        if (firstUnderscore >= 0) {
+            trimmed = trimmed.substring(0, firstUnderscore);
+        }
+        return trimmed;
+    }
+
+    private static void agregar(Set<WebhookRoute> destino, Map<String, Set<WebhookRoute>> tabla, String clave) {
+        if (clave == null) {
+            return;
+        }
+        Set<WebhookRoute> rutas = tabla.get(clave.toLowerCase(Locale.ROOT));
+        if (rutas != null) {
+            destino.addAll(rutas);
+        }
+    }
+
+    private Regla ruta(WebhookRoute ruta) {
+        return new Regla(ruta);
+    }
+
+    private final class Regla {
+        private final WebhookRoute ruta;
+
+        private Regla(WebhookRoute ruta) {
+            this.ruta = ruta;
+        }
+
+        Regla cualquierTopico() {
+            cualquierTopico.add(ruta);
+            return this;
+        }
+
+        /** Candidatos con puntos: solo topic exacto; sin puntos: topic exacto o dominio. */
+        Regla topicos(String... candidatos) {
+            for (String c : candidatos) {
+                registrar(porTopico, c);
+                if (!c.contains(".")) {
+                    registrar(porDominio, c);
+                }
+            }
+            return this;
+        }
+
+        Regla topicosExactos(String... candidatos) {
+            for (String c : candidatos) {
+                registrar(porTopico, c);
+            }
+            return this;
+        }
+
+        Regla eventos(String dominio, String... candidatos) {
+            for (String c : candidatos) {
+                registrar(porEvento, c);
+                registrar(porEvento, c + "_" + dominio);
+                registrar(porEvento, dominio + "." + c);
+                registrar(porEvento, dominio + "_" + c);
+                registrar(porParteEvento, c);
+            }
+            return this;
+        }
+
+        Regla eventosExactos(String... candidatos) {
+            for (String c : candidatos) {
+                registrar(porEvento, c);
+            }
+            return this;
+        }
+
+        private void registrar(Map<String, Set<WebhookRoute>> tabla, String clave) {
+            tabla.computeIfAbsent(clave.toLowerCase(Locale.ROOT), k -> EnumSet.noneOf(WebhookRoute.class)).add(ruta);
+        }
+    }
+}
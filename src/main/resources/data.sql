@@ -130,6 +130,32 @@ WHERE s.external_id = 9001
           AND si.round = 1
     );
 
+-- ======================================================================
+-- Índice de ranking (misma clave que PrestadorRepository.RANKING_COLUMNAS, usada para keyset)
+-- ======================================================================
+DROP INDEX IF EXISTS ix_prestador_ranking;
+DROP INDEX IF EXISTS ix_prestador_ranking_keyset;
+CREATE INDEX IF NOT EXISTS ix_prestador_puntaje_keyset ON prestador (
+  (-COALESCE(puntaje_ranking,0)),
+  (-COALESCE(trabajos_finalizados,0)),
+  (COALESCE(precio_hora,1e12)),
+  (COALESCE(apellido,'')),
+  (COALESCE(nombre,'')),
+  internal_id
+) WHERE UPPER(estado) = 'ACTIVO';
+
+-- ======================================================================
+-- Deduplicación de mensajes del hub (WebhookEventService / WebhookDedupe).
+-- Si hay reentregas históricas repetidas la creación falla y se loguea; se crea al limpiarlas.
+-- ======================================================================
+CREATE UNIQUE INDEX IF NOT EXISTS ux_webhook_event_mensaje
+  ON webhook_event (message_id, (COALESCE(subscription_id, '')))
+  WHERE message_id IS NOT NULL;
+
+-- Los payloads nuevos van comprimidos en payload_z (PayloadComprimido); raw_payload queda
+-- solo para los eventos anteriores.
+ALTER TABLE webhook_event ALTER COLUMN raw_payload DROP NOT NULL;
+
 -- ======================================================================
 -- Reajuste de secuencias (PK)
 -- ======================================================================
@@ -150,3 +176,8 @@ SELECT CASE WHEN seq IS NOT NULL THEN setval(seq,(SELECT COALESCE(MAX(internal_i
 
 WITH s AS (SELECT pg_get_serial_sequence('solicitud','internal_id') AS seq)
 SELECT CASE WHEN seq IS NOT NULL THEN setval(seq,(SELECT COALESCE(MAX(internal_id),0)+1 FROM solicitud),false) END FROM s;
+
+-- webhook_event usa webhook_event_seq (pooled, bloques de 50): el valor de la secuencia es el
+-- techo del último bloque entregado, así que tiene que quedar al menos 50 por encima del máximo id
+SELECT setval('webhook_event_seq', GREATEST((SELECT last_value FROM webhook_event_seq),
+                                            (SELECT COALESCE(MAX(id),0) FROM webhook_event) + 50));
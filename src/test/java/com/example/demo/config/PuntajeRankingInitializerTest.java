@@ -0,0 +1,86 @@
+package com.example.demo.config;
+
+import com.example.demo.repository.PrestadorRepository;
+import com.example.demo.service.PonderadoPrestadorScorer;
+import com.example.demo.service.PrestadorScorer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Filas con el formato de PrestadorRepository.findDatosPuntaje:
+ * internal_id, calificacion_promedio, trabajos_finalizados, precio_hora, puntaje_ranking.
+ */
+class PuntajeRankingInitializerTest {
+
+    private static final PrestadorScorer PESOS_ANTERIORES = new PonderadoPrestadorScorer(1.0, 0.2, 0.0);
+
+    private final PrestadorRepository repository = mock(PrestadorRepository.class);
+
+    @Test
+    void conLosMismosPesosNoEscribeNada() {
+        when(repository.findDatosPuntaje()).thenReturn(List.of(
+                fila(1L, 4.5, 10, null, PESOS_ANTERIORES),
+                fila(2L, 3.0, 0, 120d, PESOS_ANTERIORES)));
+
+        assertThat(new PuntajeRankingInitializer(repository, PESOS_ANTERIORES).recalcular()).isZero();
+
+        verify(repository, never()).actualizarPuntajes(anyString(), anyString());
+    }
+
+    @Test
+    void cambioDePesosReescribeSoloLasFilasAfectadas() {
+        // Sin trabajos finalizados, subir el peso de trabajos no mueve el puntaje
+        PrestadorScorer nuevos = new PonderadoPrestadorScorer(1.0, 0.35, 0.0);
+        when(repository.findDatosPuntaje()).thenReturn(List.of(
+                fila(1L, 4.5, 10, null, PESOS_ANTERIORES),
+                fila(2L, 3.0, 0, null, PESOS_ANTERIORES),
+                fila(3L, 4.0, 5, 80d, PESOS_ANTERIORES),
+                new Object[]{4L, 2.0, 0, null, null}));
+        when(repository.actualizarPuntajes(anyString(), anyString())).thenReturn(3);
+
+        int actualizados = new PuntajeRankingInitializer(repository, nuevos).recalcular();
+
+        assertThat(actualizados).isEqualTo(3);
+        ArgumentCaptor<String> ids = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> puntajes = ArgumentCaptor.forClass(String.class);
+        verify(repository).actualizarPuntajes(ids.capture(), puntajes.capture());
+        assertThat(ids.getValue()).isEqualTo("1,3,4");
+        assertThat(Arrays.stream(puntajes.getValue().split(",")).mapToDouble(Double::parseDouble).toArray())
+                .containsExactly(
+                        nuevos.score(4.5, 10, PrestadorScorer.PRECIO_DESCONOCIDO),
+                        nuevos.score(4.0, 5, 80d),
+                        nuevos.score(2.0, 0, PrestadorScorer.PRECIO_DESCONOCIDO));
+    }
+
+    @Test
+    void escribeEnLotesDeMil() {
+        List<Object[]> filas = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            filas.add(new Object[]{id, 4.0, (int) id, null, null});
+        }
+        when(repository.findDatosPuntaje()).thenReturn(filas);
+        when(repository.actualizarPuntajes(anyString(), anyString()))
+                .thenReturn(1000, 1000, 500);
+
+        assertThat(new PuntajeRankingInitializer(repository, PESOS_ANTERIORES).recalcular()).isEqualTo(2500);
+
+        verify(repository, times(3)).actualizarPuntajes(anyString(), anyString());
+    }
+
+    private static Object[] fila(Long id, double promedio, int trabajos, Double precio, PrestadorScorer conPuntaje) {
+        double puntaje = conPuntaje.score(promedio, trabajos, precio != null ? precio : PrestadorScorer.PRECIO_DESCONOCIDO);
+        return new Object[]{id, promedio, trabajos, precio, puntaje};
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.controller;
+
+import com.example.demo.response.ModuleResponseFactory;
+import com.example.demo.service.WebhookArchivoReader;
+import com.example.demo.service.WebhookRetencionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * El nombre del archivo se valida antes de empezar a responder: un nombre inválido o un
+ * archivo que no existe son 400/404, no un 200 cortado.
+ */
+class WebhookArchivoControllerTest {
+
+    private static final String NOMBRE = "webhook_event-2025-01_20250801T033000.ndjson.gz";
+
+    @TempDir
+    Path directorio;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void crear() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        WebhookRetencionService retencion = mock(WebhookRetencionService.class);
+        when(retencion.getDirectorio()).thenReturn(directorio);
+        mvc = MockMvcBuilders.standaloneSetup(new WebhookArchivoController(mock(ModuleResponseFactory.class),
+                new WebhookArchivoReader(retencion, objectMapper), retencion, objectMapper)).build();
+    }
+
+    @Test
+    void nombreInvalidoEs400() throws Exception {
+        mvc.perform(get("/api/webhook/archivos/{nombre}", "otro.txt"))
+                .andExpect(status().isBadRequest())
+                .andExpect(request().asyncNotStarted());
+    }
+
+    @Test
+    void archivoInexistenteEs404() throws Exception {
+        mvc.perform(get("/api/webhook/archivos/{nombre}", NOMBRE))
+                .andExpect(status().isNotFound())
+                .andExpect(request().asyncNotStarted());
+    }
+
+    @Test
+    void archivoExistenteSeStreamea() throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(directorio.resolve(NOMBRE)))) {
+            out.write("{\"id\":1,\"topic\":\"zona\"}\n{\"id\":2,\"topic\":\"rubro\"}\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        var resultado = mvc.perform(get("/api/webhook/archivos/{nombre}", NOMBRE).param("topic", "rubro"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"id\":2,\"topic\":\"rubro\"}\n"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo.entity;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PayloadComprimidoTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "{}",
+            "texto que no es JSON",
+            "{\"parsed\":{\"topic\":\"zona\",\"payload\":{\"nombre\":\"Ñuñoa – Peñalolén ✓ 日本\"}},\"headers\":{}}",
+            "{\"parsed\":{\"topic\":\"search.solicitud.creada\",\"eventName\":\"creada\",\"msgId\":\"m-1\"},\"headers\":{\"host\":\"x\"},\"solicitudCreada\":true}"
+    })
+    void idaYVuelta(String texto) {
+        PayloadComprimido comprimido = PayloadComprimido.de(texto);
+        PayloadComprimido leido = PayloadComprimido.desdeBytes(comprimido.bytes());
+
+        assertThat(comprimido.texto()).isEqualTo(texto);
+        assertThat(leido.texto()).isEqualTo(texto);
+        assertThat(leido).isEqualTo(comprimido).hasSameHashCodeAs(comprimido);
+        assertThat(PayloadComprimido.descomprimir(PayloadComprimido.comprimir(texto))).isEqualTo(texto);
+    }
+
+    @Test
+    void idaYVueltaDePayloadsGrandes() {
+        Random random = new Random(3);
+        for (int largo : new int[]{4095, 4096, 4097, 65_536, 1_000_000}) {
+            StringBuilder sb = new StringBuilder(largo);
+            while (sb.length() < largo) {
+                sb.append(random.nextInt(4) == 0 ? (char) ('a' + random.nextInt(26)) : payload(random.nextInt(1000)).charAt(random.nextInt(100)));
+            }
+            String texto = sb.toString();
+            assertThat(PayloadComprimido.desdeBytes(PayloadComprimido.comprimir(texto)).texto()).isEqualTo(texto);
+        }
+    }
+
+    @Test
+    void nuloQuedaNulo() {
+        assertThat(PayloadComprimido.de(null)).isNull();
+        assertThat(PayloadComprimido.desdeBytes(null)).isNull();
+    }
+
+    @Test
+    void versionDesconocidaOTruncadoFallan() {
+        byte[] bytes = PayloadComprimido.comprimir(payload(1));
+
+        byte[] otraVersion = bytes.clone();
+        otraVersion[0] = 9;
+        assertThatThrownBy(() -> PayloadComprimido.descomprimir(otraVersion)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> PayloadComprimido.descomprimir(new byte[0])).isInstanceOf(IllegalStateException.class);
+        byte[] truncado = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThatThrownBy(() -> PayloadComprimido.descomprimir(truncado)).isInstanceOf(IllegalStateException.class);
+    }
+
+    /**
+     * Ratio y costo de CPU sobre payloads con la forma de los que se guardan en webhook_event.
+     * El diccionario tiene que ganarle a DEFLATE solo; los números quedan en la salida del test
+     * para revisar el diccionario cuando cambia la forma de los eventos.
+     */
+    @Test
+    void medicionDeCompresion() {
+        List<String> muestra = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            muestra.add(payload(i));
+        }
+        // Calentamiento del JIT
+        muestra.forEach(t -> PayloadComprimido.descomprimir(PayloadComprimido.comprimir(t)));
+
+        long original = 0;
+        long conDiccionario = 0;
+        long sinDiccionario = 0;
+        long nanosComprimir = 0;
+        long nanosDescomprimir = 0;
+        for (String texto : muestra) {
+            long t0 = System.nanoTime();
+            byte[] comprimido = PayloadComprimido.comprimir(texto);
+            long t1 = System.nanoTime();
+            String vuelta = PayloadComprimido.descomprimir(comprimido);
+            long t2 = System.nanoTime();
+            assertThat(vuelta).isEqualTo(texto);
+            original += texto.getBytes(StandardCharsets.UTF_8).length;
+            conDiccionario += comprimido.length;
+            sinDiccionario += sinDiccionario(texto).length;
+            nanosComprimir += t1 - t0;
+            nanosDescomprimir += t2 - t1;
+        }
+        double ratio = (double) conDiccionario / original;
+        double ratioSinDiccionario = (double) sinDiccionario / original;
+        System.out.printf("Compresión de %d payloads (%d bytes): ratio %.3f con diccionario, %.3f sin; "
+                        + "%.1f µs por compresión, %.1f µs por descompresión%n",
+                muestra.size(), original, ratio, ratioSinDiccionario,
+                nanosComprimir / 1000.0 / muestra.size(), nanosDescomprimir / 1000.0 / muestra.size());
+
+        assertThat(ratio).isLessThan(ratioSinDiccionario).isLessThan(0.5);
+    }
+
+    private static byte[] sinDiccionario(String texto) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(texto.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Evento guardado típico: mensaje del hub, headers y resultado de los handlers
+    private static String payload(int i) {
+        return "{\"parsed\":{\"topic\":\"search.solicitud.creada\",\"eventName\":\"creada\",\"msgId\":\"msg-" + (100_000 + i)
+                + "\",\"subscriptionId\":\"sub-" + (i % 7) + "\",\"timestamp\":\"2025-10-" + (10 + i % 20) + "T1" + (i % 10)
+                + ":00:00.000Z\",\"destination\":{\"channel\":\"solicitudes\",\"eventName\":\"creada\"},\"payload\":{"
+                + "\"solicitud_id\":" + (5000 + i) + ",\"usuario_id\":" + (300 + i % 50) + ",\"habilidad_id\":" + (i % 12)
+                + ",\"zona_id\":" + (i % 5) + ",\"titulo\":\"Arreglo número " + i + "\",\"descripcion\":\"Pérdida en la cañería del baño\","
+                + "\"es_critica\":" + (i % 3 == 0) + ",\"preferencia_horaria\":{\"dia\":\"2025-11-0" + (1 + i % 9)
+                + "\",\"ventana\":\"09:00-12:00\"}}},\"headers\":{\"host\":\"api.arreglaya.local\",\"content-type\":\"application/json\","
+                + "\"content-length\":\"" + (600 + i % 90) + "\",\"user-agent\":\"hub/1.4\",\"accept\":\"*/*\","
+                + "\"x-message-id\":\"msg-" + (100_000 + i) + "\"},\"ack\":{\"performed\":true,\"queued\":false,\"success\":true},"
+                + "\"solicitudCreada\":true,\"solicitudId\":" + (5000 + i) + ",\"prestadorUpsert\":false,\"prestadorDesactivado\":false,"
+                + "\"solicitudCancelada\":false,\"cotizacionAceptada\":false,\"cotizacionRecibida\":false,\"cotizacionRechazada\":false,"
+                + "\"calificacionProcesada\":false,\"habilidadProcesada\":false,\"habilidadModificada\":false,\"rubroProcesado\":false,"
+                + "\"rubroModificado\":false,\"zonaProcesada\":false,\"zonaModificada\":false}";
+    }
+}
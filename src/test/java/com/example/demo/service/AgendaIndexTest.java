@@ -0,0 +1,137 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Solicitud;
+import com.example.demo.entity.enums.EstadoSolicitud;
+import com.example.demo.repository.SolicitudRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * El índice de agenda tiene que decidir la disponibilidad igual que la consulta
+ * findAsignadasEnDiaYFranja que usa SolicitudService cuando el índice no está cargado.
+ */
+class AgendaIndexTest {
+
+    private static final int SLOT = 60;
+    private static final LocalDate HOY = LocalDate.now();
+    private static final long PRESTADOR = 7L;
+
+    private final SolicitudRepository repository = mock(SolicitudRepository.class);
+    private final List<Object[]> turnos = new ArrayList<>();
+    private AgendaIndex index;
+
+    @BeforeEach
+    void crear() {
+        when(repository.findTurnosOcupadosDesde(HOY)).thenReturn(turnos);
+        index = new AgendaIndex(repository);
+        ReflectionTestUtils.setField(index, "slotMinutes", SLOT);
+        ReflectionTestUtils.setField(index, "enabled", true);
+    }
+
+    @Test
+    void mismaSuperposicionQueLaConsultaDeLaBase() {
+        List<LocalTime> ocupados = List.of(LocalTime.of(0, 20), LocalTime.of(10, 30), LocalTime.of(10, 30),
+                LocalTime.of(14, 0), LocalTime.of(23, 45));
+        long solicitudId = 1;
+        for (LocalTime horario : ocupados) {
+            turnos.add(new Object[]{solicitudId++, PRESTADOR, HOY, horario});
+        }
+        index.recargar();
+
+        for (int minuto = 0; minuto < 24 * 60; minuto += 5) {
+            LocalTime horario = LocalTime.of(minuto / 60, minuto % 60);
+            assertThat(index.estaLibre(PRESTADOR, HOY, horario, 99L))
+                    .as("horario=%s", horario)
+                    .isEqualTo(libreSegunConsulta(horario, 99L));
+        }
+    }
+
+    @Test
+    void franjaSeCortaEnLaMedianoche() {
+        assertThat(AgendaIndex.franja(LocalTime.of(0, 20), SLOT))
+                .containsExactly(LocalTime.MIN, LocalTime.of(1, 19));
+        assertThat(AgendaIndex.franja(LocalTime.of(23, 30), SLOT))
+                .containsExactly(LocalTime.of(22, 31), LocalTime.MAX);
+        assertThat(AgendaIndex.franja(LocalTime.of(12, 0), SLOT))
+                .containsExactly(LocalTime.of(11, 1), LocalTime.of(12, 59));
+    }
+
+    @Test
+    void laPropiaSolicitudNoOcupa() {
+        turnos.add(new Object[]{1L, PRESTADOR, HOY, LocalTime.of(10, 0)});
+        index.recargar();
+
+        assertThat(index.estaLibre(PRESTADOR, HOY, LocalTime.of(10, 30), 1L)).isTrue();
+        assertThat(index.estaLibre(PRESTADOR, HOY, LocalTime.of(10, 30), 2L)).isFalse();
+        assertThat(index.estaLibre(PRESTADOR, HOY.plusDays(1), LocalTime.of(10, 30), 2L)).isTrue();
+        assertThat(index.estaLibre(8L, HOY, LocalTime.of(10, 30), 2L)).isTrue();
+    }
+
+    @Test
+    void registrarOcupaYLiberaSinPisarOtrosTurnos() {
+        turnos.add(new Object[]{1L, PRESTADOR, HOY, LocalTime.of(10, 0)});
+        index.recargar();
+        Solicitud otra = solicitud(2L, EstadoSolicitud.ASIGNADA, LocalTime.of(10, 0));
+
+        index.registrar(otra);
+        otra.setEstado(EstadoSolicitud.CANCELADA);
+        index.registrar(otra);
+
+        // Se liberó el turno cancelado pero sigue el de la solicitud 1 en el mismo horario
+        assertThat(index.estaLibre(PRESTADOR, HOY, LocalTime.of(10, 0), 2L)).isFalse();
+        index.registrar(solicitud(1L, EstadoSolicitud.COMPLETADA, LocalTime.of(10, 0)));
+        assertThat(index.estaLibre(PRESTADOR, HOY, LocalTime.of(10, 0), 2L)).isTrue();
+    }
+
+    @Test
+    void podarDescartaLosDiasAnteriores() {
+        LocalDate manana = HOY.plusDays(1);
+        turnos.add(new Object[]{1L, PRESTADOR, HOY, LocalTime.of(10, 0)});
+        turnos.add(new Object[]{2L, PRESTADOR, manana, LocalTime.of(10, 0)});
+        turnos.add(new Object[]{3L, 8L, HOY, LocalTime.of(9, 0)});
+        index.recargar();
+
+        index.podar(manana);
+
+        assertThat(index.estaLibre(PRESTADOR, HOY, LocalTime.of(10, 0), null)).isTrue();
+        assertThat(index.estaLibre(8L, HOY, LocalTime.of(9, 0), null)).isTrue();
+        assertThat(index.estaLibre(PRESTADOR, manana, LocalTime.of(10, 0), null)).isFalse();
+        @SuppressWarnings("unchecked")
+        Map<Long, ?> porPrestador = (Map<Long, ?>) ReflectionTestUtils.getField(index, "porPrestador");
+        @SuppressWarnings("unchecked")
+        Map<Long, ?> porSolicitud = (Map<Long, ?>) ReflectionTestUtils.getField(index, "porSolicitud");
+        assertThat(porPrestador).containsOnlyKeys(PRESTADOR);
+        assertThat(porSolicitud).containsOnlyKeys(2L);
+    }
+
+    // Lo que hace SolicitudService.estaLibre sin índice: BETWEEN desde AND hasta sobre el horario
+    private boolean libreSegunConsulta(LocalTime horario, Long solicitudId) {
+        LocalTime[] franja = AgendaIndex.franja(horario, SLOT);
+        return turnos.stream()
+                .filter(t -> PRESTADOR == (Long) t[1] && HOY.equals(t[2]))
+                .filter(t -> !((LocalTime) t[3]).isBefore(franja[0]) && !((LocalTime) t[3]).isAfter(franja[1]))
+                .allMatch(t -> Objects.equals(t[0], solicitudId));
+    }
+
+    private static Solicitud solicitud(Long id, EstadoSolicitud estado, LocalTime horario) {
+        Solicitud s = new Solicitud();
+        s.setInternalId(id);
+        s.setEstado(estado);
+        s.setPrestadorAsignadoId(PRESTADOR);
+        s.setFecha(HOY);
+        s.setHorario(horario);
+        return s;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Prestador;
+import com.example.demo.repository.PrestadorRepository.ClaveRanking;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * La clave de keyset que se manda a las consultas de ranking tiene que ordenar igual que
+ * {@link PrestadorRankingIndex#ORDEN_RANKING}, con los mismos valores por defecto para nulos.
+ */
+class ClaveRankingTest {
+
+    // Comparación de filas de Postgres: columna por columna, en orden ascendente
+    private static final Comparator<ClaveRanking> COMO_SQL = Comparator
+            .comparingDouble(ClaveRanking::puntaje)
+            .thenComparingInt(ClaveRanking::trabajos)
+            .thenComparingDouble(ClaveRanking::precio)
+            .thenComparing(ClaveRanking::apellido)
+            .thenComparing(ClaveRanking::nombre)
+            .thenComparing(ClaveRanking::internalId);
+
+    @Test
+    void ordenaIgualQueElIndice() {
+        Random random = new Random(7);
+        List<Prestador> prestadores = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            Prestador p = new Prestador();
+            p.setInternalId(id);
+            p.setPuntajeRanking(random.nextInt(6) == 0 ? null : random.nextInt(5) / 2.0);
+            p.setTrabajosFinalizados(random.nextInt(6) == 0 ? null : random.nextInt(3));
+            p.setPrecioHora(random.nextInt(6) == 0 ? null : (double) random.nextInt(3) * 500);
+            p.setApellido(random.nextInt(4) == 0 ? null : "A" + random.nextInt(2));
+            p.setNombre(random.nextInt(4) == 0 ? null : "N" + random.nextInt(2));
+            prestadores.add(p);
+        }
+
+        List<Long> segunClave = prestadores.stream()
+                .sorted(Comparator.comparing(ClaveRanking::de, COMO_SQL))
+                .map(Prestador::getInternalId)
+                .toList();
+        List<Long> segunIndice = prestadores.stream()
+                .map(ClaveRankingTest::candidato)
+                .sorted(PrestadorRankingIndex.ORDEN_RANKING)
+                .map(PrestadorRankingIndex.Candidato::internalId)
+                .toList();
+
+        assertThat(segunClave).isEqualTo(segunIndice);
+    }
+
+    @Test
+    void nulosUsanLosMismosValoresQueElSql() {
+        Prestador p = new Prestador();
+        p.setInternalId(9L);
+
+        assertThat(ClaveRanking.de(p)).isEqualTo(new ClaveRanking(-0d, 0, 1e12, "", "", 9L));
+    }
+
+    private static PrestadorRankingIndex.Candidato candidato(Prestador p) {
+        return new PrestadorRankingIndex.Candidato(p.getInternalId(), null,
+                p.getPuntajeRanking() != null ? p.getPuntajeRanking() : 0d,
+                p.getTrabajosFinalizados() != null ? p.getTrabajosFinalizados() : 0,
+                p.getPrecioHora() != null ? p.getPrecioHora() : PrestadorScorer.PRECIO_DESCONOCIDO,
+                p.getApellido(), p.getNombre(), null, Set.of(), Set.of());
+    }
+}
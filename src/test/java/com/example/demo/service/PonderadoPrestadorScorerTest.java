@@ -0,0 +1,167 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Prestador;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+/**
+ * Con los pesos por defecto el puntaje tiene que ser el de la fórmula original
+ * (promedio/5 + 0.2·ln(1+trabajos)), que es la que usaban el índice y las consultas SQL.
+ */
+class PonderadoPrestadorScorerTest {
+
+    private static final double[] PROMEDIOS = {0d, 0.5, 1d, 2.3, 3d, 3.7, 4d, 4.2, 4.99, 5d};
+    private static final int[] TRABAJOS = {-3, 0, 1, 2, 5, 9, 10, 37, 100, 1000, Integer.MAX_VALUE};
+    private static final double[] PRECIOS = {0d, 15.5, 1200d, PrestadorScorer.PRECIO_DESCONOCIDO};
+
+    private final PonderadoPrestadorScorer porDefecto = new PonderadoPrestadorScorer(1.0, 0.2, 0.0);
+
+    @Test
+    void pesosPorDefectoReproducenLaFormulaOriginal() {
+        for (double promedio : PROMEDIOS) {
+            for (int trabajos : TRABAJOS) {
+                for (double precio : PRECIOS) {
+                    assertThat(porDefecto.score(promedio, trabajos, precio))
+                            .as("promedio=%s trabajos=%s precio=%s", promedio, trabajos, precio)
+                            .isCloseTo(formulaOriginal(promedio, trabajos), offset(1e-12));
+                }
+            }
+        }
+    }
+
+    @Test
+    void pesosPorDefectoOrdenanIgualQueLaFormulaOriginal() {
+        List<double[]> prestadores = new ArrayList<>();
+        for (double promedio : PROMEDIOS) {
+            for (int trabajos : TRABAJOS) {
+                prestadores.add(new double[]{promedio, Math.max(trabajos, 0)});
+            }
+        }
+        List<double[]> segunScorer = new ArrayList<>(prestadores);
+        segunScorer.sort(Comparator.comparingDouble((double[] p) -> -porDefecto.score(p[0], (int) p[1], 0d)));
+        List<double[]> segunFormula = new ArrayList<>(prestadores);
+        segunFormula.sort(Comparator.comparingDouble((double[] p) -> -formulaOriginal(p[0], (int) p[1])));
+
+        assertThat(segunScorer).containsExactlyElementsOf(segunFormula);
+    }
+
+    @Test
+    void calculoPorLotesDaLoMismoQueElSimple() {
+        PonderadoPrestadorScorer conPrecio = new PonderadoPrestadorScorer(1.5, 0.35, 0.1);
+        int n = PROMEDIOS.length * TRABAJOS.length * PRECIOS.length;
+        double[] promedios = new double[n];
+        int[] trabajos = new int[n];
+        double[] precios = new double[n];
+        int i = 0;
+        for (double promedio : PROMEDIOS) {
+            for (int t : TRABAJOS) {
+                for (double precio : PRECIOS) {
+                    promedios[i] = promedio;
+                    trabajos[i] = t;
+                    precios[i] = precio;
+                    i++;
+                }
+            }
+        }
+        for (PonderadoPrestadorScorer scorer : List.of(porDefecto, conPrecio)) {
+            double[] out = new double[n];
+            scorer.score(promedios, trabajos, precios, out, n);
+            for (int j = 0; j < n; j++) {
+                // Exactamente el mismo double: el índice mezcla puntajes de ambos caminos
+                assertThat(out[j]).isEqualTo(scorer.score(promedios[j], trabajos[j], precios[j]));
+            }
+        }
+    }
+
+    @Test
+    void prestadorSinDatosUsaCeros() {
+        Prestador prestador = new Prestador();
+        assertThat(porDefecto.score(prestador)).isEqualTo(0d);
+
+        prestador.setCalificacionPromedio(4.5);
+        prestador.setTrabajosFinalizados(12);
+        assertThat(porDefecto.score(prestador))
+                .isCloseTo(formulaOriginal(4.5, 12), offset(1e-12));
+    }
+
+    @Test
+    void pesoDePrecioPenalizaLosMasCaros() {
+        PonderadoPrestadorScorer conPrecio = new PonderadoPrestadorScorer(1.0, 0.2, 0.1);
+        assertThat(conPrecio.score(4d, 10, 100d)).isGreaterThan(conPrecio.score(4d, 10, 200d));
+        assertThat(conPrecio.score(4d, 10, 0d)).isEqualTo(porDefecto.score(4d, 10, 0d));
+    }
+
+    @Test
+    void medicionDeOrdenPorPuntajePrecalculado() {
+        // Ordenar candidatos por el puntaje ya calculado (puntaje_ranking, Candidato.score) contra
+        // evaluar el scorer dentro del comparador, que es lo que haría la selección sin persistirlo
+        PonderadoPrestadorScorer scorer = new PonderadoPrestadorScorer(1.0, 0.2, 0.1);
+        int n = 5_000;
+        Random random = new Random(7);
+        double[] promedios = new double[n];
+        int[] trabajos = new int[n];
+        double[] precios = new double[n];
+        for (int i = 0; i < n; i++) {
+            promedios[i] = random.nextInt(51) / 10.0;
+            trabajos[i] = random.nextInt(500);
+            precios[i] = 10 + random.nextInt(5_000) / 10.0;
+        }
+        double[] puntajes = new double[n];
+        scorer.score(promedios, trabajos, precios, puntajes, n);
+        Integer[] indices = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        Comparator<Integer> precalculado = Comparator.comparingDouble((Integer i) -> -puntajes[i]);
+        Comparator<Integer> alVuelo = Comparator.comparingDouble((Integer i) -> -scorer.score(promedios[i], trabajos[i], precios[i]));
+        int rondas = 10;
+        // Calentamiento del JIT
+        medir(() -> ordenar(indices, precalculado), 5);
+        medir(() -> ordenar(indices, alVuelo), 5);
+
+        long nanosPrecalculado = medir(() -> ordenar(indices, precalculado), rondas);
+        long nanosAlVuelo = medir(() -> ordenar(indices, alVuelo), rondas);
+        System.out.printf("Orden de %d candidatos: %.0f us con el puntaje precalculado, %.0f us evaluando el scorer (%.1fx)%n",
+                n, nanosPrecalculado / 1_000.0 / rondas, nanosAlVuelo / 1_000.0 / rondas,
+                (double) nanosAlVuelo / nanosPrecalculado);
+
+        assertThat(nanosPrecalculado).isLessThan(nanosAlVuelo);
+    }
+
+    private static int ordenar(Integer[] indices, Comparator<Integer> orden) {
+        Integer[] copia = indices.clone();
+        Arrays.sort(copia, orden);
+        return copia[0] + 1;
+    }
+
+    // Mejor de cada ronda, para que una pausa del GC no decida el resultado
+    private static long medir(IntSupplier corrida, int rondas) {
+        long total = 0;
+        int sumidero = 0;
+        for (int r = 0; r < rondas; r++) {
+            long mejor = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                long inicio = System.nanoTime();
+                sumidero += corrida.getAsInt();
+                mejor = Math.min(mejor, System.nanoTime() - inicio);
+            }
+            total += mejor;
+        }
+        assertThat(sumidero).isPositive();
+        return total;
+    }
+
+    // Fórmula de PrestadorRepository/PrestadorRankingIndex antes de los pesos configurables
+    private static double formulaOriginal(double promedio, int trabajos) {
+        return promedio / 5.0 + 0.2 * Math.log1p(Math.max(trabajos, 0));
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.PrestadorRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link PrestadorRankingIndex#topPorHabilidadEnZonas} / {@code topPorRubroEnZonas} mezclan el
+ * top-K de cada zona; tienen que dar lo mismo que recorrer el ranking global de la categoría
+ * quedándose con los prestadores de esas zonas.
+ */
+class PrestadorRankingIndexTest {
+
+    private static final int HABILIDADES = 6;
+    private static final int ZONAS = 5;
+
+    private final PrestadorRepository repository = mock(PrestadorRepository.class);
+    private PrestadorRankingIndex index;
+
+    @BeforeEach
+    void cargar() {
+        Random random = new Random(42);
+        List<Object[]> filas = new ArrayList<>();
+        for (long id = 1; id <= 400; id++) {
+            // Pocos valores distintos para forzar empates en puntaje, trabajos, precio y nombre
+            Double promedio = random.nextInt(8) == 0 ? null : (double) random.nextInt(11) / 2;
+            Integer trabajos = random.nextInt(4);
+            Double precio = random.nextInt(6) == 0 ? null : (double) (random.nextInt(3) * 1000);
+            String apellido = random.nextInt(5) == 0 ? null : "Apellido" + random.nextInt(3);
+            String nombre = random.nextInt(5) == 0 ? null : "Nombre" + random.nextInt(2);
+            Long zona = random.nextInt(10) == 0 ? null : (long) random.nextInt(ZONAS);
+            int cantidad = 1 + random.nextInt(3);
+            for (int h = 0; h < cantidad; h++) {
+                long habilidad = random.nextInt(HABILIDADES);
+                filas.add(new Object[]{id, 1000 + id, promedio, trabajos, precio, apellido, nombre,
+                        habilidad, habilidad % 2, zona});
+            }
+        }
+        when(repository.findActivosParaRanking()).thenReturn(filas);
+        index = new PrestadorRankingIndex(repository, new PonderadoPrestadorScorer(1.0, 0.2, 0.0));
+        ReflectionTestUtils.setField(index, "enabled", true);
+        index.recargar();
+    }
+
+    @Test
+    void topEnZonasIgualQueFiltrarElRankingGlobal() {
+        List<Set<Long>> combinaciones = List.of(Set.of(0L), Set.of(3L), Set.of(0L, 1L),
+                Set.of(1L, 2L, 4L), Set.of(0L, 1L, 2L, 3L, 4L), Set.of(2L, 99L));
+        List<Predicate<PrestadorRankingIndex.Candidato>> filtros = List.of(
+                c -> true, c -> c.internalId() % 3 != 0, c -> c.precioHora() < 2000);
+        for (long habilidad = 0; habilidad < HABILIDADES; habilidad++) {
+            List<PrestadorRankingIndex.Candidato> global = index.topPorHabilidad(habilidad, Integer.MAX_VALUE, null);
+            for (Set<Long> zonas : combinaciones) {
+                for (Predicate<PrestadorRankingIndex.Candidato> filtro : filtros) {
+                    for (int limite : new int[]{1, 3, 10, 1000}) {
+                        assertThat(index.topPorHabilidadEnZonas(habilidad, zonas, limite, filtro))
+                                .as("habilidad=%s zonas=%s limite=%s", habilidad, zonas, limite)
+                                .containsExactlyElementsOf(esperado(global, zonas, limite, filtro));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void topPorRubroEnZonasIgualQueFiltrarElRankingGlobal() {
+        for (long rubro = 0; rubro < 2; rubro++) {
+            List<PrestadorRankingIndex.Candidato> global = index.topPorRubro(rubro, Integer.MAX_VALUE, null);
+            for (Set<Long> zonas : List.of(Set.of(1L), Set.of(0L, 4L), Set.of(0L, 1L, 2L, 3L, 4L))) {
+                for (int limite : new int[]{1, 7, 1000}) {
+                    assertThat(index.topPorRubroEnZonas(rubro, zonas, limite, c -> true))
+                            .containsExactlyElementsOf(esperado(global, zonas, limite, c -> true));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rankingGlobalRespetaElOrden() {
+        for (long habilidad = 0; habilidad < HABILIDADES; habilidad++) {
+            List<PrestadorRankingIndex.Candidato> global = index.topPorHabilidad(habilidad, Integer.MAX_VALUE, null);
+            assertThat(global).isNotEmpty().isSortedAccordingTo(PrestadorRankingIndex.ORDEN_RANKING);
+        }
+    }
+
+    @Test
+    void sinZonasOLimiteNoDevuelveNada() {
+        assertThat(index.topPorHabilidadEnZonas(0L, Set.of(), 10, null)).isEmpty();
+        assertThat(index.topPorHabilidadEnZonas(0L, null, 10, null)).isEmpty();
+        assertThat(index.topPorHabilidadEnZonas(0L, Set.of(0L), 0, null)).isEmpty();
+        assertThat(index.topPorHabilidadEnZonas(99L, Set.of(0L), 10, null)).isEmpty();
+    }
+
+    private static List<PrestadorRankingIndex.Candidato> esperado(List<PrestadorRankingIndex.Candidato> global,
+                                                                 Set<Long> zonas, int limite,
+                                                                 Predicate<PrestadorRankingIndex.Candidato> filtro) {
+        return global.stream()
+                .filter(c -> c.zona() != null && zonas.contains(c.zona()))
+                .filter(filtro)
+                .limit(limite)
+                .toList();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.Habilidad;
+import com.example.demo.entity.Rubro;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RankingCandidatosCacheTest {
+
+    private final RankingCandidatosCache cache = new RankingCandidatosCache(new SimpleMeterRegistry(), true, 10, 60);
+
+    @Test
+    void aciertoDevuelveElMismoValorSinCargar() {
+        AtomicInteger cargas = new AtomicInteger();
+        List<Long> primero = cache.porHabilidad(1L, () -> List.of(cargas.incrementAndGet() * 1L));
+        List<Long> segundo = cache.porHabilidad(1L, () -> List.of(cargas.incrementAndGet() * 1L));
+
+        assertThat(segundo).isSameAs(primero);
+        assertThat(cargas).hasValue(1);
+    }
+
+    @Test
+    void cargaQueCruzaUnaInvalidacionNoSeGuarda() {
+        List<Long> viejo = cache.porHabilidad(1L, () -> {
+            // Mientras se arma el ranking otro hilo cambia un prestador de la habilidad
+            cache.invalidar(List.of(habilidad(1L, 10L)));
+            return List.of(1L, 2L);
+        });
+        List<Long> nuevo = cache.porHabilidad(1L, () -> List.of(2L, 1L));
+
+        assertThat(viejo).containsExactly(1L, 2L);
+        assertThat(nuevo).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void extenderSoloReemplazaLaEntradaQueSeLeyo() {
+        List<Long> leido = cache.porHabilidad(1L, () -> List.of(1L));
+        List<Long> extendido = List.of(1L, 2L);
+
+        assertThat(cache.extenderHabilidad(1L, leido, extendido)).isTrue();
+        assertThat(cache.<List<Long>>porHabilidad(1L, List::of)).isSameAs(extendido);
+        // Otro hilo que tenía el prefijo anterior no pisa el extendido
+        assertThat(cache.extenderHabilidad(1L, leido, List.of(1L, 3L))).isFalse();
+        assertThat(cache.<List<Long>>porHabilidad(1L, List::of)).isSameAs(extendido);
+    }
+
+    @Test
+    void extenderDespuesDeInvalidarNoRevive() {
+        List<Long> leido = cache.porRubro(10L, () -> List.of(1L));
+        cache.invalidar(List.of(habilidad(1L, 10L)));
+
+        assertThat(cache.extenderRubro(10L, leido, List.of(1L, 2L))).isFalse();
+        assertThat(cache.<List<Long>>porRubro(10L, () -> List.of(9L))).containsExactly(9L);
+    }
+
+    @Test
+    void extenderNoAgregaLoQueNoEstaba() {
+        assertThat(cache.extenderRubro(5L, List.of(), List.of(1L))).isFalse();
+        assertThat(cache.<List<Long>>porRubro(5L, () -> List.of(7L))).containsExactly(7L);
+    }
+
+    @Test
+    void deshabilitadaSiempreCarga() {
+        RankingCandidatosCache apagada = new RankingCandidatosCache(new SimpleMeterRegistry(), false, 10, 60);
+        AtomicInteger cargas = new AtomicInteger();
+        apagada.porHabilidad(1L, cargas::incrementAndGet);
+        apagada.porHabilidad(1L, cargas::incrementAndGet);
+
+        assertThat(cargas).hasValue(2);
+        assertThat(apagada.extenderHabilidad(1L, 1, 2)).isFalse();
+    }
+
+    private static Habilidad habilidad(Long externalId, Long rubroExternalId) {
+        Rubro rubro = new Rubro();
+        rubro.setExternalId(rubroExternalId);
+        Habilidad h = new Habilidad();
+        h.setExternalId(externalId);
+        h.setRubro(rubro);
+        return h;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebhookArchivoReaderTest {
+
+    private static final String NOMBRE = "webhook_event-2025-01_20250801T033000.ndjson.gz";
+
+    @TempDir
+    Path directorio;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private WebhookArchivoReader reader() {
+        WebhookRetencionService retencion = mock(WebhookRetencionService.class);
+        when(retencion.getDirectorio()).thenReturn(directorio);
+        return new WebhookArchivoReader(retencion, objectMapper);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"../" + NOMBRE, "otro.txt", "webhook_event-2025-01.json", "sub/" + NOMBRE})
+    void nombreInvalidoSeRechaza(String nombre) {
+        assertThatThrownBy(() -> reader().resolver(nombre)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void archivoInexistente() {
+        assertThatThrownBy(() -> reader().resolver(NOMBRE)).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void leeLasLineasTalComoSeEscribieronYFiltra() throws Exception {
+        String payload = "{\"parsed\":{\"topic\":\"zona\"},\"headers\":{}}";
+        escribir(NOMBRE,
+                "{\"id\":1,\"topic\":\"zona\",\"eventName\":\"alta\",\"messageId\":\"m-1\",\"rawPayload\":" + objectMapper.writeValueAsString(payload) + "}",
+                "{\"id\":2,\"topic\":\"rubro\",\"eventName\":\"alta\",\"messageId\":\"m-2\",\"rawPayload\":null}",
+                "{\"id\":3,\"topic\":\"zona\",\"eventName\":\"modificacion\",\"messageId\":\"m-3\",\"rawPayload\":null}");
+        WebhookArchivoReader reader = reader();
+        Path archivo = reader.resolver(NOMBRE);
+
+        Map<String, String> campos = new HashMap<>();
+        campos.put("topic", "zona");
+        campos.put("eventName", null);
+        List<JsonNode> leidos = new ArrayList<>();
+        int n = reader.leer(archivo, WebhookArchivoReader.filtro(campos), 10, leidos::add);
+
+        assertThat(n).isEqualTo(2);
+        assertThat(leidos).extracting(e -> e.get("id").asLong()).containsExactly(1L, 3L);
+        assertThat(leidos.get(0).get("rawPayload").textValue()).isEqualTo(payload);
+
+        List<JsonNode> primero = new ArrayList<>();
+        assertThat(reader.leer(archivo, WebhookArchivoReader.filtro(Map.of()), 1, primero::add)).isEqualTo(1);
+    }
+
+    private void escribir(String nombre, String... lineas) throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(directorio.resolve(nombre)))) {
+            for (String linea : lineas) {
+                out.write((linea + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.repository.WebhookDeadLetterRepository;
+import com.example.demo.repository.WebhookEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class WebhookRetencionServiceTest {
+
+    @TempDir
+    Path directorio;
+
+    private final WebhookEventRepository eventRepository = mock(WebhookEventRepository.class);
+    private final WebhookDeadLetterRepository deadLetterRepository = mock(WebhookDeadLetterRepository.class);
+
+    @Test
+    void deshabilitadaNoTocaNada() {
+        WebhookRetencionService service = service(false);
+
+        service.programada();
+        assertThatThrownBy(service::depurar).isInstanceOf(IllegalStateException.class);
+
+        verifyNoInteractions(eventRepository, deadLetterRepository);
+    }
+
+    @Test
+    void borraConLaMismaCondicionQueAlExportarYCuentaLoBorrado() throws Exception {
+        YearMonth mes = YearMonth.now().minusMonths(7);
+        when(eventRepository.primerArchivable(any())).thenReturn(mes.atDay(3).atStartOfDay());
+        when(eventRepository.archivables(any(), any(), eq(0L), anyInt()))
+                .thenReturn(List.of(evento(1L, mes), evento(2L, mes)));
+        // Al evento 2 se le rearmó una dead letter después de exportarlo: queda en la base
+        when(eventRepository.borrarArchivados(List.of(1L, 2L))).thenReturn(1);
+
+        long borrados = service(true).depurar();
+
+        assertThat(borrados).isEqualTo(1);
+        InOrder orden = inOrder(deadLetterRepository, eventRepository);
+        orden.verify(deadLetterRepository).borrarPorEventos(List.of(1L, 2L));
+        orden.verify(eventRepository).borrarArchivados(List.of(1L, 2L));
+
+        List<Path> archivos;
+        try (var listado = Files.list(directorio)) {
+            archivos = listado.toList();
+        }
+        assertThat(archivos).singleElement().satisfies(archivo -> {
+            assertThat(WebhookRetencionService.esArchivo(archivo)).isTrue();
+            assertThat(archivo.getFileName().toString()).startsWith("webhook_event-" + mes + "_");
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(archivo))) {
+                assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8).lines()).hasSize(2);
+            }
+        });
+    }
+
+    @Test
+    void sinArchivablesNoCreaArchivos() throws Exception {
+        when(eventRepository.primerArchivable(any())).thenReturn(null);
+
+        assertThat(service(true).depurar()).isZero();
+
+        try (var listado = Files.list(directorio)) {
+            assertThat(listado).isEmpty();
+        }
+        verifyNoInteractions(deadLetterRepository);
+    }
+
+    private WebhookRetencionService service(boolean enabled) {
+        return new WebhookRetencionService(eventRepository, deadLetterRepository, mock(PlatformTransactionManager.class),
+                new ObjectMapper().findAndRegisterModules(), enabled, 6, 500, directorio.toString());
+    }
+
+    private static WebhookEvent evento(Long id, YearMonth mes) {
+        return WebhookEvent.builder()
+                .id(id)
+                .topic("zona")
+                .eventName("alta")
+                .messageId("m-" + id)
+                .receivedAt(LocalDateTime.of(mes.getYear(), mes.getMonth(), 5, 10, 0))
+                .build();
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.demo.webhook;
+
+import com.example.demo.config.MatchingIntegrationProperties;
+import com.example.demo.entity.AckPendiente;
+import com.example.demo.entity.enums.EstadoAckPendiente;
+import com.example.demo.repository.AckPendienteRepository;
+import com.example.demo.service.MatchingSubscriptionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withException;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withNoContent;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+
+/**
+ * El hub es un MockRestServiceServer detrás del MatchingSubscriptionService real; la base,
+ * un mock del repositorio. Los envíos corren en el pool del dispatcher, por eso se verifica
+ * con timeout.
+ */
+class AckDispatcherTest {
+
+    private static final String HUB = "http://hub.test";
+    private static final long BACKOFF_INICIAL_MS = 1000;
+    private static final long BACKOFF_MAX_MS = 10_000;
+    private static final int MAX_INTENTOS = 4;
+
+    private MockRestServiceServer hub;
+    private AckPendienteRepository repository;
+    private AckDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        RestClient.Builder builder = RestClient.builder().baseUrl(HUB);
+        hub = MockRestServiceServer.bindTo(builder).build();
+        MatchingIntegrationProperties properties = new MatchingIntegrationProperties(
+                HUB, null, null, null, false, null, false, null, null, null, "top3", null, null, null, null);
+        MatchingSubscriptionService subscriptionService = new MatchingSubscriptionService(
+                builder.build(), properties, "http://yo.test/webhook", "matching");
+        repository = mock(AckPendienteRepository.class);
+        dispatcher = new AckDispatcher(subscriptionService, repository, new SimpleMeterRegistry(),
+                true, 1, 10, MAX_INTENTOS, BACKOFF_INICIAL_MS, BACKOFF_MAX_MS, 60);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void ackAceptadoSeBorra() {
+        hubResponde("m-1", withNoContent());
+        when(repository.registrar(eq("m-1"), eq("s-1"), any(), any())).thenReturn(List.of(10L));
+
+        dispatcher.encolar(" m-1 ", " s-1 ");
+
+        verify(repository, timeout(2000)).deleteById(10L);
+        verify(repository, never()).reprogramar(any(), anyInt(), any(), any(), any());
+        hub.verify();
+    }
+
+    @Test
+    void ackYaPendienteNoSeEnviaDeNuevo() {
+        when(repository.registrar(anyString(), anyString(), any(), any())).thenReturn(List.of());
+
+        dispatcher.encolar("m-1", "s-1");
+
+        // Sin fila nueva no se programa envío: el pendiente existente lo retoma su propio envío o el poller
+        verify(repository, never()).deleteById(any());
+        verify(repository, never()).reprogramar(any(), anyInt(), any(), any(), any());
+        hub.verify();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = HttpStatus.class, names = {"SERVICE_UNAVAILABLE", "BAD_GATEWAY", "REQUEST_TIMEOUT", "TOO_MANY_REQUESTS"})
+    void errorReintentableSeReprogramaConBackoff(HttpStatus status) {
+        hubResponde("m-2", withStatus(status));
+        when(repository.registrar(anyString(), anyString(), any(), any())).thenReturn(List.of(20L));
+        LocalDateTime antes = LocalDateTime.now();
+
+        dispatcher.encolar("m-2", "s-1");
+
+        verify(repository, timeout(2000)).reprogramar(eq(20L), eq(1),
+                proximoEntre(antes, BACKOFF_INICIAL_MS), anyString(), eq(EstadoAckPendiente.PENDIENTE));
+    }
+
+    @Test
+    void errorDeRedSeReintenta() {
+        hub.expect(requestTo(HUB + "/messages/m-3/ack")).andRespond(withException(new IOException("conexión rechazada")));
+        when(repository.registrar(anyString(), anyString(), any(), any())).thenReturn(List.of(30L));
+
+        dispatcher.encolar("m-3", "s-1");
+
+        verify(repository, timeout(2000)).reprogramar(eq(30L), eq(1), any(), anyString(), eq(EstadoAckPendiente.PENDIENTE));
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = HttpStatus.class, names = {"BAD_REQUEST", "UNAUTHORIZED", "NOT_FOUND", "CONFLICT"})
+    void rechazoDelHubPasaAFallidoSinReintentar(HttpStatus status) {
+        hubResponde("m-4", withStatus(status));
+        when(repository.registrar(anyString(), anyString(), any(), any())).thenReturn(List.of(40L));
+
+        dispatcher.encolar("m-4", "s-1");
+
+        verify(repository, timeout(2000)).reprogramar(eq(40L), eq(1), any(), anyString(), eq(EstadoAckPendiente.FALLIDO));
+    }
+
+    @Test
+    void ultimoIntentoFallidoPasaAFallido() {
+        hubResponde("m-5", withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        when(repository.tomarVencidos(any(), any(), anyInt())).thenReturn(List.of(pendiente(50L, "m-5", MAX_INTENTOS - 1)));
+
+        dispatcher.poll();
+
+        verify(repository, timeout(2000)).reprogramar(eq(50L), eq(MAX_INTENTOS), any(), anyString(), eq(EstadoAckPendiente.FALLIDO));
+    }
+
+    @Test
+    void pollRetomaConElBackoffDelIntentoSiguiente() {
+        hubResponde("m-6", withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        when(repository.tomarVencidos(any(), any(), anyInt())).thenReturn(List.of(pendiente(60L, "m-6", 2)));
+        LocalDateTime antes = LocalDateTime.now();
+
+        dispatcher.poll();
+
+        verify(repository, timeout(2000)).reprogramar(eq(60L), eq(3),
+                proximoEntre(antes, 4 * BACKOFF_INICIAL_MS), anyString(), eq(EstadoAckPendiente.PENDIENTE));
+    }
+
+    @Test
+    void backoffCreceExponencialConJitterYTope() {
+        for (int intentos = 1; intentos <= 40; intentos++) {
+            long base = Math.min(BACKOFF_INICIAL_MS << Math.min(intentos - 1, 30), BACKOFF_MAX_MS);
+            for (int i = 0; i < 50; i++) {
+                assertThat(dispatcher.backoffMs(intentos))
+                        .isBetween((long) (base * 0.8), (long) (base * 1.2));
+            }
+        }
+    }
+
+    @Test
+    void reintentableSoloParaErroresTransitorios() {
+        for (HttpStatus status : HttpStatus.values()) {
+            boolean esperado = status.is5xxServerError()
+                    || status == HttpStatus.REQUEST_TIMEOUT
+                    || status == HttpStatus.TOO_MANY_REQUESTS;
+            assertThat(AckDispatcher.reintentable(status)).as(status.toString()).isEqualTo(esperado);
+        }
+        assertThat(AckDispatcher.reintentable(null)).isTrue();
+    }
+
+    private void hubResponde(String msgId, ResponseCreator respuesta) {
+        hub.expect(requestTo(HUB + "/messages/" + msgId + "/ack"))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(respuesta);
+    }
+
+    private static AckPendiente pendiente(Long id, String msgId, int intentos) {
+        return AckPendiente.builder()
+                .id(id)
+                .messageId(msgId)
+                .subscriptionId("s-1")
+                .estado(EstadoAckPendiente.PENDIENTE)
+                .intentos(intentos)
+                .proximoIntento(LocalDateTime.now())
+                .creadoAt(LocalDateTime.now())
+                .build();
+    }
+
+    // Próximo intento dentro del ±20 % de jitter alrededor de la espera esperada
+    private static LocalDateTime proximoEntre(LocalDateTime antes, long esperaMs) {
+        return argThat(proximo -> proximo != null
+                && !proximo.isBefore(antes.plusNanos((long) (esperaMs * 0.8) * 1_000_000))
+                && !proximo.isAfter(LocalDateTime.now().plusNanos((long) (esperaMs * 1.2) * 1_000_000)));
+    }
+}
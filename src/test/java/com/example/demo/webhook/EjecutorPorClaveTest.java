@@ -0,0 +1,122 @@
+package com.example.demo.webhook;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EjecutorPorClaveTest {
+
+    private final EjecutorPorClave ejecutor = new EjecutorPorClave(new SimpleMeterRegistry(), 4);
+
+    @AfterEach
+    void apagar() {
+        ejecutor.shutdown();
+    }
+
+    @Test
+    void mismaClaveCorreEnOrdenDeEnvio() throws Exception {
+        List<String> claves = IntStream.range(0, 12).mapToObj(i -> "solicitud:" + i).toList();
+        Map<String, List<Integer>> ejecutados = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> tareas = new ArrayList<>();
+        // Envíos intercalados: 0..199 de cada clave, mezclados entre claves
+        for (int n = 0; n < 200; n++) {
+            for (String clave : claves) {
+                int orden = n;
+                tareas.add(ejecutor.ejecutar(clave, () -> {
+                    if (ThreadLocalRandom.current().nextInt(20) == 0) {
+                        dormir();
+                    }
+                    ejecutados.computeIfAbsent(clave, k -> Collections.synchronizedList(new ArrayList<>())).add(orden);
+                    return null;
+                }));
+            }
+        }
+        CompletableFuture.allOf(tareas.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+        List<Integer> esperado = IntStream.range(0, 200).boxed().toList();
+        assertThat(ejecutados).hasSize(claves.size());
+        ejecutados.forEach((clave, orden) -> assertThat(orden).as(clave).isEqualTo(esperado));
+    }
+
+    @Test
+    void mismaClaveNuncaCorreEnParalelo() throws Exception {
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        List<CompletableFuture<Void>> tareas = new ArrayList<>();
+        for (int n = 0; n < 100; n++) {
+            tareas.add(ejecutor.ejecutar("prestador:7", () -> {
+                maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+                dormir();
+                enCurso.decrementAndGet();
+                return null;
+            }));
+            // Otras claves y tareas sin clave en el medio
+            tareas.add(ejecutor.ejecutar("prestador:" + n, () -> null));
+            tareas.add(ejecutor.ejecutar(null, () -> null));
+        }
+        CompletableFuture.allOf(tareas.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+        assertThat(maximo.get()).isEqualTo(1);
+    }
+
+    @Test
+    void clavesDistintasCorrenEnParalelo() throws Exception {
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        List<CompletableFuture<Void>> tareas = new ArrayList<>();
+        // Claves elegidas para caer en particiones distintas
+        List<String> claves = IntStream.range(0, 1000).mapToObj(i -> "k" + i)
+                .filter(distintasParticiones(4))
+                .toList();
+        for (String clave : claves) {
+            tareas.add(ejecutor.ejecutar(clave, () -> {
+                maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+                dormir(50);
+                enCurso.decrementAndGet();
+                return null;
+            }));
+        }
+        CompletableFuture.allOf(tareas.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+
+        assertThat(claves).hasSize(4);
+        assertThat(maximo.get()).isGreaterThan(1);
+    }
+
+    private static Predicate<String> distintasParticiones(int particiones) {
+        boolean[] usadas = new boolean[particiones];
+        return clave -> {
+            int p = Math.floorMod(clave.hashCode(), particiones);
+            if (usadas[p]) {
+                return false;
+            }
+            usadas[p] = true;
+            return true;
+        };
+    }
+
+    private static void dormir() {
+        dormir(1);
+    }
+
+    private static void dormir(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
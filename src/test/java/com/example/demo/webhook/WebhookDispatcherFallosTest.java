@@ -0,0 +1,102 @@
+package com.example.demo.webhook;
+
+import com.example.demo.repository.WebhookDeadLetterRepository;
+import com.example.demo.service.BacklogTrigger;
+import com.example.demo.service.CalificacionService;
+import com.example.demo.service.CotizacionService;
+import com.example.demo.service.HabilidadSyncService;
+import com.example.demo.service.MatchingSubscriptionService;
+import com.example.demo.service.PrestadorSyncService;
+import com.example.demo.service.RubroSyncService;
+import com.example.demo.service.SolicitudService;
+import com.example.demo.service.WebhookDeadLetterService;
+import com.example.demo.service.ZonaSyncService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Qué fallos de los handlers quedan en webhook_dead_letter: los rechazos de los servicios
+ * (por ejemplo, un prestador que todavía no se sincronizó) sí, para reintentarlos; un payload
+ * que no mapea al DTO no.
+ */
+class WebhookDispatcherFallosTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CalificacionService calificacionService = mock(CalificacionService.class);
+    private final SolicitudService solicitudService = mock(SolicitudService.class);
+    private final ZonaSyncService zonaSyncService = mock(ZonaSyncService.class);
+    private final WebhookDeadLetterRepository deadLetterRepository = mock(WebhookDeadLetterRepository.class);
+    private WebhookDispatcher dispatcher;
+    private WebhookDeadLetterService deadLetterService;
+
+    @BeforeEach
+    void crear() {
+        dispatcher = new WebhookDispatcher(mock(MatchingSubscriptionService.class), solicitudService,
+                mock(BacklogTrigger.class), mock(CotizacionService.class), calificacionService,
+                mock(RubroSyncService.class), zonaSyncService, mock(HabilidadSyncService.class),
+                objectMapper, mock(PrestadorSyncService.class), new WebhookRoutingTable(), mock(AckDispatcher.class));
+        deadLetterService = new WebhookDeadLetterService(deadLetterRepository);
+        ReflectionTestUtils.setField(deadLetterService, "backoffInicialMs", 10_000L);
+        ReflectionTestUtils.setField(deadLetterService, "backoffMaxMs", 3_600_000L);
+    }
+
+    @Test
+    void calificacionDePrestadorDesconocidoQuedaEnDeadLetter() throws Exception {
+        doThrow(new ResponseStatusException(HttpStatus.NOT_FOUND, "Prestador no encontrado: 77"))
+                .when(calificacionService).appendBatchItem(any());
+
+        Map<String, Object> resultado = dispatcher.despachar(mensaje(
+                "{\"topic\":\"calificacion\",\"eventName\":\"creada\",\"payload\":{\"prestador_id\":77,\"puntuaciones\":[5]}}"));
+        deadLetterService.registrarFallos(10L, WebhookDispatcher.fallos(resultado));
+
+        assertThat(resultado).containsEntry("calificacionProcesada", false);
+        assertThat(resultado.get("calificacionWarnings")).isEqualTo(List.of("Prestador no encontrado: 77"));
+        assertThat(WebhookDispatcher.fallos(resultado)).containsOnlyKeys(WebhookRoute.CALIFICACION);
+        verify(deadLetterRepository).registrar(eq(10L), eq("CALIFICACION"), contains("Prestador no encontrado"), any(), any());
+    }
+
+    @Test
+    void cancelacionDeSolicitudDesconocidaQuedaEnDeadLetter() throws Exception {
+        doThrow(new IllegalArgumentException("Solicitud no encontrada")).when(solicitudService).cancelarPorId(5L);
+
+        Map<String, Object> resultado = dispatcher.despachar(mensaje(
+                "{\"topic\":\"solicitud\",\"eventName\":\"cancelada\",\"payload\":{\"solicitud_id\":5}}"));
+
+        assertThat(WebhookDispatcher.fallos(resultado)).containsOnlyKeys(WebhookRoute.SOLICITUD_CANCELADA);
+    }
+
+    @Test
+    void payloadQueNoMapeaNoQuedaEnDeadLetter() throws Exception {
+        Map<String, Object> resultado = dispatcher.despachar(mensaje(
+                "{\"topic\":\"zona\",\"eventName\":\"alta\",\"payload\":{\"id\":\"no-es-un-numero\"}}"));
+        deadLetterService.registrarFallos(11L, WebhookDispatcher.fallos(resultado));
+
+        assertThat(resultado).containsEntry("zonaProcesada", false).containsKey("zonaWarnings");
+        assertThat(WebhookDispatcher.fallos(resultado)).isEmpty();
+        verify(zonaSyncService, never()).upsertDesdeDTO(any());
+        verify(deadLetterRepository, never()).registrar(anyLong(), anyString(), anyString(), any(), any());
+    }
+
+    private WebhookMensaje mensaje(String json) throws Exception {
+        return WebhookMensaje.leer(json.getBytes(StandardCharsets.UTF_8), objectMapper);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.demo.webhook;
+
+import com.example.demo.dto.SolicitudesCreadasDTO;
+import com.example.demo.entity.Solicitud;
+import com.example.demo.service.BacklogTrigger;
+import com.example.demo.service.CalificacionService;
+import com.example.demo.service.CotizacionService;
+import com.example.demo.service.HabilidadSyncService;
+import com.example.demo.service.MatchingSubscriptionService;
+import com.example.demo.service.PrestadorSyncService;
+import com.example.demo.service.RubroSyncService;
+import com.example.demo.service.SolicitudService;
+import com.example.demo.service.ZonaSyncService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * {@link WebhookDispatcher#despacharLote}: las altas se agrupan solo mientras son consecutivas,
+ * el resto del lote corre en orden, y una alta inválida no hace fallar a las demás.
+ */
+class WebhookDispatcherLoteTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SolicitudService solicitudService = mock(SolicitudService.class);
+    private final List<List<Long>> llamadas = new ArrayList<>();
+    private WebhookDispatcher dispatcher;
+
+    @BeforeEach
+    void crear() {
+        dispatcher = new WebhookDispatcher(mock(MatchingSubscriptionService.class), solicitudService,
+                mock(BacklogTrigger.class), mock(CotizacionService.class), mock(CalificacionService.class),
+                mock(RubroSyncService.class), mock(ZonaSyncService.class), mock(HabilidadSyncService.class),
+                objectMapper, mock(PrestadorSyncService.class), new WebhookRoutingTable(), mock(AckDispatcher.class));
+        // La solicitud 2 es inválida: hace fallar la transacción en la que esté
+        when(solicitudService.crearDesdeEventos(anyList())).thenAnswer(inv -> {
+            List<SolicitudesCreadasDTO> eventos = inv.getArgument(0);
+            List<Long> ids = eventos.stream().map(SolicitudesCreadasDTO::getSolicitudId).toList();
+            llamadas.add(ids);
+            if (ids.contains(2L)) {
+                throw new IllegalStateException("rubro inexistente");
+            }
+            return ids.stream().map(id -> Solicitud.builder().id(id).build()).toList();
+        });
+    }
+
+    @Test
+    void respetaElOrdenYAislaLasAltasQueFallan() throws Exception {
+        List<WebhookMensaje> lote = List.of(
+                alta("1"), alta("2"), alta("3"),
+                mensaje("{\"topic\":\"solicitud\",\"eventName\":\"cancelada\",\"payload\":{\"solicitud_id\":1}}"),
+                alta("4"),
+                mensaje("{\"topic\":\"solicitud\",\"eventName\":\"creada\",\"payload\":{\"titulo\":\"sin id\"}}"),
+                alta("5"));
+        Map<Integer, Exception> errores = new HashMap<>();
+
+        List<Map<String, Object>> resultados = dispatcher.despacharLote(lote, errores);
+
+        // Tramo 1-3 falla junto y se reintenta de a una; la cancelación corre después de las altas previas
+        assertThat(llamadas).containsExactly(List.of(1L, 2L, 3L), List.of(1L), List.of(2L), List.of(3L),
+                List.of(4L), List.of(5L));
+        InOrder orden = inOrder(solicitudService);
+        orden.verify(solicitudService).crearDesdeEventos(List.of(dto(1L)));
+        orden.verify(solicitudService).cancelarPorId(1L);
+        orden.verify(solicitudService).crearDesdeEventos(List.of(dto(4L)));
+
+        assertThat(errores).isEmpty();
+        assertThat(resultados).hasSize(lote.size());
+        for (int i : new int[]{0, 2, 4, 6}) {
+            assertThat(resultados.get(i)).containsEntry("solicitudCreada", true);
+        }
+        assertThat(resultados.get(0)).containsEntry("solicitudId", 1L);
+        assertThat(WebhookDispatcher.fallos(resultados.get(0))).isEmpty();
+        assertThat(resultados.get(1)).containsEntry("solicitudCreada", false);
+        assertThat(WebhookDispatcher.fallos(resultados.get(1))).containsOnlyKeys(WebhookRoute.SOLICITUD_CREADA);
+        assertThat(resultados.get(3)).containsEntry("solicitudCancelada", true);
+        assertThat(resultados.get(5)).containsEntry("solicitudCreada", false)
+                .containsEntry("solicitudCreadaWarnings", List.of("solicitud_id ausente en evento de alta"));
+    }
+
+    @Test
+    void altasConsecutivasVanEnUnaSolaLlamada() throws Exception {
+        List<Map<String, Object>> resultados = dispatcher.despacharLote(
+                List.of(alta("10"), alta("11"), alta("12")), new HashMap<>());
+
+        assertThat(llamadas).containsExactly(List.of(10L, 11L, 12L));
+        assertThat(resultados).allSatisfy(r -> assertThat(r).containsEntry("solicitudCreada", true));
+    }
+
+    private WebhookMensaje alta(String solicitudId) throws Exception {
+        return mensaje("{\"topic\":\"solicitud\",\"eventName\":\"creada\",\"msgId\":\"m-" + solicitudId
+                + "\",\"payload\":{\"solicitud_id\":" + solicitudId + "}}");
+    }
+
+    private WebhookMensaje mensaje(String json) throws Exception {
+        return WebhookMensaje.leer(json.getBytes(StandardCharsets.UTF_8), objectMapper);
+    }
+
+    private static SolicitudesCreadasDTO dto(Long solicitudId) {
+        SolicitudesCreadasDTO dto = new SolicitudesCreadasDTO();
+        dto.setSolicitudId(solicitudId);
+        return dto;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.service.WebhookEventService;
+import com.example.demo.service.WebhookEventService.EventoLote;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * El hilo escritor corre de verdad; el servicio, el worker y la caché de duplicados son
+ * mocks. Los lotes se copian al recibirlos porque el escritor reutiliza la lista.
+ */
+class WebhookEscrituraDiferidaTest {
+
+    private final WebhookEventService service = mock(WebhookEventService.class);
+    private final WebhookEventWorker worker = mock(WebhookEventWorker.class);
+    private final WebhookDedupe dedupe = mock(WebhookDedupe.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<List<String>> lotes = Collections.synchronizedList(new ArrayList<>());
+    private WebhookEscrituraDiferida escritura;
+
+    @AfterEach
+    void apagar() throws InterruptedException {
+        if (escritura != null) {
+            escritura.shutdown();
+        }
+    }
+
+    @Test
+    void guardaAlJuntarLaTanda() {
+        registrarLotes();
+        escritura = crear(10, 3, 1_000, "");
+        long inicio = System.nanoTime();
+
+        for (int i = 1; i <= 3; i++) {
+            assertThat(escritura.encolar(evento("m-" + i))).isTrue();
+        }
+
+        verify(service, timeout(2000)).guardarPendientes(anyList());
+        // Sin esperar el intervalo de 1 s
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)).isLessThan(800);
+        assertThat(lotes).containsExactly(List.of("m-1", "m-2", "m-3"));
+        verify(worker, timeout(2000)).despertar();
+    }
+
+    @Test
+    void guardaAlVencerElIntervalo() {
+        registrarLotes();
+        escritura = crear(10, 100, 200, "");
+        long inicio = System.nanoTime();
+
+        escritura.encolar(evento("m-1"));
+        escritura.encolar(evento("m-2"));
+
+        verify(service, timeout(2000)).guardarPendientes(anyList());
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)).isGreaterThanOrEqualTo(200);
+        assertThat(lotes).containsExactly(List.of("m-1", "m-2"));
+    }
+
+    @Test
+    void loteConDuplicadoSeGuardaDeAUno() {
+        doThrow(new DataIntegrityViolationException("ux_webhook_event_mensaje"))
+                .when(service).guardarPendientes(anyList());
+        when(service.storePending(any(), any(), eq("m-1"), any(), any())).thenReturn(Optional.of(new WebhookEvent()));
+        when(service.storePending(any(), any(), eq("m-2"), any(), any())).thenReturn(Optional.empty());
+        when(service.storePending(any(), any(), eq("m-3"), any(), any())).thenThrow(new IllegalStateException("sin conexión"));
+        escritura = crear(10, 3, 1_000, "");
+
+        escritura.encolar(evento("m-1"));
+        escritura.encolar(evento("m-2"));
+        escritura.encolar(evento("m-3"));
+
+        verify(worker, timeout(2000)).despertar();
+        verify(dedupe).registrar("m-1", "s-1");
+        verify(dedupe).duplicadoEnBase("m-2", "s-1");
+        verify(dedupe).olvidar("m-3", "s-1");
+        verify(dedupe, never()).registrar(eq("m-2"), anyString());
+        verify(dedupe, never()).registrar(eq("m-3"), anyString());
+    }
+
+    @Test
+    void seRegistraEnDedupeRecienAlQuedarGuardado() throws Exception {
+        CountDownLatch guardando = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        doAnswer(inv -> {
+            guardando.countDown();
+            liberar.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(service).guardarPendientes(anyList());
+        escritura = crear(10, 1, 1_000, "");
+
+        escritura.encolar(evento("m-1"));
+
+        assertThat(guardando.await(2, TimeUnit.SECONDS)).isTrue();
+        verify(dedupe, after(100).never()).registrar(anyString(), anyString());
+        liberar.countDown();
+        verify(dedupe, timeout(2000)).registrar("m-1", "s-1");
+        InOrder orden = inOrder(service, dedupe, worker);
+        orden.verify(service).guardarPendientes(anyList());
+        orden.verify(dedupe).registrar("m-1", "s-1");
+        orden.verify(worker, timeout(2000)).despertar();
+    }
+
+    @Test
+    void bufferLlenoVaAlCaminoSincronico() throws Exception {
+        CountDownLatch guardando = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        doAnswer(inv -> {
+            guardando.countDown();
+            liberar.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(service).guardarPendientes(anyList());
+        escritura = crear(1, 1, 1_000, "");
+
+        // El primero lo toma el escritor (que queda bloqueado), el segundo ocupa el buffer
+        assertThat(escritura.encolar(evento("m-1"))).isTrue();
+        assertThat(guardando.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(escritura.encolar(evento("m-2"))).isTrue();
+        assertThat(escritura.encolar(evento("m-3"))).isFalse();
+        assertThat(registry.get("webhooks.write-behind.desbordes").counter().count()).isEqualTo(1.0);
+
+        liberar.countDown();
+        verify(dedupe, timeout(2000)).registrar("m-2", "s-1");
+        verify(dedupe, never()).registrar(eq("m-3"), anyString());
+    }
+
+    @Test
+    void apagadaOTopicSincronicoNoEncolan() {
+        escritura = crear(10, 1, 1_000, "solicitud, pago");
+        assertThat(escritura.encolar(new EventoLote("pago", "emitido", "m-1", "s-1", "{}"))).isFalse();
+        assertThat(escritura.encolar(new EventoLote("zona", "alta", "m-2", "s-1", "{}"))).isTrue();
+
+        WebhookEscrituraDiferida apagada = new WebhookEscrituraDiferida(service, worker, dedupe, new SimpleMeterRegistry(),
+                false, 10, 1, 10, "");
+        assertThat(apagada.encolar(evento("m-3"))).isFalse();
+    }
+
+    private WebhookEscrituraDiferida crear(int capacidad, int tanda, long intervaloMs, String topicsSincronicos) {
+        return new WebhookEscrituraDiferida(service, worker, dedupe, registry,
+                true, capacidad, tanda, intervaloMs, topicsSincronicos);
+    }
+
+    private void registrarLotes() {
+        doAnswer(inv -> {
+            List<EventoLote> lote = inv.getArgument(0);
+            lotes.add(lote.stream().map(EventoLote::messageId).toList());
+            return null;
+        }).when(service).guardarPendientes(anyList());
+    }
+
+    private static EventoLote evento(String messageId) {
+        return new EventoLote("zona", "alta", messageId, "s-1", "{\"parsed\":{}}");
+    }
+}
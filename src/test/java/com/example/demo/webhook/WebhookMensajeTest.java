@@ -0,0 +1,190 @@
+package com.example.demo.webhook;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * La lectura en streaming del sobre tiene que dar lo mismo que la extracción sobre el Map
+ * completo que hacía WebhookDispatcher antes (copiada abajo tal cual).
+ */
+class WebhookMensajeTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{\"topic\":\"search.solicitud.creada\",\"eventName\":\"creada\",\"msgId\":\"m-1\",\"subscriptionId\":\"s-1\",\"payload\":{\"solicitud_id\":5}}",
+            // Fallbacks topico / evento / messageId
+            "{\"topico\":\"cotizacion\",\"evento\":\"aceptada\",\"messageId\":\"m-2\",\"cuerpo\":{\"id\":1}}",
+            // topic/eventName desde destination, channel si no hay topic
+            "{\"destination\":{\"topic\":\"zona\",\"eventName\":\"alta\"},\"msgId\":\"m-3\"}",
+            "{\"destination\":{\"channel\":\"rubro\",\"eventName\":\"modificacion\"}}",
+            "{\"topic\":\"user\",\"destination\":{\"topic\":\"otro\",\"eventName\":\"created\"}}",
+            // Cadenas en blanco: caen al siguiente candidato
+            "{\"topic\":\"  \",\"topico\":\"calificacion\",\"eventName\":\"\",\"evento\":\"creada\",\"msgId\":\" \",\"messageId\":\"m-4\",\"subscriptionId\":\"\"}",
+            "{\"topic\":\"\",\"destination\":{\"topic\":\" \",\"channel\":\"pedido\"}}",
+            // Ids numéricos, booleanos, decimales, enteros grandes y objetos
+            "{\"msgId\":12345,\"subscriptionId\":99999999999,\"topic\":true,\"eventName\":1.5}",
+            "{\"msgId\":123456789012345678901234567890,\"topic\":{\"a\":1},\"eventName\":[1,2]}",
+            "{\"destination\":{\"topic\":7,\"eventName\":false}}",
+            // Campos repetidos: gana el último
+            "{\"topic\":\"a\",\"topic\":\"b\",\"msgId\":\"1\",\"msgId\":null,\"messageId\":\"2\"}",
+            "{\"payload\":{\"id\":1},\"payload\":{\"id\":2}}",
+            "{\"payload\":{\"id\":1},\"payload\":\"texto\",\"cuerpo\":{\"id\":3}}",
+            "{\"destination\":{\"topic\":\"x\"},\"destination\":{\"eventName\":\"y\"}}",
+            "{\"destination\":{\"topic\":\"x\"},\"destination\":\"nada\"}",
+            // Payload que no es objeto
+            "{\"topic\":\"solicitud\",\"payload\":[1,2,3]}",
+            "{\"topic\":\"solicitud\",\"payload\":\"texto\",\"cuerpo\":null}",
+            "{\"topic\":\"solicitud\",\"payload\":null,\"cuerpo\":{\"id\":9}}",
+            "{\"topic\":\"solicitud\",\"payload\":42}",
+            // Sin nada del sobre y con campos anidados que no interesan
+            "{}",
+            "{\"otro\":{\"topic\":\"no\",\"payload\":{\"x\":1}},\"lista\":[{\"msgId\":\"no\"}]}",
+            "  {\"topic\":\"zona\",\"eventName\":\"alta\"}"
+    })
+    void sobreYPayloadIgualesQueConElMap(String json) throws Exception {
+        WebhookMensaje mensaje = WebhookMensaje.leer(json.getBytes(StandardCharsets.UTF_8), objectMapper);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = objectMapper.readValue(json, Map.class);
+        assertThat(mensaje.sobre()).isEqualTo(ExtraccionAnterior.sobre(map));
+        assertThat(mensaje.payloadSection()).isEqualTo(ExtraccionAnterior.payloadSection(map));
+        assertThat(mensaje.tienePayload()).isEqualTo(ExtraccionAnterior.payloadSection(map) != null);
+        assertThat(mensaje.root()).isEqualTo(map);
+        assertThat(mensaje.esJson()).isTrue();
+    }
+
+    @ParameterizedTest
+    // Como antes: espacios al final también hacen que no se lo tome como JSON
+    @ValueSource(strings = {"", "   ", "hola", "topic=solicitud&eventName=creada", "{sin cerrar",
+            "{\"topic\":\"zona\"}  "})
+    void cuerpoNoJsonQuedaVacio(String cuerpo) throws Exception {
+        WebhookMensaje mensaje = WebhookMensaje.leer(cuerpo.getBytes(StandardCharsets.UTF_8), objectMapper);
+
+        assertThat(mensaje.esJson()).isFalse();
+        assertThat(mensaje.sobre()).isEqualTo(new WebhookMensaje.Sobre(null, null, null, null));
+        assertThat(mensaje.tienePayload()).isFalse();
+        assertThat(mensaje.root()).isEmpty();
+        assertThat(mensaje.rawBody()).isEqualTo(cuerpo);
+    }
+
+    @Test
+    void jsonQueNoEsObjetoFalla() {
+        assertThatThrownBy(() -> WebhookMensaje.leer("[1,2]".getBytes(StandardCharsets.UTF_8), objectMapper))
+                .isInstanceOf(JsonMappingException.class);
+    }
+
+    @Test
+    void payloadSeBindeaDirectoAlDto() throws Exception {
+        String json = "{\"topic\":\"zona\",\"payload\":{\"id\":3,\"nombre\":\"Norte\"}}";
+        WebhookMensaje mensaje = WebhookMensaje.leer(json.getBytes(StandardCharsets.UTF_8), objectMapper);
+
+        Map<?, ?> dto = mensaje.payloadComo(objectMapper.readerFor(Map.class));
+        assertThat(dto).isEqualTo(Map.of("id", 3, "nombre", "Norte"));
+    }
+
+    @Test
+    void desdeAlmacenadoReleeElMensajeOriginal() throws Exception {
+        String json = "{\"topic\":\"zona\",\"msgId\":\"m-9\",\"payload\":{\"id\":3}}";
+        WebhookMensaje original = WebhookMensaje.leer(json.getBytes(StandardCharsets.UTF_8), objectMapper);
+        String almacenado = "{\"parsed\":" + json + ",\"headers\":{}}";
+
+        WebhookMensaje releido = WebhookMensaje.desdeAlmacenado(objectMapper.readTree(almacenado), objectMapper);
+
+        assertThat(releido.sobre()).isEqualTo(original.sobre());
+        assertThat(releido.payloadSection()).isEqualTo(original.payloadSection());
+    }
+
+    @Test
+    void separarLoteDevuelveCadaElementoCompleto() throws Exception {
+        String lote = "[ {\"topic\":\"zona\",\"payload\":{\"ids\":[1,2]}} ,\"texto, con coma\",42,-1.5e3,"
+                + "true,null,[{\"a\":\"]\"}],{}, \"\u00f1and\u00fa\" ]";
+
+        List<String> elementos = WebhookMensaje.separarLote(lote.getBytes(StandardCharsets.UTF_8), objectMapper)
+                .stream().map(b -> new String(b, StandardCharsets.UTF_8)).toList();
+
+        assertThat(elementos).containsExactly(
+                "{\"topic\":\"zona\",\"payload\":{\"ids\":[1,2]}}", "\"texto, con coma\"", "42", "-1.5e3",
+                "true", "null", "[{\"a\":\"]\"}]", "{}", "\"\u00f1and\u00fa\"");
+    }
+
+    @Test
+    void separarLoteRechazaLoQueNoEsArray() {
+        assertThatThrownBy(() -> WebhookMensaje.separarLote("{\"topic\":\"zona\"}".getBytes(StandardCharsets.UTF_8), objectMapper))
+                .isInstanceOf(JsonMappingException.class);
+    }
+
+    /** Extracción del sobre sobre el Map completo, como en WebhookDispatcher antes del streaming. */
+    private static final class ExtraccionAnterior {
+
+        static WebhookMensaje.Sobre sobre(Map<String, Object> safePayload) {
+            String topic = firstNonNull(
+                    extractString(safePayload, "topic"),
+                    firstNonNull(
+                            extractString(safePayload, "topico"),
+                            firstNonNull(
+                                    extractNestedString(safePayload, "destination", "topic"),
+                                    extractNestedString(safePayload, "destination", "channel"))));
+            String eventName = firstNonNull(
+                    extractString(safePayload, "eventName"),
+                    firstNonNull(
+                            extractString(safePayload, "evento"),
+                            extractNestedString(safePayload, "destination", "eventName")));
+            String messageId = firstNonNull(
+                    extractString(safePayload, "msgId"),
+                    extractString(safePayload, "messageId"));
+            String subscriptionId = extractString(safePayload, "subscriptionId");
+            return new WebhookMensaje.Sobre(topic, eventName, messageId, subscriptionId);
+        }
+
+        static Map<String, Object> payloadSection(Map<String, Object> safePayload) {
+            Map<String, Object> payloadSection = extractMap(safePayload, "payload");
+            return payloadSection != null ? payloadSection : extractMap(safePayload, "cuerpo");
+        }
+
+        private static String extractString(Map<String, Object> payload, String key) {
+            Object value = payload.get(key);
+            if (value == null) return null;
+            if (value instanceof String str) {
+                return str.isBlank() ? null : str;
+            }
+            return value.toString();
+        }
+
+        private static String extractNestedString(Map<String, Object> payload, String key, String nestedKey) {
+            Object raw = payload.get(key);
+            if (raw instanceof Map<?, ?> nested) {
+                Object nestedValue = nested.get(nestedKey);
+                if (nestedValue instanceof String str) {
+                    return str.isBlank() ? null : str;
+                }
+                return nestedValue != null ? nestedValue.toString() : null;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Map<String, Object> extractMap(Map<String, Object> payload, String key) {
+            Object value = payload.get(key);
+            if (value instanceof Map<?, ?> map) {
+                return (Map<String, Object>) map;
+            }
+            return null;
+        }
+
+        private static String firstNonNull(String a, String b) {
+            return a != null ? a : b;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.demo.webhook;
+
+import com.example.demo.entity.WebhookEvent;
+import com.example.demo.service.WebhookDeadLetterService;
+import com.example.demo.service.WebhookEventService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * El replay solo vuelve a correr las rutas reproducibles: calificaciones y cotizaciones
+ * aceptadas o enviadas se omiten para no duplicar sus efectos.
+ */
+class WebhookReplayTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final WebhookEventService eventService = mock(WebhookEventService.class);
+    private final WebhookDispatcher dispatcher = mock(WebhookDispatcher.class);
+    private final EjecutorPorClave ejecutor = new EjecutorPorClave(new SimpleMeterRegistry(), 2);
+    private final WebhookRoutingTable routingTable = new WebhookRoutingTable();
+
+    @AfterEach
+    void apagar() {
+        ejecutor.shutdown();
+    }
+
+    @Test
+    void omiteLasRutasQueNoSonReproducibles() throws Exception {
+        List<WebhookEvent> pagina = List.of(
+                evento(1L, "calificacion", "{\"topic\":\"calificacion\",\"eventName\":\"creada\",\"payload\":{\"prestador_id\":3,\"puntuaciones\":[5]}}"),
+                evento(2L, "zona", "{\"topic\":\"zona\",\"eventName\":\"alta\",\"payload\":{\"id\":4,\"nombre\":\"Sur\"}}"),
+                evento(3L, "cotizacion", "{\"topic\":\"cotizacion\",\"eventName\":\"aceptada\",\"payload\":{\"solicitud_id\":8}}"),
+                evento(4L, "solicitud", "{\"topic\":\"solicitud\",\"eventName\":\"cancelada\",\"payload\":{\"solicitud_id\":8}}"));
+        when(eventService.paraReplay(any(), eq(0L), any(), anyInt())).thenReturn(pagina);
+        when(eventService.paraReplay(any(), eq(4L), any(), anyInt())).thenReturn(List.of());
+        when(dispatcher.rutas(any())).thenAnswer(inv -> {
+            WebhookMensaje m = inv.getArgument(0);
+            return routingTable.resolver(m.sobre().topic(), m.sobre().eventName());
+        });
+        when(dispatcher.despachar(any(), any())).thenReturn(new HashMap<>());
+        WebhookReplay replay = new WebhookReplay(eventService, mock(WebhookDeadLetterService.class), dispatcher,
+                ejecutor, objectMapper, 4, 100, 0);
+
+        replay.iniciar(new WebhookReplay.Pedido(null, null, null, null, null, null, false, 0));
+        Map<String, Object> estado = esperarFin(replay);
+
+        verify(dispatcher, timeout(5000)).despachar(any(), eq(EnumSet.of(WebhookRoute.ZONA_ALTA)));
+        verify(dispatcher).despachar(any(), eq(EnumSet.of(WebhookRoute.SOLICITUD_CANCELADA)));
+        verify(dispatcher, never()).despachar(any(), eq(EnumSet.of(WebhookRoute.CALIFICACION)));
+        verify(dispatcher, never()).despachar(any(), eq(EnumSet.of(WebhookRoute.COTIZACION_ACEPTADA)));
+        verify(dispatcher, never()).despachar(any());
+        assertThat(estado).containsEntry("estado", WebhookReplay.EstadoReplay.TERMINADO)
+                .containsEntry("leidos", 4L)
+                .containsEntry("despachados", 2L)
+                .containsEntry("omitidos", Map.of(WebhookRoute.CALIFICACION, 1L, WebhookRoute.COTIZACION_ACEPTADA, 1L));
+    }
+
+    @Test
+    void rutasReproducibles() {
+        assertThat(EnumSet.allOf(WebhookRoute.class).stream().filter(r -> !r.reproducible()))
+                .containsExactlyInAnyOrder(WebhookRoute.CALIFICACION, WebhookRoute.COTIZACION_ACEPTADA,
+                        WebhookRoute.PEDIDO_COTIZACION_ENVIADA);
+    }
+
+    private static WebhookEvent evento(Long id, String topic, String json) {
+        return WebhookEvent.builder().id(id).topic(topic).rawPayload("{\"parsed\":" + json + ",\"headers\":{}}").build();
+    }
+
+    private static Map<String, Object> esperarFin(WebhookReplay replay) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            Map<String, Object> estado = replay.estado();
+            if (estado.get("estado") != WebhookReplay.EstadoReplay.EN_CURSO) {
+                return estado;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("El replay no terminó: " + replay.estado());
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.demo.webhook;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link WebhookRoutingTable#resolver} tiene que dar las mismas rutas que las cadenas de
+ * topicMatches/eventMatches que tenía el controller antes de la tabla (copiadas abajo tal cual).
+ */
+class WebhookRoutingTableTest {
+
+    private static final List<String> TOPICOS = List.of(
+            "search.solicitud.creada", "solicitud", "SOLICITUD", "matching.solicitud",
+            "cotizacion", "cotizaciones", "matching.cotizacion.aceptada", "x.cotizaciones",
+            "pedido", "pedidos", "catalogue.pedidos.cotizacion_enviada", "matching.pedidos.cotizacion_enviada",
+            "calificacion", "calificaciones", "matching.calificacion.creada",
+            "user", "users", "Users", "matching.user.created", "a.user",
+            "habilidad", "catalogue.habilidad.alta", "matching.habilidad.alta",
+            "catalogue.habilidad.modificacion", "matching.habilidad.modificacion",
+            "rubro", "catalogue.rubro.alta", "matching.rubro.alta", "catalogue.rubro.modificacion",
+            "zona", "catalogue.zona.alta", "matching.zona.alta", "matching.zona.modificacion",
+            "otro", "otro.topic", "", "   ", " solicitud ");
+
+    private static final List<String> EVENTOS = List.of(
+            "creada", "solicitud.creada", "CREADA", "cancelada", "solicitud.cancelada", "cancelada_solicitud",
+            "solicitud_cancelada", "matching/solicitud.cancelada", "aceptada", "cotizacion.aceptada",
+            "aceptada_cotizacion", "rechazada", "cotizacion_rechazada", "cotizacion_enviada", "pedido.cotizacion_enviada",
+            "creado", "recibida", "recibidas", "actualizada", "actualizacion", "calificacion.creada",
+            "created", "user_created", "created_user", "updated", "user.updated", "deactivated",
+            "user_deactivated", "rejected", "rejected_user", "alta", "habilidad.alta", "alta_habilidad",
+            "modificacion", "alta_modificacion", "habilidad_modificacion", "rubro.alta", "rubro_modificacion",
+            "zona.alta", "modificacion_zona", "otro", "a.b.c", "a_b_c", "x/y/alta", "", " ", "solicitud");
+
+    @Test
+    void resuelveIgualQueLasReglasAnteriores() {
+        WebhookRoutingTable tabla = new WebhookRoutingTable();
+        List<String> topicos = new ArrayList<>(TOPICOS);
+        topicos.add(null);
+        List<String> eventos = new ArrayList<>(EVENTOS);
+        eventos.add(null);
+        for (String topic : topicos) {
+            for (String eventName : eventos) {
+                assertThat(tabla.resolver(topic, eventName))
+                        .as("topic=%s eventName=%s", topic, eventName)
+                        .isEqualTo(ReglasAnteriores.rutas(topic, eventName));
+            }
+        }
+    }
+
+    @Test
+    void altaModificacionDisparaAmbasRutasDeHabilidad() {
+        assertThat(new WebhookRoutingTable().resolver("habilidad", "alta_modificacion"))
+                .containsExactlyInAnyOrder(WebhookRoute.HABILIDAD_ALTA, WebhookRoute.HABILIDAD_MODIFICACION);
+    }
+
+    @Test
+    void normalizaDominioYEvento() {
+        assertThat(WebhookRoutingTable.normalizeTopicDomain("catalogue.rubro.alta")).isEqualTo("rubro");
+        assertThat(WebhookRoutingTable.normalizeTopicDomain("x.users")).isEqualTo("users");
+        assertThat(WebhookRoutingTable.normalizeTopicDomain("  ")).isNull();
+        assertThat(WebhookRoutingTable.normalizeEventName("matching/solicitud.cancelada")).isEqualTo("cancelada");
+        assertThat(WebhookRoutingTable.normalizeEventName("created_user")).isEqualTo("created");
+    }
+
+    /**
+     * Costo de resolver contra las cadenas anteriores, sobre la misma grilla de topics y
+     * eventos. Los números quedan en la salida del test; la tabla tiene que ser más rápida.
+     */
+    @Test
+    void medicionDeRuteo() {
+        WebhookRoutingTable tabla = new WebhookRoutingTable();
+        int rondas = 30;
+        // Calentamiento del JIT
+        medir(() -> recorrer(tabla::resolver), 10);
+        medir(() -> recorrer(ReglasAnteriores::rutas), 10);
+
+        long nanosTabla = medir(() -> recorrer(tabla::resolver), rondas);
+        long nanosAnteriores = medir(() -> recorrer(ReglasAnteriores::rutas), rondas);
+        long resoluciones = (long) rondas * TOPICOS.size() * EVENTOS.size();
+        System.out.printf("Ruteo de %d mensajes: %.0f ns por mensaje con la tabla, %.0f ns con las reglas anteriores (%.1fx)%n",
+                resoluciones, (double) nanosTabla / resoluciones, (double) nanosAnteriores / resoluciones,
+                (double) nanosAnteriores / nanosTabla);
+
+        assertThat(nanosTabla).isLessThan(nanosAnteriores);
+    }
+
+    private static int recorrer(BiFunction<String, String, Set<WebhookRoute>> resolver) {
+        int rutas = 0;
+        for (String topic : TOPICOS) {
+            for (String eventName : EVENTOS) {
+                rutas += resolver.apply(topic, eventName).size();
+            }
+        }
+        return rutas;
+    }
+
+    // Mejor de cada ronda, para que una pausa del GC no decida el resultado
+    private static long medir(IntSupplier corrida, int rondas) {
+        long total = 0;
+        int sumidero = 0;
+        for (int r = 0; r < rondas; r++) {
+            long mejor = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                long inicio = System.nanoTime();
+                sumidero += corrida.getAsInt();
+                mejor = Math.min(mejor, System.nanoTime() - inicio);
+            }
+            total += mejor;
+        }
+        assertThat(sumidero).isPositive();
+        return total;
+    }
+
+    /** Ruteo del controller antes de WebhookRoutingTable. */
+    private static final class ReglasAnteriores {
+
+        static Set<WebhookRoute> rutas(String topic, String eventName) {
+            Set<WebhookRoute> rutas = EnumSet.noneOf(WebhookRoute.class);
+            boolean isSolicitudCreadaEvento = eventName != null
+                    && (eventName.equalsIgnoreCase("creada") || eventName.equalsIgnoreCase("solicitud.creada"));
+            boolean isSolicitudCreadaTopic = topic != null
+                    && (topic.equalsIgnoreCase("search.solicitud.creada") || topic.equalsIgnoreCase("solicitud"));
+            if (isSolicitudCreadaEvento && isSolicitudCreadaTopic) {
+                rutas.add(WebhookRoute.SOLICITUD_CREADA);
+            }
+            if (eventMatches(eventName, "solicitud", "cancelada", "solicitud.cancelada")) {
+                rutas.add(WebhookRoute.SOLICITUD_CANCELADA);
+            }
+            if (topicMatches(topic, "cotizacion", "cotizaciones")
+                    && eventMatches(eventName, "cotizacion", "aceptada", "cotizacion.aceptada")) {
+                rutas.add(WebhookRoute.COTIZACION_ACEPTADA);
+            }
+            if (topicMatches(topic, "cotizacion", "cotizaciones")
+                    && eventMatches(eventName, "cotizacion", "rechazada", "cotizacion.rechazada")) {
+                rutas.add(WebhookRoute.COTIZACION_RECHAZADA);
+            }
+            if (topicMatches(topic, "pedido", "pedidos", "catalogue.pedidos.cotizacion_enviada", "matching.pedidos.cotizacion_enviada")
+                    && eventMatches(eventName, "pedido", "cotizacion_enviada")) {
+                rutas.add(WebhookRoute.PEDIDO_COTIZACION_ENVIADA);
+            }
+            if (topicMatches(topic, "calificacion", "calificaciones")
+                    && eventMatches(eventName, "calificacion", "creada", "creado", "recibida", "recibidas", "actualizada", "actualizacion")) {
+                rutas.add(WebhookRoute.CALIFICACION);
+            }
+            if (topicMatches(topic, "user", "users") && eventMatches(eventName, "user", "created", "user_created")) {
+                rutas.add(WebhookRoute.USER_CREATED);
+            }
+            if (topicMatches(topic, "user", "users") && eventMatches(eventName, "user", "updated", "user_updated")) {
+                rutas.add(WebhookRoute.USER_UPDATED);
+            }
+            if (topicMatches(topic, "user", "users") && eventMatches(eventName, "user", "deactivated", "user_deactivated")) {
+                rutas.add(WebhookRoute.USER_DEACTIVATED);
+            }
+            if (topicMatches(topic, "user", "users") && eventMatches(eventName, "user", "rejected", "user_rejected")) {
+                rutas.add(WebhookRoute.USER_REJECTED);
+            }
+            if (topicMatches(topic, "habilidad", "catalogue.habilidad.alta", "matching.habilidad.alta")
+                    && eventMatches(eventName, "habilidad", "alta")) {
+                rutas.add(WebhookRoute.HABILIDAD_ALTA);
+            }
+            if (topicMatches(topic, "habilidad", "catalogue.habilidad.modificacion", "matching.habilidad.modificacion")
+                    && eventMatches(eventName, "habilidad", "modificacion", "alta_modificacion")) {
+                rutas.add(WebhookRoute.HABILIDAD_MODIFICACION);
+            }
+            if (topicMatches(topic, "rubro", "catalogue.rubro.alta", "matching.rubro.alta")
+                    && eventMatches(eventName, "rubro", "alta")) {
+                rutas.add(WebhookRoute.RUBRO_ALTA);
+            }
+            if (topicMatches(topic, "rubro", "catalogue.rubro.modificacion", "matching.rubro.modificacion")
+                    && eventMatches(eventName, "rubro", "modificacion")) {
+                rutas.add(WebhookRoute.RUBRO_MODIFICACION);
+            }
+            if (topicMatches(topic, "zona", "catalogue.zona.alta", "matching.zona.alta")
+                    && eventMatches(eventName, "zona", "alta")) {
+                rutas.add(WebhookRoute.ZONA_ALTA);
+            }
+            if (topicMatches(topic, "zona", "catalogue.zona.modificacion", "matching.zona.modificacion")
+                    && eventMatches(eventName, "zona", "modificacion")) {
+                rutas.add(WebhookRoute.ZONA_MODIFICACION);
+            }
+            return rutas;
+        }
+
+        private static boolean topicMatches(String topic, String... candidates) {
+            if (topic == null || topic.isBlank()) {
+                return false;
+            }
+            String normalized = WebhookRoutingTable.normalizeTopicDomain(topic);
+            for (String candidate : candidates) {
+                if (topic.equalsIgnoreCase(candidate)) {
+                    return true;
+                }
+                if (!candidate.contains(".") && normalized != null && normalized.equalsIgnoreCase(candidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean eventMatches(String eventName, String domain, String... expected) {
+            String normalized = WebhookRoutingTable.normalizeEventName(eventName);
+            for (String candidate : expected) {
+                if (eventName != null && eventName.equalsIgnoreCase(candidate)) {
+                    return true;
+                }
+                if (normalized != null && normalized.equalsIgnoreCase(candidate)) {
+                    return true;
+                }
+                if (eventName != null) {
+                    if (eventName.equalsIgnoreCase(candidate + "_" + domain)
+                            || eventName.equalsIgnoreCase(domain + "." + candidate)
+                            || eventName.equalsIgnoreCase(domain + "_" + candidate)) {
+                        return true;
+                    }
+                    if (eventName.contains("_")) {
+                        for (String part : eventName.split("_")) {
+                            if (part.equalsIgnoreCase(candidate)) {
+                                return true;
+                            }
+                        }
+                    }
+                    if (eventName.contains(".")) {
+                        for (String part : eventName.split("\\.")) {
+                            if (part.equalsIgnoreCase(candidate)) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}